@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+import edu.ucsc.twitter.circuitbreaker.CircuitBreaker;
+import edu.ucsc.twitter.circuitbreaker.CircuitBreakerRegistry;
+import edu.ucsc.twitter.util.KeywordAutomaton;
+import edu.ucsc.twitter.util.RateLimitPacer;
+import edu.ucsc.twitter.util.SearchCheckpoints;
+import edu.ucsc.twitter.util.SeenTweets;
+import edu.ucsc.twitter.util.TwitterEnvironment;
+import edu.ucsc.twitter.util.UserProfileCache;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import twitter4j.Query;
+import twitter4j.QueryResult;
+import twitter4j.Tweet;
+import twitter4j.User;
+
+/**
+ * Searches tweets through a non-blocking {@link AsyncTwitterClient}: pages of results and the
+ * authors' profiles are requested without waiting for one another, and their outcomes arrive as
+ * callbacks. The keywords are split into queries by a {@link QueryPlanner}, all of them sent at
+ * once, and for each query up to {@link TwitterEnvironment#getMaxConcurrentPages()} pages are in
+ * flight at once; then the distinct authors are looked up, a hundred per lookup, all lookups at
+ * once, so that many lookups can be outstanding without holding a thread each. Only the caller of
+ * {@link #search(int, Set)} blocks, until all of them are done.
+ *
+ * <p>Authors already in the {@link UserProfileCache} are not looked up again. Authors whose
+ * profile cannot be looked up are named "n/a", and are looked up again by the next search.</p>
+ *
+ * <p>Calls are paced by the same {@link RateLimitPacer}s as the blocking ones, without blocking:
+ * a call that has to wait for its token is sent later, from a timer thread. The circuit breakers
+ * time each call from when it is sent to when its callback runs; calls are not retried.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class AsyncTweetsSearch implements TweetsSearch {
+  private static final QueryPlanner PLANNER = new QueryPlanner();
+
+  private final AsyncTwitterClient     client;
+  private final KeywordAutomaton       hints;
+  private final int                    maxPagesInFlight;
+  private final CircuitBreakerRegistry breakers;
+  private final RateLimitPacer         searchPacer;
+  private final RateLimitPacer         restPacer;
+  private final UserProfileCache       users;
+  private final SearchCheckpoints      checkpoints;
+  private final SeenTweets             seen;
+
+  public AsyncTweetsSearch(Set<String> defaultKeywords) {
+    this(new Twitter4jAsyncClient(), defaultKeywords);
+  }
+
+  /**
+   * @param client the client to search with; e.g., a local stub.
+   * @param defaultKeywords see {@link PeriodicTweetsSearch#PeriodicTweetsSearch(Set)}.
+   */
+  public AsyncTweetsSearch(AsyncTwitterClient client, Set<String> defaultKeywords) {
+    this(client, PeriodicTweetsSearch.compileKeywords(defaultKeywords),
+        TwitterEnvironment.getInstance().getMaxConcurrentPages(), CircuitBreakerRegistry.shared(),
+        TwitterEnvironment.getSearchPacer(), TwitterEnvironment.getRestPacer(),
+        UserProfileCache.shared(), SearchCheckpoints.shared(), SeenTweets.shared());
+  }
+
+  /**
+   * @param searchPacer pacer of the searches; they are not paced if null.
+   * @param restPacer pacer of the user lookups; they are not paced if null.
+   */
+  AsyncTweetsSearch(AsyncTwitterClient client, KeywordAutomaton hints, int maxPagesInFlight,
+      CircuitBreakerRegistry breakers, RateLimitPacer searchPacer, RateLimitPacer restPacer,
+      UserProfileCache users, SearchCheckpoints checkpoints, SeenTweets seen) {
+    this.client           = client;
+    this.hints            = hints;
+    this.maxPagesInFlight = Math.max(1, maxPagesInFlight);
+    this.breakers         = breakers;
+    this.searchPacer      = searchPacer;
+    this.restPacer        = restPacer;
+    this.users            = users;
+    this.checkpoints      = checkpoints;
+    this.seen             = seen;
+  }
+
+  @Override public ResultPackage search(int limit, Set<String> keywords) {
+    final List<Set<String>>  queries = PLANNER.plan(keywords, limit);
+    final int                share   = QueryPlanner.shareOf(limit, queries.size());
+    final List<PagesRequest> pages   = Lists.newArrayList();
+    for (Set<String> each : queries) {
+      final PagesRequest request = new PagesRequest(each, share);
+      request.start();
+      pages.add(request);
+    }
+
+    final Set<Tweet>        retrieved = Sets.newLinkedHashSet();
+    final Map<String, Long> maxIds    = Maps.newHashMap();
+    for (PagesRequest each : pages) {
+      final Set<Tweet> page = each.await();
+      final long maxId = maxIdOf(page);
+      if (maxId > 0L) { maxIds.put(each.checkpoint, maxId); }
+      PLANNER.record(each.keywords, page);
+      retrieved.addAll(page);
+    }
+    final Set<Long>  claimed        = Sets.newHashSet();
+    final Set<Tweet> totalRetrieved = PeriodicTweetsSearch.unseen(seen, claimed, retrieved);
+
+    final Map<Long, String> fullnames = new UsersRequest(
+        PeriodicTweetsSearch.authorsOf(totalRetrieved)).await();
+    final List<TweetPackage> findings = PeriodicTweetsSearch.compileFindings(totalRetrieved,
+        keywords, hints, Functions.forMap(fullnames, "n/a"));
+    PeriodicTweetsSearch.saveUserProfiles(users);
+    // only once the findings are packaged are their tweets and checkpoints committed.
+    PeriodicTweetsSearch.commit(seen, claimed, checkpoints, maxIds);
+    return ResultPackage.emptyTweetsPackage().putAllTweetResults(findings);
+  }
+
+  private static long maxIdOf(Set<Tweet> tweets) {
+    long maxId = 0L;
+    for (Tweet each : tweets) {
+      maxId = Math.max(maxId, each.getId());
+    }
+
+    return maxId;
+  }
+
+  private CircuitBreaker<RuntimeException> breaker() {
+    return breakers.get(CircuitBreakerRegistry.SEARCH);
+  }
+
+  private CircuitBreaker<RuntimeException> secondBreaker() {
+    return breakers.get(CircuitBreakerRegistry.LOOKUP);
+  }
+
+  /**
+   * sends a call once the pacer has a token for it: right away, on the calling thread, if one is
+   * available (or the call is not paced); else later, from the {@link Sender} thread.
+   */
+  private static void paced(RateLimitPacer pacer, Runnable send) {
+    final long wait = pacer == null ? 0 : pacer.reserve();
+    if (wait <= 0) {
+      send.run();
+    } else {
+      Sender.INSTANCE.schedule(send, wait, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while searching tweets", e);
+    }
+  }
+
+  /**
+   * Requests consecutive pages of the same search, the same way a {@link PageCursor} does, but
+   * driven by callbacks: each page that comes back full requests the next one. All state is
+   * guarded by the request itself.
+   */
+  private class PagesRequest {
+    private final Set<String>    keywords;
+    private final String         checkpoint;
+    private final long           sinceId;
+    private final int            limit;
+    private final Set<Tweet>     retrieved = Sets.newLinkedHashSet();
+    private final CountDownLatch done      = new CountDownLatch(1);
+
+    private int     nextPage  = 1;
+    private int     inFlight  = 0;
+    private boolean exhausted = false;
+    private boolean finished  = false;
+
+    PagesRequest(Set<String> keywords, int limit) {
+      this.keywords   = keywords;
+      this.limit      = limit;
+      this.checkpoint = SearchCheckpoints.keyOf(keywords, "en");
+      this.sinceId    = checkpoints.sinceId(checkpoint);
+    }
+
+    synchronized void start() {
+      if (limit <= 0) { finish(); }
+      while (nextPage <= maxPagesInFlight && !exhausted && !finished) {
+        request(nextPage++);
+      }
+      if (inFlight == 0) { finish(); }
+    }
+
+    Set<Tweet> await() {
+      AsyncTweetsSearch.await(done);
+      synchronized (this) {
+        return retrieved;
+      }
+    }
+
+    private void request(final int page) {
+      inFlight++;
+      paced(searchPacer, new Runnable() {
+        @Override public void run() {
+          send(page);
+        }
+      });
+    }
+
+    private void send(int page) {
+      final long startedAt;
+      try {
+        startedAt = breaker().callSent();
+      } catch (RuntimeException open) {
+        notSent();
+        return;
+      }
+
+      try {
+        // queries are mutable, so each page in flight gets its own.
+        final Query query = PeriodicTweetsSearch.buildOrQuery(keywords, "en", sinceId);
+        query.setPage(page);
+        client.search(query, new AsyncTwitterClient.Callback<QueryResult>() {
+          @Override public void onSuccess(QueryResult result) {
+            breaker().callSucceeded(startedAt);
+            // raw, since the bundled twitter4j jar carries no generic signatures.
+            @SuppressWarnings("unchecked")
+            final List<Tweet> tweets = (List<Tweet>) result.getTweets();
+            received(Sets.newHashSet(tweets));
+          }
+
+          @Override public void onFailure(Exception cause) {
+            System.err.println("twitter4j API failed");
+            breaker().callFailed(new RuntimeException(cause), startedAt);
+            received(ImmutableSet.<Tweet>of());
+          }
+        });
+      } catch (RuntimeException failed) {
+        breaker().callFailed(failed, startedAt);
+        notSent();
+      }
+    }
+
+    /**
+     * gives up on a page that the breaker blocked, or that the client failed to send; so no
+     * later pages are requested either.
+     */
+    private synchronized void notSent() {
+      inFlight--;
+      exhausted = true;
+      if (inFlight == 0) { finish(); }
+    }
+
+    private synchronized void received(Set<Tweet> page) {
+      inFlight--;
+      if (finished) { return; }
+
+      retrieved.addAll(page);
+      if (retrieved.size() >= limit) {
+        finish();
+        return;
+      }
+
+      if (page.isEmpty()) {
+        // later pages are empty too; still, the earlier ones in flight are waited for.
+        exhausted = true;
+      } else if (!exhausted) {
+        request(nextPage++);
+      }
+
+      if (inFlight == 0) { finish(); }
+    }
+
+    private void finish() {
+      finished = true;
+      done.countDown();
+    }
+  }
+
+  /**
+   * Looks up the first name of many users at once; only those not in the cache, and
+   * {@value PeriodicTweetsSearch#MAX_USERS_PER_LOOKUP} of them per lookup.
+   */
+  private class UsersRequest {
+    private final Map<Long, String> fullnames = new ConcurrentHashMap<Long, String>();
+    private final List<List<Long>>  batches;
+    private final CountDownLatch    done;
+
+    UsersRequest(Set<Long> userIds) {
+      final List<Long> missing = Lists.newArrayList();
+      for (Long each : userIds) {
+        final String cached = users.get(each);
+        if (cached != null) {
+          fullnames.put(each, cached);
+        } else {
+          missing.add(each);
+        }
+      }
+
+      this.batches = Lists.partition(missing, PeriodicTweetsSearch.MAX_USERS_PER_LOOKUP);
+      this.done    = new CountDownLatch(batches.size());
+    }
+
+    Map<Long, String> await() {
+      for (final List<Long> each : batches) {
+        paced(restPacer, new Runnable() {
+          @Override public void run() {
+            send(each);
+          }
+        });
+      }
+
+      AsyncTweetsSearch.await(done);
+      return fullnames;
+    }
+
+    private void send(final List<Long> batch) {
+      final long startedAt;
+      try {
+        startedAt = secondBreaker().callSent();
+      } catch (RuntimeException open) {
+        done.countDown();
+        return;
+      }
+
+      try {
+        client.lookupUsers(Longs.toArray(batch), new AsyncTwitterClient.Callback<List<User>>() {
+          @Override public void onSuccess(List<User> found) {
+            secondBreaker().callSucceeded(startedAt);
+            fullnames.putAll(PeriodicTweetsSearch.remember(users, batch, found));
+            done.countDown();
+          }
+
+          @Override public void onFailure(Exception cause) {
+            secondBreaker().callFailed(new RuntimeException(cause), startedAt);
+            done.countDown();
+          }
+        });
+      } catch (RuntimeException failed) {
+        secondBreaker().callFailed(failed, startedAt);
+        done.countDown();
+      }
+    }
+  }
+
+  /**
+   * Lazy-constructed timer for the calls that wait for a token, made of a daemon thread so it
+   * never keeps the collector alive. Sending a call does not wait for its outcome, so one thread
+   * is enough.
+   */
+  private static class Sender {
+    static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory() {
+          @Override public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "paced-api-sender");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import java.util.List;
+import twitter4j.Query;
+import twitter4j.QueryResult;
+import twitter4j.User;
+
+/**
+ * The few non-blocking Twitter calls a search needs. Calls return right away; their outcome is
+ * delivered later, exactly once, to the given callback (possibly on another thread). Keeping
+ * this narrow makes it easy to run a search against a local stub.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public interface AsyncTwitterClient {
+  /**
+   * searches tweets.
+   * @param query
+   *    the search, including the page to be returned.
+   * @param callback
+   *    receives the page of results.
+   */
+  void search(Query query, Callback<QueryResult> callback);
+
+  /**
+   * looks up the profiles of many users at once.
+   * @param userIds
+   *    ids of the users; at most 100 of them.
+   * @param callback
+   *    receives the profiles found; users that were not found are left out.
+   */
+  void lookupUsers(long[] userIds, Callback<List<User>> callback);
+
+  /**
+   * Outcome of an asynchronous call.
+   */
+  interface Callback<T> {
+    void onSuccess(T result);
+
+    void onFailure(Exception cause);
+  }
+}
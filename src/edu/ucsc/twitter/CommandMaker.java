@@ -129,7 +129,9 @@ class CommandMaker {
     @Override public void execute(ParsingResult parsingResult) throws ExecutionException {
       final DemographicsResultsWriter writer  = new DemographicsResultsWriter();
       final EventService  service = new BasicEventService(new SyncDeliveryStrategy());
-      final PeriodicTask  task    = new TweetsWithDemogSearchingPeriodicTask(service);
+      final PeriodicTask  task    = TwitterEnvironment.getInstance().isStreamingEnabled()
+          ? new StreamingTweetsTask(TweetsWithDemogSearchingPeriodicTask.DEFAULT, service)
+          : new TweetsWithDemogSearchingPeriodicTask(service);
       task.subscribe("results", writer);
       final Watchdog dog = new TweetsCollectionWatchdog(task);
       dog.startWatching();
@@ -153,7 +155,9 @@ class CommandMaker {
     @Override public void execute(ParsingResult parsingResult) throws ExecutionException {
       final BullyingResultsWriter writer  = new BullyingResultsWriter();
       final EventService  service = new BasicEventService(new SyncDeliveryStrategy());
-      final PeriodicTask  task    = new HostileTweetsSearchingPeriodicTask(service);
+      final PeriodicTask  task    = TwitterEnvironment.getInstance().isStreamingEnabled()
+          ? new StreamingTweetsTask(HostileTweetsSearchingPeriodicTask.DEFAULT, service)
+          : new HostileTweetsSearchingPeriodicTask(service);
       task.subscribe("results", writer);
       final Watchdog dog = new TweetsCollectionWatchdog(task);
       dog.startWatching();
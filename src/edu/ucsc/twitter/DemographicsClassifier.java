@@ -21,6 +21,7 @@ import edu.ucsc.cli.IterableFileReader;
 import static edu.ucsc.cli.IterableFileReader.open;
 import edu.ucsc.cli.util.Console;
 import edu.ucsc.cli.util.StopWatch;
+import edu.ucsc.twitter.util.TweetText;
 import edu.ucsc.twitter.util.TwitterEnvironment;
 import java.io.File;
 import java.io.IOException;
@@ -45,6 +46,16 @@ public abstract class DemographicsClassifier <R> {
    * @return a hint indicating the class of the text.
    */
   public abstract R classify(String text);
+
+  /**
+   * classifies the normalized text of a tweet.
+   * @param text
+   *    text to be classified by classifier.
+   * @return a hint indicating the class of the text.
+   */
+  public R classify(TweetText text) {
+    return classify(text.toString());
+  }
   
   
   protected void error(String message){
@@ -15,7 +15,6 @@
  */
 package edu.ucsc.twitter;
 
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import edu.ucsc.broadcast.EventSubscriber;
 import edu.ucsc.twitter.ResultPackage.Kind;
@@ -37,90 +36,19 @@ import java.util.Set;
 public class DemographicsResultsWriter implements EventSubscriber<ResultPackage> {
   private final Set<TweetPackage> collectedPackages;
 
-  private static Set<String> KEYWORDS;
-  static {
-
-    final Set<String> irrelevant = Sets.newHashSet();
-    irrelevant.add("feel");
-    irrelevant.add("like");
-    irrelevant.add("mins");
-    irrelevant.add("minutes");
-    irrelevant.add("secs");
-    irrelevant.add("seconds");
-    irrelevant.add("hrs");
-    irrelevant.add("hours");
-    irrelevant.add("away");
-    irrelevant.add("day");
-    irrelevant.add("days");
-    irrelevant.add("out of");
-    irrelevant.add("times");
-    irrelevant.add("time");
-    irrelevant.add("by the");
-    irrelevant.add("by");
-    irrelevant.add("the");
-    irrelevant.add("weeks!");
-    irrelevant.add("weeks");
-    irrelevant.add("away");
-    irrelevant.add("today");
-    irrelevant.add("tomorrow");
-    irrelevant.add("birthday");
-    irrelevant.add("again");
-    irrelevant.add("away");
-    irrelevant.add("till");
-    irrelevant.add("until");
-    irrelevant.add("think Im");
-    irrelevant.add("think I'm");
-    irrelevant.add("think I am");
-    irrelevant.add("thinks Im");
-    irrelevant.add("thinks I'm");
-    irrelevant.add("thinks I am");
-    irrelevant.add("class");
-    irrelevant.add("who");
-    irrelevant.add("-");
-    irrelevant.add("(8)");
-    irrelevant.add("(9)");
-    irrelevant.add("(10)");
-    irrelevant.add("(11)");
-    irrelevant.add("(12)");
-    irrelevant.add("(13)");
-    irrelevant.add("(14)");
-    irrelevant.add("(15)");
-    irrelevant.add("(16)");
-    irrelevant.add("(17)");
-    irrelevant.add("(18)");
-    irrelevant.add("(19)");
-    irrelevant.add("(20)");
-    irrelevant.add("(21)");
-    irrelevant.add("(22)");
-    irrelevant.add("(23)");
-    irrelevant.add("(24)");
-    irrelevant.add("(25)");
-    irrelevant.add("(26)");
-    irrelevant.add("(27)");
-    irrelevant.add("(28)");
-    irrelevant.add("(29)");
-    irrelevant.add("(30)");
-    irrelevant.add("cents");
-    irrelevant.add("under");
-    irrelevant.add("dollar");
-    irrelevant.add("dollars");
-    irrelevant.add("hundred");
-    irrelevant.add("hundreds");
-    irrelevant.add("thousand");
-    irrelevant.add("thousands");
-    irrelevant.add("million");
-    irrelevant.add("millions");
-    irrelevant.add("steps");
-    irrelevant.add("ahead");
-    KEYWORDS = ImmutableSet.copyOf(irrelevant);
-  }
+  private final RelevanceScorer   scorer;
 
   public DemographicsResultsWriter() {
-    this(Sets.<TweetPackage>newHashSet());
+    this(KeywordRelevanceScorer.fromEnvironment());
+  }
+
+  public DemographicsResultsWriter(RelevanceScorer scorer) {
+    this(Sets.<TweetPackage>newHashSet(), scorer);
   }
 
-  DemographicsResultsWriter(Set<TweetPackage> collectedPackages) {
+  DemographicsResultsWriter(Set<TweetPackage> collectedPackages, RelevanceScorer scorer) {
     this.collectedPackages = collectedPackages;
+    this.scorer            = scorer;
   }
 
   private int currentSize() {
@@ -130,7 +58,7 @@ public class DemographicsResultsWriter implements EventSubscriber<ResultPackage>
   @Override public void onEvent(ResultPackage resultPackage) {
     synchronized (collectedPackages) {
       final List<Object> tweets = resultPackage.get(Kind.TWEET);
-      copy(collectedPackages, tweets);
+      copyRelevant(collectedPackages, tweets);
       trackProgress(currentSize(), TwitterEnvironment.getInstance().getMaxTweetsTobeExtracted());
 
       final boolean isPrintingResults = currentSize() >= TwitterEnvironment.getInstance()
@@ -156,8 +84,6 @@ public class DemographicsResultsWriter implements EventSubscriber<ResultPackage>
 
       int count = 1;
       for (TweetPackage each : collectedPackages) {
-        if(isIrrelevant(each)) continue;
-
         if (count == 1) {
           final File directory = new File(TwitterEnvironment.getInstance().getOutputFoldername());
           final int fileCounter = directory.listFiles().length + 1;
@@ -199,23 +125,6 @@ public class DemographicsResultsWriter implements EventSubscriber<ResultPackage>
     }
   }
 
-  private static boolean isIrrelevant(TweetPackage content){
-    return isIrrelevant(content.getUserCurrentStatus());
-  }
-
-  private static boolean isIrrelevant(String message){
-    double THRESHOLD = 5.0;
-    int count = 0;
-    for(String words : KEYWORDS){
-      if(Strings.contains(message.toLowerCase(), words)){
-        count++;
-      }
-    }
-
-    final double score = Math.min(((count) / THRESHOLD), 1.0); // max score = 1.0
-    return Double.compare(score, 0.5) > 0; // is score greater than 0.5
-  }
-
   private static void trackProgress(int actual, int possible) {
     final BigDecimal percent = BigDecimal.valueOf(((actual / possible) * 100));
     final String message = "We have collected (" + actual + ") tweets this far, progress("
@@ -231,14 +140,11 @@ public class DemographicsResultsWriter implements EventSubscriber<ResultPackage>
     }
   }
 
-  private static void copy(Set<TweetPackage> dst, List<Object> src) {
+  private void copyRelevant(Set<TweetPackage> dst, List<Object> src) {
     for (Object each : src) {
-      dst.add((TweetPackage) each);
+      final TweetPackage tweet = (TweetPackage) each;
+      if (scorer.isIrrelevant(tweet.getUserCurrentStatusText())) continue;
+      dst.add(tweet);
     }
   }
-
-  public static void main(String[] args) {
-    System.out.println(isIrrelevant(
-        "I feel like I&apos;m 8 years old again with my double zipped pink tripple sectioned coooler lunch bag ;)"));
-  }
 }
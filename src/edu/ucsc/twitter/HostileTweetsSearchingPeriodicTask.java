@@ -29,7 +29,7 @@ public class HostileTweetsSearchingPeriodicTask extends PeriodicTask {
   private final TweetsSearch                    search;
   private final int                             maxNumberOfTweet;
 
-  private static final Set<String> DEFAULT = new HashSet<String>();
+  static final Set<String> DEFAULT = new HashSet<String>();
   static {
     DEFAULT.add("F**");
     DEFAULT.add("ass");
@@ -46,7 +46,7 @@ public class HostileTweetsSearchingPeriodicTask extends PeriodicTask {
   }
 
   public HostileTweetsSearchingPeriodicTask(EventService eventBus){
-    this(new PeriodicTweetsSearch(), eventBus);
+    this(TweetsSearches.fromEnvironment(DEFAULT), eventBus);
   }
 
   @Override public PeriodicTask getInstance() {
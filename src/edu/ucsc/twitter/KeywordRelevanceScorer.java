@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.collect.ImmutableList;
+import edu.ucsc.cli.util.Console;
+import edu.ucsc.twitter.util.KeywordAutomaton;
+import edu.ucsc.twitter.util.TweetText;
+import edu.ucsc.twitter.util.TwitterEnvironment;
+import java.io.IOException;
+
+/**
+ * Scores a tweet by the number of distinct irrelevant phrases (e.g., "minutes", "dollars",
+ * "think I'm") it contains: {@code min(count / threshold, 1.0)}. All phrases are compiled once
+ * into a {@link KeywordAutomaton}, so each tweet's {@link TweetText#lowercase() lowercase view}
+ * is scanned once, and the scan stops as soon as enough phrases have been found to cross the
+ * cutoff.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class KeywordRelevanceScorer implements RelevanceScorer {
+  private static final double DEFAULT_THRESHOLD = 5.0;
+  private static final double DEFAULT_CUTOFF    = 0.5;
+
+  private final KeywordAutomaton phrases;
+  private final double           threshold;
+  private final double           cutoff;
+  private final int              irrelevantCount;
+
+  public KeywordRelevanceScorer(KeywordAutomaton phrases) {
+    this(phrases, DEFAULT_THRESHOLD, DEFAULT_CUTOFF);
+  }
+
+  /**
+   * @param phrases irrelevant phrases.
+   * @param threshold number of phrases that give a tweet the max score.
+   * @param cutoff score above which a tweet is irrelevant.
+   */
+  public KeywordRelevanceScorer(KeywordAutomaton phrases, double threshold, double cutoff) {
+    this.phrases         = phrases;
+    this.threshold       = threshold;
+    this.cutoff          = cutoff;
+    this.irrelevantCount = irrelevantCount(phrases.size(), threshold, cutoff);
+  }
+
+  /**
+   * @return a scorer compiled from {@link TwitterEnvironment#getIrrelevantKeywordsFile()}. If the
+   *    file cannot be read, the scorer finds every tweet relevant.
+   */
+  public static KeywordRelevanceScorer fromEnvironment() {
+    try {
+      return new KeywordRelevanceScorer(
+          KeywordAutomaton.compile(TwitterEnvironment.readIrrelevantKeywords()));
+    } catch (IOException e) {
+      Console.streaming().error("unable to read irrelevant keywords file", e);
+      return new KeywordRelevanceScorer(KeywordAutomaton.compile(ImmutableList.<String>of()));
+    }
+  }
+
+  /**
+   * @return the smallest number of phrases whose score is above the cutoff; or more phrases than
+   *    there are, if none is.
+   */
+  private static int irrelevantCount(int size, double threshold, double cutoff) {
+    for (int count = 0; count <= size; count++) {
+      if (Double.compare(score(count, threshold), cutoff) > 0) {
+        return count;
+      }
+    }
+
+    return size + 1;
+  }
+
+  private static double score(int count, double threshold) {
+    return Math.min(count / threshold, 1.0); // max score = 1.0
+  }
+
+  @Override public double score(TweetText message) {
+    if (message == null) { return 0.0; }
+    return score(phrases.count(message.lowercase(), phrases.size()), threshold);
+  }
+
+  @Override public boolean isIrrelevant(TweetText message) {
+    if (message == null) { return false; }
+    return phrases.count(message.lowercase(), irrelevantCount) >= irrelevantCount;
+  }
+
+  @Override public String toString() {
+    return String.format("KeywordRelevanceScorer(phrases=%d, threshold=%.1f, cutoff=%.2f)",
+        phrases.size(), threshold, cutoff);
+  }
+}
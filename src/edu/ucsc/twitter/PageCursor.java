@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Iterates over the consecutive pages of a search, in order, fetching up to {@code depth} pages
+ * ahead in the background while the caller works on the current one; so the caller can process
+ * results as they come, and only the prefetched pages are held in memory. The pages end with the
+ * first one that comes back empty (which is how the search API says there are no more results),
+ * or when the cursor is closed; a caller that stops early closes the cursor, so that the pages
+ * it will not use are cancelled.
+ *
+ * <p>Each page costs a paced API call, even once cancelled, so pages are only fetched ahead
+ * once a page came back with results: a search with no results costs a single call, and one
+ * that runs out of results costs at most {@code depth - 1} calls past its last page.</p>
+ *
+ * <p>A cursor is meant to be used by a single thread.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+class PageCursor<T> implements Iterator<Set<T>> {
+  private final ExecutorService                     executor;
+  private final Function<Integer, ? extends Set<T>> pages;
+  private final int                                 depth;
+  private final LinkedList<Future<Set<T>>>          ahead = Lists.newLinkedList();
+
+  private int     nextPage = 1;
+  private Set<T>  current;
+  private boolean closed;
+
+  /**
+   * @param executor where pages are fetched.
+   * @param pages fetches a page (1-based) of results; an empty set means no more results.
+   * @param depth max number of pages fetched ahead of the caller.
+   */
+  PageCursor(ExecutorService executor, Function<Integer, ? extends Set<T>> pages, int depth) {
+    this.executor = executor;
+    this.pages    = pages;
+    this.depth    = Math.max(1, depth);
+    prefetch();
+  }
+
+  private void prefetch() {
+    final int page = nextPage++;
+    ahead.add(executor.submit(new Callable<Set<T>>() {
+      @Override public Set<T> call() {
+        return pages.apply(page);
+      }
+    }));
+  }
+
+  /**
+   * waits for the next page, if it has not come in yet.
+   */
+  @Override public boolean hasNext() {
+    if (current != null) { return true; }
+    if (closed)          { return false; }
+
+    final Future<Set<T>> next = ahead.removeFirst();
+    try {
+      final Set<T> page = next.get();
+      if (page.isEmpty()) {
+        close();
+        return false;
+      }
+
+      // there may be more; so keep depth pages in flight while the caller works on this one.
+      while (ahead.size() < depth) {
+        prefetch();
+      }
+      current = page;
+      return true;
+    } catch (InterruptedException e) {
+      close();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while fetching pages", e);
+    } catch (ExecutionException e) {
+      close();
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  @Override public Set<T> next() {
+    if (!hasNext()) { throw new NoSuchElementException(); }
+
+    final Set<T> page = current;
+    current = null;
+    return page;
+  }
+
+  @Override public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * cancels the pages fetched ahead; running requests are not interrupted, but their results
+   * are dropped.
+   */
+  void close() {
+    closed = true;
+    for (Future<Set<T>> each : ahead) {
+      each.cancel(false);
+    }
+    ahead.clear();
+  }
+
+  /**
+   * @return number of pages requested so far, the ones fetched ahead included.
+   */
+  int getRequested() {
+    return nextPage - 1;
+  }
+
+  /**
+   * Lazy-constructed pool for page requests, made of daemon threads so it never keeps
+   * the collector alive.
+   */
+  static class FetcherExecutor {
+    static final ExecutorService INSTANCE = Executors.newCachedThreadPool(
+        new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable,
+                "tweets-page-fetcher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+  }
+}
@@ -22,7 +22,10 @@ import edu.ucsc.broadcast.EventSubscriber;
 import static edu.ucsc.broadcast.MatcherMaker.exactChannel;
 import static edu.ucsc.broadcast.MatcherMaker.exactType;
 import edu.ucsc.cli.util.Strings;
+import edu.ucsc.twitter.util.TwitterEnvironment;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -50,8 +53,8 @@ public abstract class PeriodicTask {
   }
 
   protected PeriodicTask(EventService eventBus) {
-    this(new ExecutionConfig(0L, 3000L, TimeUnit.MILLISECONDS),
-        eventBus);
+    this(new ExecutionConfig(0L, TwitterEnvironment.getInstance().getSearchPeriod(),
+        TimeUnit.MILLISECONDS), eventBus);
   }
 
   public boolean cancel() {
@@ -103,9 +106,24 @@ public abstract class PeriodicTask {
         unit);
   }
 
+  /**
+   * same as {@link #subscribe(String, EventSubscriber[])}, for a single listener; so callers do
+   * not create a generic array (and get an unchecked warning) for it.
+   */
+  public void subscribe(String channel, EventSubscriber<? extends ResultPackage> listener) {
+    subscribe(channel,
+        Collections.<EventSubscriber<? extends ResultPackage>>singletonList(listener));
+  }
+
   public void subscribe(String channel,
       EventSubscriber<? extends ResultPackage>... listeners) {
-    if (Arrays.asList(listeners).contains(null) || null == listeners) {
+    if (null == listeners) { throw new IllegalArgumentException(); }
+    subscribe(channel, Arrays.asList(listeners));
+  }
+
+  private void subscribe(String channel,
+      List<EventSubscriber<? extends ResultPackage>> listeners) {
+    if (listeners.contains(null)) {
       throw new IllegalArgumentException();
     }
     Preconditions.checkArgument(!Strings.isEmpty(channel));
@@ -15,26 +15,44 @@
  */
 package edu.ucsc.twitter;
 
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
 import edu.ucsc.twitter.RetrievedTweetPackage.Builder;
-import edu.ucsc.twitter.circuitbreaker.BasicCircuitBreaker;
+import edu.ucsc.twitter.circuitbreaker.CallBlockedException;
 import edu.ucsc.twitter.circuitbreaker.CircuitBreaker;
+import edu.ucsc.twitter.circuitbreaker.CircuitBreakerRegistry;
 import edu.ucsc.cli.util.Strings;
+import edu.ucsc.twitter.util.KeywordAutomaton;
+import edu.ucsc.twitter.util.NameNormalizer;
+import edu.ucsc.twitter.util.RateLimitPacer;
+import edu.ucsc.twitter.util.RetryPolicy;
+import edu.ucsc.twitter.util.SearchCheckpoints;
+import edu.ucsc.twitter.util.SeenTweets;
+import edu.ucsc.twitter.util.TweetText;
 import edu.ucsc.twitter.util.Tweets;
 import edu.ucsc.twitter.util.TwitterEnvironment;
+import edu.ucsc.twitter.util.UserProfileCache;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import twitter4j.Query;
 import twitter4j.QueryResult;
-import twitter4j.ResponseList;
-import twitter4j.Status;
 import twitter4j.Tweet;
+import twitter4j.Twitter;
 import twitter4j.User;
 
 /**
@@ -43,76 +61,251 @@ import twitter4j.User;
  * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
  */
 public class PeriodicTweetsSearch implements TweetsSearch {
-  private static final CircuitBreaker<RuntimeException> BREAKER
-      = new BasicCircuitBreaker<RuntimeException>();
+  private static final Tweets UTIL = new Tweets();
 
-  private static final CircuitBreaker<RuntimeException> SECOND_BREAKER
-      = new BasicCircuitBreaker<RuntimeException>();
+  private static final NameNormalizer NAMES = new NameNormalizer();
 
-  private static final Tweets UTIL = new Tweets();
+  private static final QueryPlanner PLANNER = new QueryPlanner();
 
-  @Override public ResultPackage search(int limit, Set<String> keywords) {
-    final Query tweetsQuery = buildOrQuery(keywords, "en");
-    final ResultPackage result = ResultPackage.emptyTweetsPackage();
-    int accumulator = 0;
-    int page = 1;
-    final Set<Tweet> totalRetrieved = Sets.newHashSet();
-    final Set<Tweet> bunch = fetch(tweetsQuery, page);
-
-    while (bunch.size() > 0 && accumulator < limit) {
-      for (Tweet each : bunch) {
-        if (!totalRetrieved.contains(each)) {
-          accumulator++;
-          totalRetrieved.add(each);
-        }
+  private static final RetryPolicy SEARCH_RETRIES = RetryPolicy.fromEnvironment();
+
+  private static final RetryPolicy LOOKUP_RETRIES = RetryPolicy.fromEnvironment();
+
+  static final int MAX_USERS_PER_LOOKUP = 100; // the most users a single lookup accepts.
+
+  private final Twitter                twitter;
+  private final RateLimitPacer         searchPacer;
+  private final RateLimitPacer         restPacer;
+  private final KeywordAutomaton       hints;
+  private final CircuitBreakerRegistry breakers;
+  private final UserProfileCache       users;
+  private final SearchCheckpoints      checkpoints;
+  private final SeenTweets             seen;
+
+  public PeriodicTweetsSearch() {
+    this(Collections.<String>emptySet());
+  }
+
+  /**
+   * @param defaultKeywords keywords searched when no keywords are sampled from
+   *    {@link TwitterEnvironment#getKeywordsFile()}. They are compiled, along with the ones
+   *    in that file, into the automaton that finds the hint of each tweet.
+   */
+  public PeriodicTweetsSearch(Set<String> defaultKeywords) {
+    this(TwitterEnvironment.getTwitterService(), TwitterEnvironment.getSearchPacer(),
+        TwitterEnvironment.getRestPacer(), compileKeywords(defaultKeywords),
+        CircuitBreakerRegistry.shared(), UserProfileCache.shared(), SearchCheckpoints.shared(),
+        SeenTweets.shared());
+  }
+
+  /**
+   * @param twitter the client to search with; e.g., one that plays back recorded calls.
+   * @param searchPacer pacer of the client's searches; they are not paced if null.
+   * @param restPacer pacer of the client's other calls; they are not paced if null.
+   */
+  PeriodicTweetsSearch(Twitter twitter, RateLimitPacer searchPacer, RateLimitPacer restPacer,
+      KeywordAutomaton hints, CircuitBreakerRegistry breakers, UserProfileCache users,
+      SearchCheckpoints checkpoints, SeenTweets seen) {
+    this.twitter     = twitter;
+    this.searchPacer = searchPacer;
+    this.restPacer   = restPacer;
+    this.hints       = hints;
+    this.breakers    = breakers;
+    this.users       = users;
+    this.checkpoints = checkpoints;
+    this.seen        = seen;
+  }
+
+  @Override public ResultPackage search(int limit, final Set<String> keywords) {
+    final ResultPackage     result  = ResultPackage.emptyTweetsPackage();
+    final List<Set<String>> queries = PLANNER.plan(keywords, limit);
+    final int               share   = QueryPlanner.shareOf(limit, queries.size());
+
+    // tweets and checkpoints are only committed once every query is done, and packaged.
+    final Set<Long>         claimed     = Collections.newSetFromMap(
+        new ConcurrentHashMap<Long, Boolean>());
+    final Map<String, Long> maxIds      = new ConcurrentHashMap<String, Long>();
+
+    final List<Future<List<TweetPackage>>> searches = Lists.newArrayList();
+    for (final Set<String> each : queries) {
+      searches.add(PageCursor.FetcherExecutor.INSTANCE.submit(
+          new Callable<List<TweetPackage>>() {
+            @Override public List<TweetPackage> call() {
+              return searchQuery(each, share, keywords, claimed, maxIds);
+            }
+          }));
+    }
+
+    final List<TweetPackage> findings = Lists.newArrayList();
+    try {
+      for (Future<List<TweetPackage>> each : searches) {
+        findings.addAll(each.get());
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while searching tweets", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      saveUserProfiles(users);
+    }
+
+    commit(seen, claimed, checkpoints, maxIds);
+    return result.putAllTweetResults(findings);
+  }
+
+  /**
+   * searches the tweets that match one of the planned queries, newer than its checkpoint. Tweets
+   * are packaged as their pages come in, while the next ones are fetched, so only the pages
+   * fetched ahead and a batch of tweets waiting to be packaged are held at once.
+   *
+   * @param group keywords of the query.
+   * @param limit number of distinct tweets after which no more pages are requested.
+   * @param keywords all the keywords searched, which the hints of the tweets are taken from.
+   * @param claimed ids of the tweets packaged by any query of this search.
+   * @param maxIds where the newest tweet id of this query is put, to be committed later.
+   * @return the packages of the tweets that were never collected before.
+   */
+  private List<TweetPackage> searchQuery(final Set<String> group, int limit,
+      Set<String> keywords, Set<Long> claimed, Map<String, Long> maxIds) {
+    final String checkpoint = SearchCheckpoints.keyOf(group, "en");
+    final long   sinceId    = checkpoints.sinceId(checkpoint);
+    final PageCursor<Tweet> pages = new PageCursor<Tweet>(PageCursor.FetcherExecutor.INSTANCE,
+        new Function<Integer, Set<Tweet>>() {
+          @Override public Set<Tweet> apply(Integer page) {
+            // queries are mutable, so each page in flight gets its own.
+            return fetch(buildOrQuery(group, "en", sinceId), page);
+          }
+        }, TwitterEnvironment.getInstance().getMaxConcurrentPages());
+
+    final List<TweetPackage> findings = Lists.newArrayList();
+    final List<Tweet>        pending  = Lists.newArrayList();
+    final List<String>       texts    = Lists.newArrayList();
+    final Set<Long>          ids      = Sets.newHashSet();
+    long maxId = 0L;
+    try {
+      while (ids.size() < limit && pages.hasNext()) {
+        final Set<Tweet> page = pages.next();
+        for (Tweet each : page) {
+          if (!ids.add(each.getId())) { continue; }
+          maxId = Math.max(maxId, each.getId());
+          if (each.getText() != null) { texts.add(each.getText()); }
+        }
 
-      bunch.clear();
-      bunch.addAll(fetch(tweetsQuery, page++));
+        // packaged in batches, so that each lookup of their authors is as full as it can be.
+        pending.addAll(unseen(seen, claimed, page));
+        if (pending.size() >= MAX_USERS_PER_LOOKUP) {
+          findings.addAll(compileFindings(pending, keywords));
+          pending.clear();
+        }
+      }
+    } finally {
+      pages.close();
     }
+    findings.addAll(compileFindings(pending, keywords));
 
-    return result.putAllTweetResults(compileFindings(totalRetrieved, keywords));
+    if (maxId > 0L) { maxIds.put(checkpoint, maxId); }
+    PLANNER.recordTexts(group, texts);
+    return findings;
   }
 
-  private Set<Tweet> fetch(Query tweetsQuery, int page) {
-    breaker().callStarted();
+  /**
+   * fetches a page, retrying it if it fails for a transient reason and hedging it if it is slow;
+   * a page that still cannot be fetched, or that the breaker blocks, is empty, so no later pages
+   * are requested. The breaker is told of each attempt, once its token was taken.
+   */
+  private Set<Tweet> fetch(final Query tweetsQuery, int page) {
     tweetsQuery.setPage(page);
     try {
-      final QueryResult result = TwitterEnvironment.getTwitterService().search(tweetsQuery);
-      breaker().callSucceeded();
-      return Sets.newHashSet(result.getTweets());
+      final QueryResult result = SEARCH_RETRIES.call(
+          CircuitBreakerRegistry.guarded(breaker(), new Callable<QueryResult>() {
+            @Override public QueryResult call() throws Exception {
+              return twitter.search(tweetsQuery);
+            }
+          }), PageCursor.FetcherExecutor.INSTANCE, searchPacer);
+      // raw, since the bundled twitter4j jar carries no generic signatures.
+      @SuppressWarnings("unchecked")
+      final List<Tweet> tweets = (List<Tweet>) result.getTweets();
+      return Sets.newHashSet(tweets);
+    } catch (CallBlockedException blocked) {
+      return ImmutableSet.of();
     } catch (Exception cause) {
-      System.err.println("twitter4j API failed");
-      breaker().callFailed(new RuntimeException(cause));
+      if (Thread.currentThread().isInterrupted()) {
+        throw new IllegalStateException("interrupted while fetching a page", cause);
+      }
+      System.err.println("twitter4j API failed: " + cause.getMessage());
       return ImmutableSet.of();
     }
   }
 
-  private static CircuitBreaker<RuntimeException> breaker() {
-    return BREAKER;
+  static KeywordAutomaton compileKeywords(Set<String> defaultKeywords) {
+    final List<String> keywords = Lists.newArrayList(defaultKeywords);
+    try {
+      keywords.addAll(TwitterEnvironment.readKeywords());
+    } catch (IOException e) {
+      System.err.println("unable to read keywords file; hints will only match default keywords");
+    }
+
+    return KeywordAutomaton.compile(keywords);
   }
 
-  private static CircuitBreaker<RuntimeException> secondBreaker(){
-    return SECOND_BREAKER;
+  private CircuitBreaker<RuntimeException> breaker() {
+    return breakers.get(CircuitBreakerRegistry.SEARCH);
   }
 
-  private List<TweetPackage> compileFindings(Set<Tweet> totalRetrieved, Set<String> keywords) {
+  private CircuitBreaker<RuntimeException> secondBreaker(){
+    return breakers.get(CircuitBreakerRegistry.LOOKUP);
+  }
+
+  private List<TweetPackage> compileFindings(Collection<Tweet> totalRetrieved,
+      Set<String> keywords) {
+    final Map<Long, String> fullnames = getUserFirstnames(authorsOf(totalRetrieved));
+    return compileFindings(totalRetrieved, keywords, hints, Functions.forMap(fullnames, "n/a"));
+  }
+
+  /**
+   * @return the distinct authors of the given tweets.
+   */
+  static Set<Long> authorsOf(Collection<Tweet> tweets) {
+    final Set<Long> authors = Sets.newLinkedHashSet();
+    for (Tweet each : tweets) {
+      authors.add(each.getFromUserId());
+    }
+
+    return authors;
+  }
+
+  /**
+   * packages the retrieved tweets; shared by all the search backends.
+   *
+   * @param fullnames gives the first name of a tweet's author, given the author's id.
+   */
+  static List<TweetPackage> compileFindings(Collection<Tweet> totalRetrieved,
+      Set<String> keywords, KeywordAutomaton hints, Function<Long, String> fullnames) {
     final List<TweetPackage> tweetPackages = Lists.newArrayList();
+    final List<Tweet>        tweets        = Lists.newArrayList(totalRetrieved);
+    final List<TweetText>    contents      = Lists.newArrayList();
+    for (Tweet each : tweets) {
+      contents.add(TweetText.of(each.getText()));
+    }
 
-    for (Tweet each : totalRetrieved) {
-      final String content = each.getText().replaceAll("[\r\n]+", " ");
+    final List<Tweets.Entities> extracted = UTIL.extractAll(contents);
+    for (int i = 0; i < tweets.size(); i++) {
+      final Tweet  each    = tweets.get(i);
+      final TweetText content = contents.get(i);
       final String username = each.getFromUser();
       final long userId = each.getFromUserId();
       final String lastseen = each.getPlace() == null
           ? (Strings.isEmpty(each.getLocation()) ? "n/a" : each.getLocation())
           : each.getPlace().getName();
-      final List<String> urls = UTIL.extractURLs(content);
-      final List<String> mentions = UTIL.extractMentionedScreennames(content);
-      final String hint  = Strings.findMembers(content, keywords);
+      final Tweets.Entities entities = extracted.get(i);
+      final List<String> urls = entities.getURLs();
+      final List<String> mentions = entities.getMentionedScreennames();
+      final String hint  = hints.findMembers(content.toString(), keywords);
       final Date created = each.getCreatedAt();
 
 
-      final String fullname = getUserFirstname(userId);
+      final String fullname = fullnames.apply(userId);
 
 
       tweetPackages.add(new Builder(userId, username)
@@ -128,87 +321,172 @@ public class PeriodicTweetsSearch implements TweetsSearch {
     return tweetPackages;
   }
 
+  /**
+   * @return the user's first name, taken from the user's name or, if there is none, from the
+   *    user's screen name; "n/a" if the user has neither.
+   */
+  static String firstnameOf(User user) {
+    final String firstname  = user.getName();
+    final String screenname = user.getScreenName();
+    final boolean firstNameIsEmpty = Strings.isEmpty(firstname);
+    final boolean screenmaeIsEmpty = Strings.isEmpty(screenname);
+    if(firstNameIsEmpty && screenmaeIsEmpty)  return "n/a";
+    if(firstNameIsEmpty && !screenmaeIsEmpty) return NAMES.firstName(screenname);
+    return NAMES.firstName(firstname);
+  }
 
-  private static String getUserFirstname(long userID) {
-    String result = "n/a";
-    while (Strings.same(result, "n/a")){
-      try {
-        secondBreaker().callStarted();
-        try {
-          final ResponseList<Status> status = TwitterEnvironment.getTwitterService().getUserTimeline(userID);
-          secondBreaker().callSucceeded();
-          if(!status.isEmpty()){
-            for(Status each : status){
-              final User user = each.getUser();
-              if(user == null) continue;
-              final String firstname  = user.getName();
-              final String screenname = user.getScreenName();
-              final boolean firstNameIsEmpty = Strings.isEmpty(firstname);
-              final boolean screenmaeIsEmpty = Strings.isEmpty(screenname);
-              if(firstNameIsEmpty && screenmaeIsEmpty)  return "n/a";
-              if(firstNameIsEmpty && !screenmaeIsEmpty) return dealWithCamelCasing(screenname);
-              if(screenmaeIsEmpty) return dealWithCamelCasing(firstname);
-              return dealWithCamelCasing(firstname);
-            }
-           } else {
-            return "none";
-          }
 
-        } catch (Exception e){
-          secondBreaker().callFailed(new RuntimeException(e));
-          result = "n/a";
-        }
+  /**
+   * @return the first name of each user, from the {@link UserProfileCache} or else
+   *    looked up in bulk, {@value #MAX_USERS_PER_LOOKUP} users per call; lookups that fail for a
+   *    transient reason are retried. Users in a failed lookup are left out (and thus named
+   *    "n/a"); they will be looked up again next time.
+   */
+  private Map<Long, String> getUserFirstnames(Set<Long> userIDs) {
+    final Map<Long, String> fullnames = Maps.newHashMap();
+    final List<Long>        missing   = Lists.newArrayList();
+    for (Long each : userIDs) {
+      final String cached = users.get(each);
+      if (cached != null) {
+        fullnames.put(each, cached);
+      } else {
+        missing.add(each);
+      }
+    }
 
-      } catch (Exception e) {
-        result = "n/a";
+    for (List<Long> batch : Lists.partition(missing, MAX_USERS_PER_LOOKUP)) {
+      final long[] ids = Longs.toArray(batch);
+      try {
+        final List<User> found = LOOKUP_RETRIES.call(
+            CircuitBreakerRegistry.guarded(secondBreaker(), new Callable<List<User>>() {
+              @SuppressWarnings("unchecked")
+              @Override public List<User> call() throws Exception {
+                // raw, since the bundled twitter4j jar carries no generic signatures.
+                return (List<User>) twitter.lookupUsers(ids);
+              }
+            }), null, restPacer);
+        fullnames.putAll(remember(users, batch, found));
+      } catch (CallBlockedException blocked) {
+        break;
+      } catch (Exception e){
+        if (Thread.currentThread().isInterrupted()) {
+          throw new IllegalStateException("interrupted while looking up users", e);
+        }
+        // the breaker was told of the failed attempts; the users are looked up next time.
       }
+    }
+
+    return fullnames;
+  }
+
+  /**
+   * caches the first names of the looked up users. Requested users that were not returned
+   * (e.g., suspended or deleted ones) are cached as {@link UserProfileCache#UNKNOWN}.
+   *
+   * @return the first name of each requested user.
+   */
+  static Map<Long, String> remember(UserProfileCache cache, Collection<Long> requested,
+      List<User> found) {
+    final Map<Long, String> fullnames = Maps.newHashMap();
+    for (User each : found) {
+      if (each == null) continue;
+      final String firstname = firstnameOf(each);
+      cache.put(each.getId(), firstname);
+      fullnames.put(each.getId(), firstname);
+    }
 
+    for (Long each : requested) {
+      if (fullnames.containsKey(each)) continue;
+      cache.putUnknown(each);
+      fullnames.put(each, UserProfileCache.UNKNOWN);
     }
 
-    return result;
+    return fullnames;
   }
 
   /**
-   * Converts a camelCase to a more human form, with spaces. E.g. 'Camel case'
-   * @param word to be inspected.
-   * @return the first word in a camel cased string.
+   * saves the checkpoints, so that neither the next run nor a restart asks for older tweets.
    */
-  private static String dealWithCamelCasing(String word) {
-    Pattern pattern = Pattern.compile("([A-Z]|[a-z])[a-z]*");
-
-    List<String> tokens = Lists.newArrayList();
-    Matcher matcher = pattern.matcher(word);
-    String acronym = "";
-    while (matcher.find()) {
-      String found = matcher.group();
-      if (found.matches("^[A-Z]$")) {
-        acronym += found;
-      } else {
-        if (acronym.length() > 0) {
-          //we have an acronym to add before we continue
-          tokens.add(acronym);
-          acronym = "";
-        }
-        tokens.add(found.toLowerCase());
+  static void saveCheckpoints(SearchCheckpoints checkpoints) {
+    try {
+      checkpoints.save();
+    } catch (IOException e) {
+      System.err.println("unable to save search checkpoints");
+    }
+  }
+
+  /**
+   * @param claimed ids of the tweets already taken by this search; the returned ones are added.
+   * @return the retrieved tweets that were never collected before, nor taken by this search.
+   *    They are not marked as collected until {@link #commit} is called.
+   */
+  static Set<Tweet> unseen(SeenTweets seen, Set<Long> claimed, Collection<Tweet> retrieved) {
+    final Set<Tweet> fresh = Sets.newLinkedHashSet();
+    for (Tweet each : retrieved) {
+      if (!seen.contains(each.getId()) && claimed.add(each.getId())) {
+        fresh.add(each);
       }
     }
-    if (acronym.length() > 0) {
-      tokens.add(acronym);
+
+    return fresh;
+  }
+
+  /**
+   * marks the tweets of a search as collected and moves its checkpoints forward, saving both;
+   * called only once the search's findings have been packaged, so that a failed search leaves
+   * its tweets to be fetched again.
+   *
+   * @param claimed ids of the tweets found by the search.
+   * @param maxIds id of the newest tweet found by each of the search's queries.
+   */
+  static void commit(SeenTweets seen, Collection<Long> claimed, SearchCheckpoints checkpoints,
+      Map<String, Long> maxIds) {
+    for (Long each : claimed) {
+      seen.add(each);
     }
-    if (tokens.size() > 0) {
-      final String targetString = tokens.remove(0);
-      String humanisedString = Character.toUpperCase(targetString.charAt(0)) + targetString
-          .substring(1);
-      for (String s : tokens) {
-        humanisedString += " " + s;
-      }
-      return humanisedString.split(" ")[0];
+    saveSeen(seen);
+
+    for (Map.Entry<String, Long> each : maxIds.entrySet()) {
+      checkpoints.advance(each.getKey(), each.getValue());
     }
+    saveCheckpoints(checkpoints);
+  }
 
-    return word.split(" ")[0];
+  /**
+   * saves the seen tweets, so that a restart does not collect them again.
+   */
+  static void saveSeen(SeenTweets seen) {
+    try {
+      seen.save();
+    } catch (IOException e) {
+      System.err.println("unable to save seen tweets");
+    }
+  }
+
+  /**
+   * saves the {@link UserProfileCache}, so that a restart keeps its entries.
+   */
+  static void saveUserProfiles(UserProfileCache users) {
+    try {
+      users.save();
+    } catch (IOException e) {
+      System.err.println("unable to save the user profile cache");
+    }
+  }
+
+  /**
+   * @param sinceId only tweets newer than this one are searched; all of them if 0.
+   */
+  static Query buildOrQuery(Set<String> keywords, String language, long sinceId) {
+    final Query query = buildOrQuery(keywords, language);
+    if (sinceId > 0) {
+      query.setSinceId(sinceId);
+    }
+
+    return query;
   }
 
-  private Query buildOrQuery(Set<String> keywords, String language) {
+  private static Query buildOrQuery(Set<String> keywords, String language) {
     final StringBuilder queryString = new StringBuilder();
     for (Iterator<String> itr = keywords.iterator(); itr.hasNext(); ) {
       queryString.append(String.format("\"%s\"", itr.next()));
@@ -222,7 +500,7 @@ public class PeriodicTweetsSearch implements TweetsSearch {
     return query;
   }
 
-  private String buildAndQuery(Set<String> keywords) {
+  private static String buildAndQuery(Set<String> keywords) {
     final StringBuilder queryString = new StringBuilder();
     for (Iterator<String> itr = keywords.iterator(); itr.hasNext(); ) {
       queryString.append(itr.next());
@@ -236,6 +514,6 @@ public class PeriodicTweetsSearch implements TweetsSearch {
 
   public static void main(String[] args) {
     final String test = "huascarsanchez";
-    System.out.println(dealWithCamelCasing(test));
+    System.out.println(NAMES.firstName(test));
   }
 }
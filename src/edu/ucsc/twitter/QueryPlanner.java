@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import twitter4j.Tweet;
+
+/**
+ * Splits a set of keywords into groups, each searched by its own query, so that any number of
+ * keywords can be searched at once: each query stays within the search API's limits (on its
+ * length, once URL encoded, and on its number of keywords), and is expected to return no more
+ * than its share of the tweets wanted. How many tweets a keyword brings is learned from past
+ * searches; keywords that bring many are given a query of their own, or shared with a few
+ * others, while those that bring few are packed together. Keywords never searched before are
+ * assumed to bring none.
+ *
+ * <p>A planner is thread safe.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+class QueryPlanner {
+  static final int MAX_QUERY_LENGTH       = 1000; // URL encoded, as the search API counts it.
+  static final int MAX_KEYWORDS_PER_QUERY = 10;
+
+  private static final double SMOOTHING = 0.3; // weight of the latest search in a keyword's yield.
+
+  private final Map<String, Double> yields = Maps.newHashMap();
+  private final int                 maxLength;
+  private final int                 maxKeywords;
+
+  QueryPlanner() {
+    this(MAX_QUERY_LENGTH, MAX_KEYWORDS_PER_QUERY);
+  }
+
+  /**
+   * @param maxLength max length of a URL encoded query.
+   * @param maxKeywords max number of keywords in a query.
+   */
+  QueryPlanner(int maxLength, int maxKeywords) {
+    this.maxLength   = maxLength;
+    this.maxKeywords = Math.max(1, maxKeywords);
+  }
+
+  /**
+   * @param keywords keywords to be searched.
+   * @param limit number of tweets wanted from all queries together.
+   * @return the keywords of each query; their order is the same every time, for as long as the
+   *    yields stay the same, so queries keep their search checkpoints.
+   */
+  List<Set<String>> plan(Set<String> keywords, int limit) {
+    final List<String> sorted = Lists.newArrayList(keywords);
+    final Map<String, Double> known;
+    synchronized (this) {
+      known = Maps.newHashMap(yields);
+    }
+
+    Collections.sort(sorted, new Comparator<String>() {
+      @Override public int compare(String a, String b) {
+        final int byYield = Double.compare(yieldOf(known, b), yieldOf(known, a));
+        return byYield != 0 ? byYield : a.compareTo(b);
+      }
+    });
+
+    // the more queries, the smaller each one's share; so keep splitting until they agree.
+    List<Set<String>> groups = pack(sorted, known, limit);
+    for (int queries = 0; queries < groups.size(); ) {
+      queries = groups.size();
+      groups  = pack(sorted, known, limit / (double) queries);
+    }
+
+    return groups;
+  }
+
+  /**
+   * packs the keywords, sorted by yield, into as few queries as possible; first fit.
+   */
+  private List<Set<String>> pack(List<String> sorted, Map<String, Double> known, double share) {
+    final List<Set<String>> groups   = Lists.newArrayList();
+    final List<Double>      expected = Lists.newArrayList();
+    for (String each : sorted) {
+      final double yield = yieldOf(known, each);
+
+      boolean packed = false;
+      for (int i = 0; i < groups.size() && !packed; i++) {
+        final Set<String> group = groups.get(i);
+        if (group.size() < maxKeywords && expected.get(i) + yield <= share
+            && fits(group, each)) {
+          group.add(each);
+          expected.set(i, expected.get(i) + yield);
+          packed = true;
+        }
+      }
+
+      if (!packed) {
+        groups.add(Sets.newLinkedHashSet(ImmutableSet.of(each)));
+        expected.add(yield);
+      }
+    }
+
+    return groups;
+  }
+
+  private boolean fits(Set<String> group, String keyword) {
+    final Set<String> grown = Sets.newLinkedHashSet(group);
+    grown.add(keyword);
+    return encodedLength(PeriodicTweetsSearch.buildOrQuery(grown, "en", 0).getQuery())
+        <= maxLength;
+  }
+
+  private static int encodedLength(String query) {
+    try {
+      return URLEncoder.encode(query, Charsets.UTF_8.name()).length();
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e); // every JVM supports UTF-8.
+    }
+  }
+
+  /**
+   * @param limit number of tweets wanted from all queries together.
+   * @param queries number of queries.
+   * @return number of tweets wanted from each query.
+   */
+  static int shareOf(int limit, int queries) {
+    return queries <= 1 ? limit : (limit + queries - 1) / queries;
+  }
+
+  /**
+   * learns how many tweets each keyword of a query brings. Each tweet is credited to the
+   * keywords it contains, or to all of them if it contains none (e.g., it matched a keyword in
+   * its author's name).
+   *
+   * @param group keywords of the query.
+   * @param retrieved new tweets the query returned.
+   */
+  void record(Set<String> group, Collection<Tweet> retrieved) {
+    final List<String> texts = Lists.newArrayListWithCapacity(retrieved.size());
+    for (Tweet each : retrieved) {
+      if (each.getText() != null) { texts.add(each.getText()); }
+    }
+
+    recordTexts(group, texts);
+  }
+
+  void recordTexts(Set<String> group, List<String> texts) {
+    if (group.isEmpty()) { return; }
+
+    final Map<String, Double> credits = Maps.newHashMap();
+    for (String each : group) {
+      credits.put(each, 0.0);
+    }
+
+    final List<String> matched = Lists.newArrayList();
+    for (String text : texts) {
+      final String lowercase = text.toLowerCase();
+      matched.clear();
+      for (String each : group) {
+        if (lowercase.contains(each.toLowerCase())) { matched.add(each); }
+      }
+
+      final Collection<String> credited = matched.isEmpty() ? group : matched;
+      for (String each : credited) {
+        credits.put(each, credits.get(each) + 1.0 / credited.size());
+      }
+    }
+
+    synchronized (this) {
+      for (Map.Entry<String, Double> each : credits.entrySet()) {
+        final Double previous = yields.get(each.getKey());
+        yields.put(each.getKey(), previous == null
+            ? each.getValue()
+            : previous + SMOOTHING * (each.getValue() - previous));
+      }
+    }
+  }
+
+  /**
+   * @return the expected number of tweets a keyword brings per search.
+   */
+  synchronized double yieldOf(String keyword) {
+    return yieldOf(yields, keyword);
+  }
+
+  private static double yieldOf(Map<String, Double> yields, String keyword) {
+    final Double yield = yields.get(keyword);
+    return yield == null ? 0.0 : yield;
+  }
+
+  @Override public synchronized String toString() {
+    return String.format("QueryPlanner(keywords=%d, maxLength=%d, maxKeywords=%d)",
+        yields.size(), maxLength, maxKeywords);
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import edu.ucsc.twitter.util.TweetText;
+
+/**
+ * Decides whether a collected tweet is worth keeping, before it is written to a results file.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public interface RelevanceScorer {
+  /**
+   * scores a tweet's text.
+   * @param message
+   *    text of the tweet.
+   * @return a score between 0.0 (relevant) and 1.0 (irrelevant).
+   */
+  double score(TweetText message);
+
+  /**
+   * @param message
+   *    text of the tweet.
+   * @return true if the tweet should be discarded.
+   */
+  boolean isIrrelevant(TweetText message);
+}
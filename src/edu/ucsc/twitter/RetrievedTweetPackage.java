@@ -18,6 +18,8 @@ package edu.ucsc.twitter;
 import com.google.common.base.Supplier;
 import com.google.common.collect.Sets;
 import edu.ucsc.cli.util.Console;
+import edu.ucsc.twitter.util.Symbols;
+import edu.ucsc.twitter.util.TweetText;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -25,6 +27,9 @@ import java.util.Set;
 /**
  * ...
  *
+ * <p>The author and the mentioned screen names are kept as {@link Symbols symbol} ids, and are
+ * only resolved back to names when requested (e.g., by the results writers).</p>
+ *
  * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
  */
 public class RetrievedTweetPackage implements TweetPackage {
@@ -47,7 +52,12 @@ public class RetrievedTweetPackage implements TweetPackage {
   }
 
   @Override public Set<String> getUserMentions() {
-    return Sets.newHashSet(builder.mentions);
+    final Set<String> mentions = Sets.newHashSet();
+    for (int each : builder.mentions) {
+      mentions.add(builder.symbols.resolve(each));
+    }
+
+    return mentions;
   }
 
   @Override public String getHint() {
@@ -55,11 +65,15 @@ public class RetrievedTweetPackage implements TweetPackage {
   }
 
   @Override public String getUserCurrentStatus() {
+    return builder.message == null ? null : builder.message.toString();
+  }
+
+  @Override public TweetText getUserCurrentStatusText() {
     return builder.message;
   }
 
   @Override public String getUsername() {
-    return builder.author;
+    return builder.symbols.resolve(builder.author);
   }
 
   @Override public Set<String> getUrls() {
@@ -71,20 +85,27 @@ public class RetrievedTweetPackage implements TweetPackage {
   }
 
   public static class Builder implements Supplier<TweetPackage> {
-    private final String     author;
+    private static final int[] NO_MENTIONS = new int[0];
+
+    private final Symbols    symbols;
+    private final int        author;
     private final long       authorId;
-    private String           message;
+    private TweetText        message;
     private String           lastSeen;
     private List<String>     urls;
-    private List<String>     mentions;
+    private int[]            mentions = NO_MENTIONS;
     private Date             createdAt;
     private String           hint;
     private String           fullname;
 
     public Builder(long userId, String username){
-      this.authorId = userId;
-      this.author   = username;
+      this(Symbols.shared(), userId, username);
+    }
 
+    public Builder(Symbols symbols, long userId, String username){
+      this.symbols  = symbols;
+      this.authorId = userId;
+      this.author   = symbols.intern(username);
     }
 
     public Builder createdAt(Date val){
@@ -93,6 +114,10 @@ public class RetrievedTweetPackage implements TweetPackage {
     }
 
     public Builder status(String message){
+      return status(TweetText.of(message));
+    }
+
+    public Builder status(TweetText message){
       this.message = message;
       return this;
     }
@@ -119,7 +144,7 @@ public class RetrievedTweetPackage implements TweetPackage {
     }
 
     public Builder mentions(List<String> vals){
-      this.mentions = vals;
+      this.mentions = vals == null ? NO_MENTIONS : symbols.internAll(Sets.newLinkedHashSet(vals));
       return this;
     }
 
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import edu.ucsc.broadcast.EventService;
+import edu.ucsc.cli.util.Strings;
+import edu.ucsc.twitter.RetrievedTweetPackage.Builder;
+import edu.ucsc.twitter.util.KeywordAutomaton;
+import edu.ucsc.twitter.util.SeenTweets;
+import edu.ucsc.twitter.util.TweetText;
+import edu.ucsc.twitter.util.Tweets;
+import edu.ucsc.twitter.util.TwitterEnvironment;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import twitter4j.FilterQuery;
+import twitter4j.Status;
+import twitter4j.StatusDeletionNotice;
+import twitter4j.StatusListener;
+import twitter4j.TwitterStream;
+import twitter4j.TwitterStreamFactory;
+import twitter4j.User;
+
+/**
+ * Streaming alternative to the periodic searching tasks: rather than polling the search API,
+ * it keeps a single filter stream open on the current keyword set (the default keywords plus
+ * the ones in {@link TwitterEnvironment#getKeywordsFile()}), and publishes tweets as soon as
+ * they arrive. Tweets that arrive together are published together, in a single
+ * {@link ResultPackage}. Streamed tweets carry their author's profile, so no user lookups are
+ * needed either.
+ *
+ * <p>The task's runnable never returns; it is the one packaging and publishing the tweets, so
+ * that a subscriber throwing (e.g., when a writer is full) ends the task, and the watchdog takes
+ * it from there, just like with the periodic tasks. Tweets are only marked as seen once they have
+ * been published; those still queued are handed over to the task's next instance. At most
+ * {@value #MAX_QUEUED_TWEETS} tweets are queued; if the subscribers fall that far behind, newer
+ * tweets are dropped (and counted) rather than filling the heap. Every so often, the keywords
+ * file is read again, and the stream's filter is replaced if the keywords changed.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class StreamingTweetsTask extends PeriodicTask {
+  private static final long REFRESH_PERIOD       = TimeUnit.MINUTES.toMillis(1);
+  private static final int  MAX_TRACKED_KEYWORDS = 400; // the most the filter stream accepts.
+
+  static final int MAX_QUEUED_TWEETS = 10000;
+
+  private static final Tweets UTIL = new Tweets();
+
+  private final Supplier<TwitterStream>      streams;
+  private final Set<String>                  defaultKeywords;
+  private final KeywordAutomaton             hints;
+  private final BlockingQueue<Status>        arrived;
+  private final SeenTweets                   seen;
+  private final AtomicLong                   dropped = new AtomicLong();
+
+  private TwitterStream stream;
+  private Set<String>   tracked = Collections.emptySet();
+
+  public StreamingTweetsTask(Set<String> defaultKeywords, EventService eventBus) {
+    this(new Supplier<TwitterStream>() {
+      @Override public TwitterStream get() {
+        return new TwitterStreamFactory().getInstance();
+      }
+    }, defaultKeywords, eventBus);
+  }
+
+  /**
+   * @param streams creates the stream; e.g., one connecting to a local endpoint.
+   * @param defaultKeywords keywords always tracked.
+   * @param eventBus where tweets are published.
+   */
+  public StreamingTweetsTask(Supplier<TwitterStream> streams, Set<String> defaultKeywords,
+      EventService eventBus) {
+    this(streams, defaultKeywords, SeenTweets.shared(), eventBus);
+  }
+
+  StreamingTweetsTask(Supplier<TwitterStream> streams, Set<String> defaultKeywords,
+      SeenTweets seen, EventService eventBus) {
+    this(streams, defaultKeywords, seen, new LinkedBlockingQueue<Status>(MAX_QUEUED_TWEETS),
+        eventBus);
+  }
+
+  /**
+   * @param arrived streamed tweets waiting to be published; bounded.
+   */
+  StreamingTweetsTask(Supplier<TwitterStream> streams, Set<String> defaultKeywords,
+      SeenTweets seen, BlockingQueue<Status> arrived, EventService eventBus) {
+    super(eventBus);
+    this.streams         = streams;
+    this.defaultKeywords = ImmutableSet.copyOf(defaultKeywords);
+    this.hints           = PeriodicTweetsSearch.compileKeywords(defaultKeywords);
+    this.arrived         = arrived;
+    this.seen            = seen;
+  }
+
+  /**
+   * @return a new instance, which publishes the tweets this one left queued.
+   */
+  @Override public PeriodicTask getInstance() {
+    return new StreamingTweetsTask(streams, defaultKeywords, seen, arrived, getEventBus());
+  }
+
+  @Override public Runnable getRunnable() {
+    return new Runnable() {
+      @Override public void run() {
+        try {
+          long nextRefresh = 0;
+          while (!Thread.currentThread().isInterrupted()) {
+            if (System.currentTimeMillis() >= nextRefresh) {
+              refreshFilter();
+              nextRefresh = System.currentTimeMillis() + REFRESH_PERIOD;
+            }
+
+            final Status first = arrived.poll(
+                nextRefresh - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            if (first == null) { continue; }
+
+            final List<Status> batch = Lists.newArrayList(first);
+            arrived.drainTo(batch);
+            publishAll(batch);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+  }
+
+  /**
+   * (re)opens the filter stream, if the keywords to be tracked have changed.
+   */
+  private synchronized void refreshFilter() {
+    final Set<String> keywords = currentKeywords();
+    if (keywords.equals(tracked)) { return; }
+
+    if (stream == null) {
+      stream = streams.get();
+      stream.addListener(new Listener());
+    }
+
+    // replaces the current connection, if any.
+    tracked = keywords;
+    stream.filter(new FilterQuery().track(keywords.toArray(new String[keywords.size()])));
+  }
+
+  /**
+   * packages and publishes the tweets never published before; only then are they marked as
+   * seen, so that a subscriber throwing leaves them unmarked.
+   */
+  private void publishAll(List<Status> batch) {
+    final long lost = dropped.getAndSet(0);
+    if (lost > 0) {
+      System.err.println("results are written too slowly; " + lost
+          + " streamed tweets were dropped");
+    }
+
+    final Set<String>        keywords = currentTracked();
+    final Set<Long>          ids      = Sets.newLinkedHashSet();
+    final List<TweetPackage> packages = Lists.newArrayList();
+    for (Status each : batch) {
+      if (seen.contains(each.getId()) || !ids.add(each.getId())) { continue; }
+      packages.add(packageOf(each, keywords, hints));
+    }
+    if (packages.isEmpty()) { return; }
+
+    publish(ResultPackage.emptyTweetsPackage().putAllTweetResults(packages));
+    for (Long each : ids) {
+      seen.add(each);
+    }
+    PeriodicTweetsSearch.saveSeen(seen);
+  }
+
+  private synchronized Set<String> currentTracked() {
+    return tracked;
+  }
+
+  private Set<String> currentKeywords() {
+    final Set<String> keywords = Sets.newLinkedHashSet(defaultKeywords);
+    try {
+      keywords.addAll(TwitterEnvironment.readKeywords());
+    } catch (IOException e) {
+      System.err.println("unable to read keywords file; tracking default keywords only");
+    }
+
+    if (keywords.size() <= MAX_TRACKED_KEYWORDS) { return keywords; }
+
+    System.err.println("too many keywords; only the first " + MAX_TRACKED_KEYWORDS
+        + " are tracked");
+    return ImmutableSet.copyOf(Lists.newArrayList(keywords).subList(0, MAX_TRACKED_KEYWORDS));
+  }
+
+  @Override public void shutdown() {
+    synchronized (this) {
+      if (stream != null) { stream.shutdown(); }
+    }
+    super.shutdown();
+  }
+
+  /**
+   * packages a streamed tweet the same way a searched one is packaged.
+   */
+  static TweetPackage packageOf(Status status, Set<String> keywords, KeywordAutomaton hints) {
+    final User      user     = status.getUser();
+    final TweetText content  = TweetText.of(status.getText());
+    final String    lastseen = status.getPlace() == null
+        ? (Strings.isEmpty(user.getLocation()) ? "n/a" : user.getLocation())
+        : status.getPlace().getName();
+    final Tweets.Entities entities = UTIL.extractAll(content);
+
+    return new Builder(user.getId(), user.getScreenName())
+        .status(content).lastseen(lastseen)
+        .urls(entities.getURLs())
+        .mentions(entities.getMentionedScreennames())
+        .hint(hints.findMembers(content.toString(), keywords))
+        .fullname(PeriodicTweetsSearch.firstnameOf(user))
+        .createdAt(status.getCreatedAt()).get();
+  }
+
+  /**
+   * Queues each streamed tweet, on twitter4j's thread, for the task to publish it; or drops it,
+   * if the queue is full.
+   */
+  private class Listener implements StatusListener {
+    @Override public void onStatus(Status status) {
+      if (status.getUser() == null || seen.contains(status.getId())) { return; }
+      if (!arrived.offer(status)) {
+        dropped.incrementAndGet();
+      }
+    }
+
+    @Override public void onDeletionNotice(StatusDeletionNotice notice) {}
+
+    @Override public void onTrackLimitationNotice(int numberOfLimitedStatuses) {
+      System.err.println("stream is too busy; " + numberOfLimitedStatuses
+          + " matching tweets were not delivered");
+    }
+
+    @Override public void onScrubGeo(long userId, long upToStatusId) {}
+
+    @Override public void onException(Exception cause) {
+      // twitter4j reconnects on its own, backing off after each failure.
+      System.err.println("twitter4j stream failed: " + cause.getMessage());
+    }
+  }
+}
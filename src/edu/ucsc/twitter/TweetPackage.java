@@ -15,6 +15,7 @@
  */
 package edu.ucsc.twitter;
 
+import edu.ucsc.twitter.util.TweetText;
 import java.util.Date;
 import java.util.Set;
 
@@ -55,6 +56,11 @@ public interface TweetPackage {
    */
   String getUserCurrentStatus();
 
+  /**
+   * @return {@link #getUserCurrentStatus()}, along with its raw and lowercase views.
+   */
+  TweetText getUserCurrentStatusText();
+
   /**
    * @return the entity who posted the {@link #getUserCurrentStatus() tweet}.
    */
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import edu.ucsc.twitter.util.TwitterEnvironment;
+import java.util.Set;
+
+/**
+ * Creates the {@link TweetsSearch} backend chosen in the runtime configuration.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class TweetsSearches {
+  /**
+   * Never invoked
+   */
+  private TweetsSearches() {}
+
+  /**
+   * @param defaultKeywords keywords searched when no keywords are sampled from the keywords file.
+   * @return an {@link AsyncTweetsSearch} if {@link TwitterEnvironment#isAsyncSearchEnabled()};
+   *    otherwise, a {@link PeriodicTweetsSearch}. The latter is also used whenever the API
+   *    calls are recorded ({@link TwitterEnvironment#getSearchRecordFile()}) or played back
+   *    ({@link TwitterEnvironment#getSearchReplayFile()}), since only its client,
+   *    {@link TwitterEnvironment#getTwitterService()}, records and plays them back.
+   */
+  public static TweetsSearch fromEnvironment(Set<String> defaultKeywords) {
+    final TwitterEnvironment environment = TwitterEnvironment.getInstance();
+    final boolean recorded = environment.getSearchRecordFile() != null
+        || environment.getSearchReplayFile() != null;
+    return environment.isAsyncSearchEnabled() && !recorded
+        ? new AsyncTweetsSearch(defaultKeywords)
+        : new PeriodicTweetsSearch(defaultKeywords);
+  }
+}
@@ -29,7 +29,7 @@ public class TweetsWithDemogSearchingPeriodicTask extends PeriodicTask {
   private final TweetsSearch                    search;
   private final int                             maxNumberOfTweet;
 
-  private static final Set<String> DEFAULT = new HashSet<String>();
+  static final Set<String> DEFAULT = new HashSet<String>();
   static {
     DEFAULT.add("I'm 18");
     DEFAULT.add("I'm 17");
@@ -45,7 +45,7 @@ public class TweetsWithDemogSearchingPeriodicTask extends PeriodicTask {
   }
 
   public TweetsWithDemogSearchingPeriodicTask(EventService eventBus){
-    this(new PeriodicTweetsSearch(), eventBus);
+    this(TweetsSearches.fromEnvironment(DEFAULT), eventBus);
   }
 
   @Override public PeriodicTask getInstance() {
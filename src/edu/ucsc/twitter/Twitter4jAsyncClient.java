@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import edu.ucsc.twitter.util.TwitterEnvironment;
+import java.util.List;
+import twitter4j.AsyncTwitter;
+import twitter4j.AsyncTwitterFactory;
+import twitter4j.Query;
+import twitter4j.QueryResult;
+import twitter4j.ResponseList;
+import twitter4j.TwitterAdapter;
+import twitter4j.TwitterException;
+import twitter4j.TwitterMethod;
+import twitter4j.User;
+
+/**
+ * {@link AsyncTwitterClient} backed by twitter4j's {@link AsyncTwitter}. twitter4j delivers
+ * results to listeners, which get no way to tell which call a result belongs to; hence each call
+ * gets its own {@link AsyncTwitter}, listened to by the call's callback only. All of them share
+ * twitter4j's single dispatcher, so the number of threads stays fixed (see
+ * {@code async.numThreads} in twitter4j's configuration) no matter how many calls are
+ * outstanding.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class Twitter4jAsyncClient implements AsyncTwitterClient {
+  private final AsyncTwitterFactory factory;
+
+  public Twitter4jAsyncClient() {
+    this(TwitterEnvironment.getAsyncTwitterFactory());
+  }
+
+  public Twitter4jAsyncClient(AsyncTwitterFactory factory) {
+    this.factory = factory;
+  }
+
+  @Override public void search(Query query, final Callback<QueryResult> callback) {
+    final AsyncTwitter twitter = factory.getInstance();
+    twitter.addListener(new FailureAdapter(callback) {
+      @Override public void searched(QueryResult result) {
+        callback.onSuccess(result);
+      }
+    });
+    twitter.search(query);
+  }
+
+  @Override public void lookupUsers(long[] userIds, final Callback<List<User>> callback) {
+    final AsyncTwitter twitter = factory.getInstance();
+    twitter.addListener(new FailureAdapter(callback) {
+      @SuppressWarnings("unchecked")
+      @Override public void lookedupUsers(ResponseList users) {
+        // raw, since the bundled twitter4j jar carries no generic signatures.
+        callback.onSuccess((List<User>) users);
+      }
+    });
+    twitter.lookupUsers(userIds);
+  }
+
+  /**
+   * passes failed calls on to their callback.
+   */
+  private static class FailureAdapter extends TwitterAdapter {
+    private final Callback<?> callback;
+
+    FailureAdapter(Callback<?> callback) {
+      this.callback = callback;
+    }
+
+    @Override public void onException(TwitterException cause, TwitterMethod method) {
+      callback.onFailure(cause);
+    }
+  }
+}
@@ -83,6 +83,19 @@ public class BasicCircuitBreaker<E extends Exception> implements CircuitBreaker<
     }
   }
 
+  @Override public long callSent() throws E {
+    callStarted();
+    return System.nanoTime();
+  }
+
+  @Override public void callSucceeded(long startedAt) {
+    callSucceeded();
+  }
+
+  @Override public void callFailed(E error, long startedAt) {
+    callFailed(error);
+  }
+
   @Override public long getRetryThreshold() {
     return retryThreshold;
   }
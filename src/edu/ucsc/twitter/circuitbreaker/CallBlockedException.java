@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.circuitbreaker;
+
+/**
+ * Thrown by a {@link SlidingWindowCircuitBreaker} that blocks a call; i.e., one that is open, or
+ * whose trial calls are under way. It is an {@link IllegalStateException}, as the call was
+ * made while the breaker did not accept it, but callers that tell a blocked call from any other
+ * failure (e.g., an interrupt while waiting to retry) must catch it by its own type.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class CallBlockedException extends IllegalStateException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * @param message the breaker and its status.
+   * @param cause the failure that last opened the breaker; null if unknown.
+   */
+  public CallBlockedException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -26,6 +26,31 @@ public interface CircuitBreaker <E extends Exception> {
    */
   void callFailed(E error);
 
+  /**
+   * breaker acknowledges an intended call whose outcome is reported on another thread; e.g., by
+   * a callback. Its outcome is reported with {@link #callSucceeded(long)} or
+   * {@link #callFailed(Exception, long)}.
+   * @return
+   *    the time, in nanoseconds, the call started.
+   * @throws E
+   *    thrown if the breaker is not ready to accept new calls.
+   */
+  long callSent() throws E;
+
+  /**
+   * same as {@link #callSucceeded()}, for a call acknowledged with {@link #callSent()}.
+   * @param startedAt
+   *    the time {@link #callSent()} returned for the call.
+   */
+  void callSucceeded(long startedAt);
+
+  /**
+   * same as {@link #callFailed(Exception)}, for a call acknowledged with {@link #callSent()}.
+   * @param startedAt
+   *    the time {@link #callSent()} returned for the call.
+   */
+  void callFailed(E error, long startedAt);
+
   /**
    * @return
    *    The amount of time in milliseconds before the circuit breaker will let calls
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.circuitbreaker;
+
+import com.google.common.collect.Maps;
+import edu.ucsc.cli.util.Strings;
+import edu.ucsc.twitter.util.TwitterEnvironment;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import twitter4j.conf.ConfigurationContext;
+
+/**
+ * Hands out a named {@link CircuitBreaker} per Twitter endpoint and credential, so that an
+ * endpoint that keeps failing (e.g., user lookups) does not stop the calls to the others (e.g.,
+ * searches), and the reverse; nor does a credential that was locked out stop the calls made
+ * with another one. Each breaker takes its thresholds from the runtime configuration: first from
+ * its endpoint's settings (e.g., {@code circuit.breaker.search.failed.call.threshold}), and else
+ * from the ones shared by all endpoints.
+ *
+ * <p>A registry is thread safe.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class CircuitBreakerRegistry {
+  public static final String SEARCH = "search";
+  public static final String LOOKUP = "lookup";
+
+  private final ConcurrentMap<String, CircuitBreaker<RuntimeException>> breakers
+      = Maps.newConcurrentMap();
+
+  private final TwitterEnvironment environment;
+  private final String             credential;
+
+  /**
+   * @param environment where the thresholds of each endpoint are read from.
+   * @param credential credential the calls are made with, unless told otherwise.
+   */
+  public CircuitBreakerRegistry(TwitterEnvironment environment, String credential) {
+    this.environment = environment;
+    this.credential  = credential;
+  }
+
+  /**
+   * @return the registry shared by all searches, whose calls are made with the credential
+   *    twitter4j is configured with.
+   */
+  public static CircuitBreakerRegistry shared() {
+    return Installer.INSTANCE;
+  }
+
+  /**
+   * @param breaker breaker of the endpoint the call is made to.
+   * @param call a call to the endpoint.
+   * @return the call, telling the breaker each time it is made; i.e., once per attempt, and
+   *    only once the attempt's token, if it is paced, was taken. So the breaker times the call
+   *    itself, and not the wait for a token or for a retry, which would otherwise make our own
+   *    pacing look like a slow endpoint. The call fails with a {@link CallBlockedException} if
+   *    the breaker blocks it.
+   */
+  public static <T> Callable<T> guarded(final CircuitBreaker<RuntimeException> breaker,
+      final Callable<T> call) {
+    return new Callable<T>() {
+      @Override public T call() throws Exception {
+        breaker.callStarted();
+        try {
+          final T result = call.call();
+          breaker.callSucceeded();
+          return result;
+        } catch (Exception failure) {
+          breaker.callFailed(failure instanceof RuntimeException
+              ? (RuntimeException) failure
+              : new RuntimeException(failure));
+          throw failure;
+        }
+      }
+    };
+  }
+
+  /**
+   * @param endpoint endpoint called; e.g., {@link #SEARCH}.
+   * @return the breaker of the endpoint, for calls made with the default credential.
+   */
+  public CircuitBreaker<RuntimeException> get(String endpoint) {
+    return get(endpoint, credential);
+  }
+
+  /**
+   * @param endpoint endpoint called; e.g., {@link #SEARCH}.
+   * @param credential credential the calls are made with.
+   * @return the breaker of the endpoint, for calls made with the credential.
+   */
+  public CircuitBreaker<RuntimeException> get(String endpoint, String credential) {
+    final String name = nameOf(endpoint, credential);
+    final CircuitBreaker<RuntimeException> existing = breakers.get(name);
+    if (existing != null) { return existing; }
+
+    final CircuitBreaker<RuntimeException> created = newBreaker(endpoint);
+    final CircuitBreaker<RuntimeException> raced   = breakers.putIfAbsent(name, created);
+    return raced == null ? created : raced;
+  }
+
+  /**
+   * @return a new breaker for the endpoint, with its thresholds; it opens on the rate of failed
+   *    or slow calls, so that a failure now and then does not block the endpoint.
+   */
+  protected CircuitBreaker<RuntimeException> newBreaker(String endpoint) {
+    return SlidingWindowCircuitBreaker.builder(endpoint)
+        .windowSize(environment.getCircuitBreakerWindowSize(endpoint))
+        .minimumCalls(environment.getCircuitBreakerMinimumCalls(endpoint))
+        .failedCallThreshold(environment.getCircuitBreakerFailedCallThreshold(endpoint))
+        .failureRateThreshold(environment.getCircuitBreakerFailureRateThreshold(endpoint))
+        .slowCallRateThreshold(environment.getCircuitBreakerSlowCallRateThreshold(endpoint))
+        .slowCallDuration(environment.getCircuitBreakerSlowCallDuration(endpoint),
+            TimeUnit.MILLISECONDS)
+        .trialCalls(environment.getCircuitBreakerTrialCalls(endpoint))
+        .retryThreshold(environment.getCircuitBreakerRetryThreshold(endpoint),
+            TimeUnit.NANOSECONDS)
+        .build();
+  }
+
+  private static String nameOf(String endpoint, String credential) {
+    return endpoint + "/" + credential;
+  }
+
+  /**
+   * @return the status of each breaker handed out so far, by name (i.e., endpoint/credential).
+   */
+  public Map<String, CircuitBreakerStatus> getStatuses() {
+    final Map<String, CircuitBreakerStatus> statuses = Maps.newTreeMap();
+    for (Map.Entry<String, CircuitBreaker<RuntimeException>> each : breakers.entrySet()) {
+      statuses.put(each.getKey(), each.getValue().status());
+    }
+
+    return statuses;
+  }
+
+  @Override public String toString() {
+    return String.format("CircuitBreakerRegistry(%s)", getStatuses());
+  }
+
+  /**
+   * Lazy-constructed singleton, which is thread safe
+   */
+  static class Installer {
+    static final CircuitBreakerRegistry INSTANCE;
+
+    static {
+      final String user = ConfigurationContext.getInstance().getUser();
+      INSTANCE = new CircuitBreakerRegistry(TwitterEnvironment.getInstance(),
+          Strings.isEmpty(user) ? "anonymous" : user);
+    }
+  }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.circuitbreaker;
+
+import com.google.common.base.Preconditions;
+import edu.ucsc.twitter.util.TwitterEnvironment;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker that opens on the rate, rather than the number, of failed calls: the outcomes
+ * of the latest {@code windowSize} calls are kept in a ring, and the breaker opens once at least
+ * {@code minimumCalls} of them are in, and either the share of failed calls reaches the failure
+ * rate threshold, or the share of slow calls (failed or not) reaches the slow call rate
+ * threshold. So a network blip now and then does not stop the calls, while an outage still does.
+ *
+ * <p>An open breaker blocks calls, by throwing a {@link CallBlockedException} from
+ * {@link #callStarted()}, for {@code retryThreshold} nanoseconds. It then lets
+ * {@code trialCalls} calls through, and blocks the rest until they are back; the breaker closes,
+ * with an empty ring, if the trial calls do not reach the thresholds, and opens again if they
+ * do.</p>
+ *
+ * <p>A call is slow if it takes longer than {@code slowCallDuration} from
+ * {@link #callStarted()} to {@link #callSucceeded()} or {@link #callFailed(RuntimeException)};
+ * both ends must be called from the same thread for the call to be timed. A call whose result
+ * comes back on a callback thread is acknowledged with {@link #callSent()} instead, and its
+ * outcome reported along with the time that returned.</p>
+ *
+ * <p>A breaker is thread safe, and does not lock: the ring and its counts are updated with
+ * atomic operations, so the rates may be off by a call or two while the ring is being cleared
+ * by a breaker that closes.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class SlidingWindowCircuitBreaker implements CircuitBreaker<RuntimeException> {
+  private static final long NO_CLOSED_YET = -1L;
+
+  // outcomes of a call, as kept in the ring.
+  private static final int EMPTY     = 0;
+  private static final int SUCCEEDED = 1;
+  private static final int FAILED    = 2;
+  private static final int SLOW      = 4;
+
+  private final String name;
+  private final int    windowSize;
+  private final int    minimumCalls;
+  private final long   failedCallThreshold;
+  private final double failureRateThreshold;
+  private final double slowCallRateThreshold;
+  private final long   slowCallDuration;
+  private final int    trialCalls;
+  private final long   retryThreshold;
+
+  private final AtomicIntegerArray window;
+  private final AtomicLong         cursor   = new AtomicLong();     // # of calls ever recorded.
+  private final AtomicInteger      calls    = new AtomicInteger();  // # of calls in the ring.
+  private final AtomicInteger      failures = new AtomicInteger();  // # of failed calls in it.
+  private final AtomicInteger      slow     = new AtomicInteger();  // # of slow calls in it.
+
+  private final AtomicInteger permits        = new AtomicInteger(); // trial calls left to start.
+  private final AtomicInteger trials         = new AtomicInteger(); // trial calls back.
+  private final AtomicInteger failedTrials   = new AtomicInteger();
+  private final AtomicInteger slowTrials     = new AtomicInteger();
+
+  private final AtomicReference<CircuitBreakerStatus> status
+      = new AtomicReference<CircuitBreakerStatus>(CircuitBreakerStatus.CLOSED);
+  private final AtomicReference<RuntimeException> lastException
+      = new AtomicReference<RuntimeException>();
+  private final AtomicLong openedAt      = new AtomicLong(); // last time the breaker opened, or
+                                                             // let trial calls go through.
+  private final AtomicLong outageStarted = new AtomicLong(); // time the breaker left CLOSED.
+  private final AtomicLong blockedCalls  = new AtomicLong();
+  private final AtomicLong recoveries    = new AtomicLong();
+  private final AtomicLong recoveryTime  = new AtomicLong();
+
+  private final ThreadLocal<Long> startedAt = new ThreadLocal<Long>();
+
+  protected SlidingWindowCircuitBreaker(Builder builder) {
+    this.name                  = builder.name;
+    this.windowSize            = builder.windowSize;
+    this.minimumCalls          = Math.min(builder.minimumCalls, builder.windowSize);
+    this.failedCallThreshold   = builder.failedCallThreshold;
+    this.failureRateThreshold  = builder.failureRateThreshold;
+    this.slowCallRateThreshold = builder.slowCallRateThreshold;
+    this.slowCallDuration      = builder.slowCallDuration;
+    this.trialCalls            = builder.trialCalls;
+    this.retryThreshold        = builder.retryThreshold;
+    this.window                = new AtomicIntegerArray(builder.windowSize);
+  }
+
+  /**
+   * @param name name of the breaker, shown when it changes its status.
+   * @return a builder of a breaker, with the settings shared by all endpoints.
+   */
+  public static Builder builder(String name) {
+    return new Builder(name);
+  }
+
+  @Override public void callStarted() {
+    admit();
+    startedAt.set(now());
+  }
+
+  /**
+   * the outcome of a call acknowledged here is timed from the returned time, rather than from a
+   * time kept for the calling thread; so a call whose outcome comes back on another thread is
+   * timed, and leaves nothing behind on the thread that made it.
+   */
+  @Override public long callSent() {
+    admit();
+    return now();
+  }
+
+  /**
+   * lets the call through, or throws if the breaker blocks it.
+   */
+  private void admit() {
+    if (status() == CircuitBreakerStatus.OPENED) {
+      if (now() - openedAt.get() < retryThreshold) { throw blocked(); }
+
+      if (status.compareAndSet(CircuitBreakerStatus.OPENED, CircuitBreakerStatus.HALF_OPENED)) {
+        startTrials();
+        notifyStatusChange(CircuitBreakerStatus.OPENED, CircuitBreakerStatus.HALF_OPENED);
+      }
+    }
+
+    if (status() == CircuitBreakerStatus.HALF_OPENED && permits.getAndDecrement() <= 0) {
+      // trial calls that never came back (e.g., their caller died) must not block forever.
+      if (now() - openedAt.get() < retryThreshold) { throw blocked(); }
+      startTrials();
+      permits.decrementAndGet();
+    }
+  }
+
+  private void startTrials() {
+    trials.set(0);
+    failedTrials.set(0);
+    slowTrials.set(0);
+    openedAt.set(now());
+    permits.set(trialCalls);
+  }
+
+  private CallBlockedException blocked() {
+    blockedCalls.incrementAndGet();
+    return new CallBlockedException(String.format("%s is %s", this, status()),
+        lastException.get());
+  }
+
+  @Override public void callSucceeded() {
+    record(SUCCEEDED, startedAt());
+  }
+
+  @Override public void callFailed(RuntimeException error) {
+    lastException.set(error);
+    record(FAILED, startedAt());
+  }
+
+  @Override public void callSucceeded(long startedAt) {
+    record(SUCCEEDED, startedAt);
+  }
+
+  @Override public void callFailed(RuntimeException error, long startedAt) {
+    lastException.set(error);
+    record(FAILED, startedAt);
+  }
+
+  /**
+   * @return the time the calling thread's call started; null if not known.
+   */
+  private Long startedAt() {
+    final Long started = startedAt.get();
+    startedAt.remove();
+    return started;
+  }
+
+  private void record(int result, Long started) {
+    final boolean isSlow  = started != null && now() - started >= slowCallDuration;
+    final int     outcome = result | (isSlow ? SLOW : 0);
+
+    switch (status()) {
+      case CLOSED:
+        add(outcome);
+        if (calls.get() >= minimumCalls
+            && exceeds(calls.get(), failures.get(), slow.get())) {
+          open(CircuitBreakerStatus.CLOSED);
+        }
+        break;
+      case HALF_OPENED:
+        if ((outcome & FAILED) != 0) { failedTrials.incrementAndGet(); }
+        if ((outcome & SLOW)   != 0) { slowTrials.incrementAndGet();   }
+        if (trials.incrementAndGet() < trialCalls) { break; }
+
+        if (exceeds(trialCalls, failedTrials.get(), slowTrials.get())) {
+          open(CircuitBreakerStatus.HALF_OPENED);
+        } else {
+          close();
+        }
+        break;
+      default:
+        // the call started before the breaker opened; its outcome no longer matters.
+        break;
+    }
+  }
+
+  /**
+   * adds the outcome to the ring, in place of the oldest one.
+   */
+  private void add(int outcome) {
+    final int slot = (int) (cursor.getAndIncrement() % windowSize);
+    final int old  = window.getAndSet(slot, outcome);
+    if (old == EMPTY) { calls.incrementAndGet(); }
+    failures.addAndGet(bit(outcome, FAILED) - bit(old, FAILED));
+    slow.addAndGet(bit(outcome, SLOW) - bit(old, SLOW));
+  }
+
+  private static int bit(int outcome, int flag) {
+    return (outcome & flag) == 0 ? 0 : 1;
+  }
+
+  private boolean exceeds(int calls, int failed, int slowCalls) {
+    return (failed >= failedCallThreshold && failed * 100.0 >= failureRateThreshold * calls)
+        || slowCalls * 100.0 >= slowCallRateThreshold * calls;
+  }
+
+  private void open(CircuitBreakerStatus from) {
+    final long time = now();
+    if (status.compareAndSet(from, CircuitBreakerStatus.OPENED)) {
+      openedAt.set(time);
+      if (from == CircuitBreakerStatus.CLOSED) { outageStarted.set(time); }
+      notifyStatusChange(from, CircuitBreakerStatus.OPENED);
+    }
+  }
+
+  private void close() {
+    if (!status.compareAndSet(CircuitBreakerStatus.HALF_OPENED, CircuitBreakerStatus.CLOSED)) {
+      return;
+    }
+
+    for (int i = 0; i < windowSize; i++) {
+      window.set(i, EMPTY);
+    }
+    calls.set(0);
+    failures.set(0);
+    slow.set(0);
+    lastException.set(null);
+    blockedCalls.set(0L);
+    recoveryTime.addAndGet(now() - outageStarted.get());
+    recoveries.incrementAndGet();
+    notifyStatusChange(CircuitBreakerStatus.HALF_OPENED, CircuitBreakerStatus.CLOSED);
+  }
+
+  /**
+   * @return the time an open breaker blocks calls for, in nanoseconds.
+   */
+  @Override public long getRetryThreshold() {
+    return retryThreshold;
+  }
+
+  /**
+   * @return the number of failed calls in the ring below which the breaker does not open for
+   *    failures, whatever their rate.
+   */
+  @Override public long getFailedCallThreshold() {
+    return failedCallThreshold;
+  }
+
+  /**
+   * @return the average time, in nanoseconds, from the breaker opening to it closing again.
+   */
+  @Override public Statistics getStatistics() {
+    final long recovered = recoveries.get();
+    final long average   = recovered == 0 ? NO_CLOSED_YET : recoveryTime.get() / recovered;
+    return new Statistics() {
+      @Override public long getAvgRecoveryTime() {
+        return average;
+      }
+    };
+  }
+
+  /**
+   * @return the share, in percent, of failed calls among the ones in the ring.
+   */
+  public double getFailureRate() {
+    final int recorded = calls.get();
+    return recorded == 0 ? 0.0 : failures.get() * 100.0 / recorded;
+  }
+
+  /**
+   * @return the share, in percent, of slow calls among the ones in the ring.
+   */
+  public double getSlowCallRate() {
+    final int recorded = calls.get();
+    return recorded == 0 ? 0.0 : slow.get() * 100.0 / recorded;
+  }
+
+  /**
+   * @return the number of calls blocked since the breaker last closed.
+   */
+  public long getBlockedCalls() {
+    return blockedCalls.get();
+  }
+
+  @Override public CircuitBreakerStatus status() {
+    return status.get();
+  }
+
+  /**
+   * @return the current time, in nanoseconds.
+   */
+  protected long now() {
+    return System.nanoTime();
+  }
+
+  void notifyStatusChange(CircuitBreakerStatus oldStatus, CircuitBreakerStatus newStatus) {
+    if (!TwitterEnvironment.getInstance().isCircuitBreakerInDebugMode()) return;
+
+    System.out.println(String.format(
+        "Circuit breaker %s has changed from %s to %s. Failure rate: %.1f%%, slow call rate: "
+            + "%.1f%%, blocked calls: %d, average recovery time: %d nanoseconds.",
+        name, oldStatus, newStatus, getFailureRate(), getSlowCallRate(), blockedCalls.get(),
+        getStatistics().getAvgRecoveryTime()));
+  }
+
+  @Override public String toString() {
+    return String.format("SlidingWindowCircuitBreaker(%s, %d/%d calls, %.1f%% failed, %.1f%% slow)",
+        name, calls.get(), windowSize, getFailureRate(), getSlowCallRate());
+  }
+
+  /**
+   * Builds a {@link SlidingWindowCircuitBreaker}; its settings start with the ones in the
+   * runtime configuration shared by all endpoints.
+   */
+  public static class Builder {
+    private final String name;
+    private int    windowSize;
+    private int    minimumCalls;
+    private long   failedCallThreshold;
+    private double failureRateThreshold;
+    private double slowCallRateThreshold;
+    private long   slowCallDuration;
+    private int    trialCalls;
+    private long   retryThreshold;
+
+    Builder(String name) {
+      final TwitterEnvironment environment = TwitterEnvironment.getInstance();
+      this.name                  = name;
+      this.windowSize            = environment.getCircuitBreakerWindowSize();
+      this.minimumCalls          = environment.getCircuitBreakerMinimumCalls();
+      this.failedCallThreshold   = environment.getCircuitBreakerFailedCallThreshold();
+      this.failureRateThreshold  = environment.getCircuitBreakerFailureRateThreshold();
+      this.slowCallRateThreshold = environment.getCircuitBreakerSlowCallRateThreshold();
+      this.slowCallDuration      = TimeUnit.MILLISECONDS.toNanos(
+          environment.getCircuitBreakerSlowCallDuration());
+      this.trialCalls            = environment.getCircuitBreakerTrialCalls();
+      this.retryThreshold        = environment.getCircuitBreakerRetryThreshold();
+    }
+
+    /**
+     * @param calls number of latest calls the rates are computed over.
+     */
+    public Builder windowSize(int calls) {
+      Preconditions.checkArgument(calls > 0, "window must hold at least one call");
+      this.windowSize = calls;
+      return this;
+    }
+
+    /**
+     * @param calls number of calls that must be in the window before the breaker opens.
+     */
+    public Builder minimumCalls(int calls) {
+      this.minimumCalls = Math.max(1, calls);
+      return this;
+    }
+
+    /**
+     * @param calls number of failed calls in the window below which the breaker does not open
+     *    for failures.
+     */
+    public Builder failedCallThreshold(long calls) {
+      this.failedCallThreshold = calls;
+      return this;
+    }
+
+    /**
+     * @param percent share of failed calls at which the breaker opens.
+     */
+    public Builder failureRateThreshold(double percent) {
+      Preconditions.checkArgument(percent > 0 && percent <= 100, "rate must be in (0, 100]");
+      this.failureRateThreshold = percent;
+      return this;
+    }
+
+    /**
+     * @param percent share of slow calls at which the breaker opens.
+     */
+    public Builder slowCallRateThreshold(double percent) {
+      Preconditions.checkArgument(percent > 0 && percent <= 100, "rate must be in (0, 100]");
+      this.slowCallRateThreshold = percent;
+      return this;
+    }
+
+    /**
+     * @param duration time after which a call is slow.
+     */
+    public Builder slowCallDuration(long duration, TimeUnit unit) {
+      this.slowCallDuration = unit.toNanos(duration);
+      return this;
+    }
+
+    /**
+     * @param calls number of calls let through once the breaker has been open long enough.
+     */
+    public Builder trialCalls(int calls) {
+      this.trialCalls = Math.max(1, calls);
+      return this;
+    }
+
+    /**
+     * @param duration time an open breaker blocks calls for.
+     */
+    public Builder retryThreshold(long duration, TimeUnit unit) {
+      this.retryThreshold = unit.toNanos(duration);
+      return this;
+    }
+
+    public SlidingWindowCircuitBreaker build() {
+      return new SlidingWindowCircuitBreaker(this);
+    }
+  }
+}
@@ -18,6 +18,7 @@ import edu.ucsc.cli.IterableFileReader;
 import edu.ucsc.cli.util.Console;
 import edu.ucsc.cli.util.Strings;
 import edu.ucsc.twitter.DemographicsClassifier;
+import edu.ucsc.twitter.util.TweetText;
 import edu.ucsc.twitter.util.TwitterEnvironment;
 import java.io.IOException;
 import java.util.Collections;
@@ -54,15 +55,15 @@ public class AgeClassifier extends DemographicsClassifier<JointClassification> {
     words.add("=)");
     words.add("^_^");
     words.add("-");
-    words.add("$lt;3");
+    words.add("<3");
     words.add(":/");
     words.add(":|");
     words.add("www");
-    words.add("&quot;");
+    words.add("\"");
     words.add("?");
     words.add(",");
     words.add("--");
-    words.add("&gt;");
+    words.add(">");
     words.add(";)");
     words.add(":'(");
     words.add(";/");
@@ -76,11 +77,9 @@ public class AgeClassifier extends DemographicsClassifier<JointClassification> {
     words.add("+");
     words.add("!!!");
     words.add(":p");
-    words.add("&gt");
-    words.add("&gt:");
+    words.add(">:");
     words.add(":o");
     words.add(";o");
-    words.add("&lt;3");
     words.add("- ");
     STOP_WORDS = Collections.unmodifiableSet(words);
 
@@ -161,7 +160,8 @@ public class AgeClassifier extends DemographicsClassifier<JointClassification> {
         if(Strings.contains(eachLine, ":hint:")) continue;
 
         final int lastIndexOf = eachLine.lastIndexOf("s:");
-        final String filteredLine = eachLine.substring(lastIndexOf, eachLine.length()).trim();
+        final String filteredLine = TweetText.of(
+            eachLine.substring(lastIndexOf, eachLine.length())).toString().trim();
         ++numTrainingCases;
         numTrainingChars += filteredLine.length();
 
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import edu.ucsc.cli.util.Strings;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An Aho-Corasick automaton that finds which of a set of keywords occur in a tweet, in a single
+ * pass over the tweet, no matter how many keywords there are. Matching is case insensitive, with
+ * the same per-char folding used by {@link String#regionMatches(boolean, int, String, int, int)},
+ * so that {@link #findMembers(String, Set)} returns exactly what
+ * {@link Strings#findMembers(String, Set)} would return.
+ *
+ * <p>An automaton is immutable once compiled, and thus it can be shared by many threads.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class KeywordAutomaton {
+  private static final int   ROOT      = 0;
+  private static final int   NO_STATE  = -1;
+  private static final int[] NO_OUTPUT = new int[0];
+
+  private final Map<String, Integer> ids;
+  private final String[]             keywords;
+
+  // for each state: the sorted (folded) chars of its transitions and their target states.
+  private final char[][] labels;
+  private final int[][]  targets;
+  private final int[]    failures;
+  // ids of the keywords ending at each state, including the ones reached through failures.
+  private final int[][]  outputs;
+
+  private KeywordAutomaton(Map<String, Integer> ids, List<TreeMap<Character, Integer>> trie,
+      List<List<Integer>> matches) {
+    this.ids      = ids;
+    this.keywords = ids.keySet().toArray(new String[ids.size()]);
+
+    final int states = trie.size();
+    this.labels   = new char[states][];
+    this.targets  = new int[states][];
+    this.failures = new int[states];
+    this.outputs  = new int[states][];
+
+    for (int state = 0; state < states; state++) {
+      final TreeMap<Character, Integer> transitions = trie.get(state);
+      labels[state]  = new char[transitions.size()];
+      targets[state] = new int[transitions.size()];
+      int i = 0;
+      for (Map.Entry<Character, Integer> each : transitions.entrySet()) {
+        labels[state][i]  = each.getKey();
+        targets[state][i] = each.getValue();
+        i++;
+      }
+    }
+
+    // breadth first, so the failure of a state is always resolved before the state itself.
+    final LinkedList<Integer> pending = new LinkedList<Integer>();
+    failures[ROOT] = ROOT;
+    outputs[ROOT]  = toArray(matches.get(ROOT), NO_OUTPUT);
+    for (int child : targets[ROOT]) {
+      failures[child] = ROOT;
+      pending.add(child);
+    }
+
+    while (!pending.isEmpty()) {
+      final int state = pending.removeFirst();
+      outputs[state] = toArray(matches.get(state), outputs[failures[state]]);
+
+      for (int i = 0; i < labels[state].length; i++) {
+        final int child = targets[state][i];
+        failures[child] = next(failures[state], labels[state][i]);
+        pending.add(child);
+      }
+    }
+  }
+
+  /**
+   * compiles the given keywords into an automaton. Duplicated keywords are compiled once.
+   *
+   * @param keywords to be found.
+   * @return a new automaton.
+   */
+  public static KeywordAutomaton compile(Iterable<String> keywords) {
+    final Map<String, Integer>              ids     = new LinkedHashMap<String, Integer>();
+    final List<TreeMap<Character, Integer>> trie    = new ArrayList<TreeMap<Character, Integer>>();
+    final List<List<Integer>>               matches = new ArrayList<List<Integer>>();
+    trie.add(new TreeMap<Character, Integer>());
+    matches.add(new ArrayList<Integer>());
+
+    for (String each : keywords) {
+      if (each == null || ids.containsKey(each)) { continue; }
+
+      final int id = ids.size();
+      ids.put(each, id);
+
+      int state = ROOT;
+      for (int i = 0; i < each.length(); i++) {
+        final char c = fold(each.charAt(i));
+        final Integer target = trie.get(state).get(c);
+        if (target != null) {
+          state = target;
+        } else {
+          trie.get(state).put(c, trie.size());
+          state = trie.size();
+          trie.add(new TreeMap<Character, Integer>());
+          matches.add(new ArrayList<Integer>());
+        }
+      }
+
+      matches.get(state).add(id);
+    }
+
+    return new KeywordAutomaton(ids, trie, matches);
+  }
+
+  private static int[] toArray(List<Integer> own, int[] inherited) {
+    if (own.isEmpty()) { return inherited; }
+
+    final int[] result = new int[own.size() + inherited.length];
+    for (int i = 0; i < own.size(); i++) {
+      result[i] = own.get(i);
+    }
+    System.arraycopy(inherited, 0, result, own.size(), inherited.length);
+    return result;
+  }
+
+  /**
+   * folds a char the same way {@link String#regionMatches(boolean, int, String, int, int)} does
+   * when ignoring case.
+   */
+  private static char fold(char c) {
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  private int next(int state, char folded) {
+    while (true) {
+      final int target = transition(state, folded);
+      if (target != NO_STATE) { return target; }
+      if (state == ROOT)      { return ROOT; }
+      state = failures[state];
+    }
+  }
+
+  private int transition(int state, char folded) {
+    final char[] chars = labels[state];
+    int low  = 0;
+    int high = chars.length - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final char c = chars[middle];
+      if (c < folded) {
+        low = middle + 1;
+      } else if (c > folded) {
+        high = middle - 1;
+      } else {
+        return targets[state][middle];
+      }
+    }
+
+    return NO_STATE;
+  }
+
+  /**
+   * @return the number of distinct keywords in this automaton.
+   */
+  public int size() {
+    return keywords.length;
+  }
+
+  /**
+   * @param keyword to look for.
+   * @return true if the keyword was compiled into this automaton.
+   */
+  public boolean isCompiled(String keyword) {
+    return ids.containsKey(keyword);
+  }
+
+  /**
+   * scans the content once, and marks every keyword found in it, until {@code limit} keywords
+   * have been found.
+   *
+   * @param content to be scanned.
+   * @param found a flag per keyword, indexed in the order in which keywords were compiled.
+   * @param limit number of distinct keywords after which the scan stops.
+   * @return the number of distinct keywords found.
+   */
+  private int scan(CharSequence content, boolean[] found, int limit) {
+    int remaining = mark(outputs[ROOT], found, limit);
+
+    int state = ROOT;
+    for (int i = 0; i < content.length() && remaining > 0; i++) {
+      state     = next(state, fold(content.charAt(i)));
+      remaining = mark(outputs[state], found, remaining);
+    }
+
+    return limit - remaining;
+  }
+
+  private static int mark(int[] output, boolean[] found, int remaining) {
+    for (int id : output) {
+      if (remaining > 0 && !found[id]) {
+        found[id] = true;
+        remaining--;
+      }
+    }
+
+    return remaining;
+  }
+
+  /**
+   * Finds which of the given keywords occur in the content, and joins them with commas, in the
+   * same way (and in the same order) as {@link Strings#findMembers(String, Set)}. Keywords that
+   * were not compiled into this automaton are looked up with {@link Strings#contains(String,
+   * String)}.
+   *
+   * @param content to be scanned.
+   * @param keywords to look for.
+   * @return the keywords found in the content.
+   */
+  public String findMembers(String content, Set<String> keywords) {
+    final StringBuilder members = new StringBuilder(keywords.size());
+    if (content == null) { return members.toString(); }
+
+    final boolean[] found = new boolean[this.keywords.length];
+    scan(content, found, found.length);
+    for (Iterator<String> itr = keywords.iterator(); itr.hasNext(); ) {
+      final String  each = itr.next();
+      final Integer id   = each == null ? null : ids.get(each);
+      if (id != null ? found[id] : Strings.contains(content, each)) {
+        members.append(each);
+        if (itr.hasNext()) {
+          members.append(", ");
+        }
+      }
+    }
+
+    return members.toString();
+  }
+
+  /**
+   * @param content to be scanned.
+   * @return all the compiled keywords found in the content, in the order in which they were
+   *    compiled.
+   */
+  public Set<String> findAll(CharSequence content) {
+    final Set<String> members = new LinkedHashSet<String>();
+    if (content == null) { return members; }
+
+    final boolean[] found = new boolean[keywords.length];
+    scan(content, found, found.length);
+    for (int id = 0; id < found.length; id++) {
+      if (found[id]) { members.add(keywords[id]); }
+    }
+
+    return members;
+  }
+
+  /**
+   * counts how many distinct keywords occur in the content, without scanning any further once
+   * {@code limit} of them have been found.
+   *
+   * @param content to be scanned.
+   * @param limit max number of keywords to be counted.
+   * @return the number of distinct keywords found, up to {@code limit}.
+   */
+  public int count(CharSequence content, int limit) {
+    if (content == null) { return 0; }
+
+    return scan(content, new boolean[keywords.length], Math.min(limit, keywords.length));
+  }
+
+  @Override public String toString() {
+    return String.format("KeywordAutomaton(keywords=%d, states=%d)", keywords.length,
+        labels.length);
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.base.Preconditions;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A Bloom filter of primitive longs (e.g., tweet ids), whose bits live in a byte buffer;
+ * typically a memory-mapped file, so the filter outlives the process without ever being
+ * loaded or saved as a whole. For a false positive rate of 0.1%, each element takes less than
+ * 2 bytes.
+ *
+ * <p>A file-backed filter starts with a header holding its number of bits and of hash
+ * functions, so that it is opened with the same ones it was created with.</p>
+ *
+ * <p>A filter is thread safe.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class LongBloomFilter {
+  private static final long MAGIC  = 0x646d6474626c6f6dL; // "dmdtblom"
+  private static final int  HEADER = 24;                  // magic, bits, hashes.
+
+  private final ByteBuffer buffer;
+  private final int        offset; // of the first byte of bits.
+  private final long       bits;
+  private final int        hashes;
+
+  private LongBloomFilter(ByteBuffer buffer, int offset, long bits, int hashes) {
+    this.buffer = buffer;
+    this.offset = offset;
+    this.bits   = bits;
+    this.hashes = hashes;
+  }
+
+  /**
+   * @return an in-memory filter sized for the given elements and false positive rate.
+   */
+  public static LongBloomFilter create(long expected, double falsePositiveRate) {
+    final long bits = bitsFor(expected, falsePositiveRate);
+    return new LongBloomFilter(ByteBuffer.allocate(bytesFor(bits)), 0, bits,
+        hashesFor(expected, bits));
+  }
+
+  /**
+   * opens the filter kept in the given file; or creates it there, sized for the given elements
+   * and false positive rate, if the file does not exist yet.
+   *
+   * @throws IOException if the file cannot be mapped, or it does not hold a filter.
+   */
+  public static LongBloomFilter mapped(File file, long expected, double falsePositiveRate)
+      throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      final FileChannel channel = raf.getChannel();
+      if (channel.size() == 0) {
+        final long bits   = bitsFor(expected, falsePositiveRate);
+        final int  hashes = hashesFor(expected, bits);
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+            HEADER + bytesFor(bits));
+        buffer.putLong(0, MAGIC).putLong(8, bits).putInt(16, hashes);
+        return new LongBloomFilter(buffer, HEADER, bits, hashes);
+      }
+
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+          channel.size());
+      if (channel.size() < HEADER || buffer.getLong(0) != MAGIC) {
+        throw new IOException(file + " does not hold a bloom filter");
+      }
+
+      final long bits   = buffer.getLong(8);
+      final int  hashes = buffer.getInt(16);
+      if (HEADER + bytesFor(bits) != channel.size()) {
+        throw new IOException(file + " holds a truncated bloom filter");
+      }
+
+      return new LongBloomFilter(buffer, HEADER, bits, hashes);
+    } finally {
+      // the mapping stays valid once the file is closed.
+      raf.close();
+    }
+  }
+
+  private static long bitsFor(long expected, double falsePositiveRate) {
+    Preconditions.checkArgument(expected > 0, "expected number of elements must be positive");
+    Preconditions.checkArgument(falsePositiveRate > 0 && falsePositiveRate < 1,
+        "false positive rate must be between 0 and 1");
+    final long bits = (long) Math.ceil(-expected * Math.log(falsePositiveRate)
+        / (Math.log(2) * Math.log(2)));
+    Preconditions.checkArgument(bits <= (Integer.MAX_VALUE - HEADER) * 8L, "filter is too large");
+    return Math.max(64, bits);
+  }
+
+  private static int hashesFor(long expected, long bits) {
+    return Math.max(1, (int) Math.round((double) bits / expected * Math.log(2)));
+  }
+
+  private static int bytesFor(long bits) {
+    return (int) ((bits + 7) / 8);
+  }
+
+  /**
+   * @return true if the element was definitely not in the filter before.
+   */
+  public synchronized boolean put(long element) {
+    final long h1 = LongHashSet.mix(element);
+    final long h2 = LongHashSet.mix(h1) | 1;
+
+    boolean changed = false;
+    for (int i = 0; i < hashes; i++) {
+      final long bit   = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+      final int  index = offset + (int) (bit >>> 3);
+      final byte mask  = (byte) (1 << (bit & 7));
+      final byte old   = buffer.get(index);
+      if ((old & mask) == 0) {
+        buffer.put(index, (byte) (old | mask));
+        changed = true;
+      }
+    }
+
+    return changed;
+  }
+
+  /**
+   * @return false if the element was definitely never put in the filter.
+   */
+  public synchronized boolean mightContain(long element) {
+    final long h1 = LongHashSet.mix(element);
+    final long h2 = LongHashSet.mix(h1) | 1;
+
+    for (int i = 0; i < hashes; i++) {
+      final long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+      if ((buffer.get(offset + (int) (bit >>> 3)) & (1 << (bit & 7))) == 0) { return false; }
+    }
+
+    return true;
+  }
+
+  /**
+   * writes the filter's changes to its file, if it is file-backed.
+   */
+  public synchronized void force() {
+    if (buffer instanceof MappedByteBuffer) {
+      ((MappedByteBuffer) buffer).force();
+    }
+  }
+
+  @Override public String toString() {
+    return String.format("LongBloomFilter(bits=%d, hashes=%d)", bits, hashes);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A set of primitive longs (e.g., tweet ids), kept in a single open-addressing table with
+ * linear probing. Unlike a {@code HashSet<Long>}, it boxes nothing and allocates nothing per
+ * element: each element takes between 8 and 16 bytes of the table (as the table doubles once it
+ * is 3/4 full).
+ *
+ * <p>Elements cannot be removed. The set is not thread safe.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class LongHashSet {
+  private static final long FREE = 0L; // zero marks free slots, so it is tracked apart.
+
+  private long[]  table;
+  private int     mask;
+  private int     size;
+  private int     resizeAt;
+  private boolean containsZero;
+
+  public LongHashSet() {
+    this(16);
+  }
+
+  /**
+   * @param expected number of elements the set will hold without growing.
+   */
+  public LongHashSet(int expected) {
+    Preconditions.checkArgument(expected >= 0, "expected size cannot be negative");
+    allocate(tableSizeFor(expected));
+  }
+
+  private static int tableSizeFor(int expected) {
+    final long needed = Math.max(4L, (long) Math.ceil(expected / 0.75) + 1);
+    Preconditions.checkArgument(needed <= (1 << 30), "too many elements: %s", expected);
+    return Integer.highestOneBit((int) needed - 1) << 1;
+  }
+
+  private void allocate(int capacity) {
+    table    = new long[capacity];
+    mask     = capacity - 1;
+    resizeAt = capacity / 4 * 3;
+  }
+
+  /**
+   * @return true if the element was not in the set.
+   */
+  public boolean add(long element) {
+    if (element == FREE) {
+      if (containsZero) { return false; }
+      containsZero = true;
+      size++;
+      return true;
+    }
+
+    int slot = slotOf(element);
+    while (table[slot] != FREE) {
+      if (table[slot] == element) { return false; }
+      slot = (slot + 1) & mask;
+    }
+
+    table[slot] = element;
+    if (++size > resizeAt) { grow(); }
+    return true;
+  }
+
+  public boolean contains(long element) {
+    if (element == FREE) { return containsZero; }
+
+    int slot = slotOf(element);
+    while (table[slot] != FREE) {
+      if (table[slot] == element) { return true; }
+      slot = (slot + 1) & mask;
+    }
+
+    return false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return the elements, in no particular order.
+   */
+  public long[] toArray() {
+    final long[] elements = new long[size];
+    int i = 0;
+    if (containsZero) { elements[i++] = FREE; }
+    for (long each : table) {
+      if (each != FREE) { elements[i++] = each; }
+    }
+
+    return elements;
+  }
+
+  private void grow() {
+    final long[] old = table;
+    allocate(old.length * 2);
+    for (long each : old) {
+      if (each == FREE) { continue; }
+
+      int slot = slotOf(each);
+      while (table[slot] != FREE) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = each;
+    }
+  }
+
+  /**
+   * tweet ids are mostly sequential, so their bits are mixed before masking them.
+   */
+  private int slotOf(long element) {
+    return (int) mix(element) & mask;
+  }
+
+  static long mix(long element) {
+    long h = element * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 32;
+    h *= 0xC2B2AE3D27D4EB4FL;
+    return h ^ (h >>> 29);
+  }
+
+  @Override public String toString() {
+    return String.format("LongHashSet(size=%d, capacity=%d)", size, table.length);
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Turns a display name or a camel cased screen name into a human first name; e.g.,
+ * 'huascarSanchez' becomes 'Huascar', and 'UCSC student' becomes 'UCSC'. Names are scanned once,
+ * left to right, and only up to the end of their first word; results are memoized in a bounded,
+ * least recently used, cache keyed by the raw name, since the same users show up again and
+ * again.
+ *
+ * <p>A normalizer is thread safe.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class NameNormalizer {
+  private static final int DEFAULT_CAPACITY = 4096;
+
+  private final Map<String, String> cache;
+
+  private long hits;
+  private long misses;
+
+  public NameNormalizer() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity max number of names to be remembered.
+   */
+  public NameNormalizer(final int capacity) {
+    this.cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * @param name display name or screen name.
+   * @return the first word in a camel cased name, capitalized; or the name's text before its
+   *    first space, if it has no ASCII letters.
+   */
+  public String firstName(String name) {
+    synchronized (cache) {
+      final String cached = cache.get(name);
+      if (cached != null) {
+        hits++;
+        return cached;
+      }
+      misses++;
+    }
+
+    final String normalized = scanFirstName(name);
+    synchronized (cache) {
+      cache.put(name, normalized);
+    }
+
+    return normalized;
+  }
+
+  /**
+   * Finds the first word of the name, the same way as splitting it into
+   * {@code ([A-Z]|[a-z])[a-z]*} tokens, where consecutive one-letter uppercase tokens form an
+   * acronym, and then taking the first one.
+   */
+  static String scanFirstName(String name) {
+    final int length = name.length();
+
+    int acronymStart = -1;
+    int acronymEnd   = -1;
+    StringBuilder acronym = null;
+
+    int i = 0;
+    while (i < length) {
+      final char first = name.charAt(i);
+      if (!isLetter(first)) {
+        i++;
+        continue;
+      }
+
+      final int start = i++;
+      while (i < length && isLowercase(name.charAt(i))) {
+        i++;
+      }
+
+      if (i - start == 1 && !isLowercase(first)) {
+        // a single uppercase letter belongs to an acronym, even if it is not next to the others.
+        if (acronymStart < 0) {
+          acronymStart = start;
+        } else if (acronym != null || acronymEnd != start) {
+          // not a contiguous run anymore, so the acronym has to be copied.
+          if (acronym == null) {
+            acronym = new StringBuilder(name.substring(acronymStart, acronymEnd));
+          }
+          acronym.append(first);
+        }
+        acronymEnd = i;
+        continue;
+      }
+
+      if (acronymStart >= 0) { break; }
+
+      final StringBuilder word = new StringBuilder(i - start);
+      word.append(Character.toUpperCase(first));
+      word.append(name, start + 1, i);
+      return word.toString();
+    }
+
+    if (acronymStart >= 0) {
+      return acronym == null ? name.substring(acronymStart, acronymEnd) : acronym.toString();
+    }
+
+    return firstWord(name);
+  }
+
+  /**
+   * @return the text before the first space of the name, just like {@code split(" ")[0]} but
+   *    without failing on names made of spaces only.
+   */
+  private static String firstWord(String name) {
+    final int space = name.indexOf(' ');
+    return space < 0 ? name : name.substring(0, space);
+  }
+
+  private static boolean isLetter(char c) {
+    return isLowercase(c) || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isLowercase(char c) {
+    return c >= 'a' && c <= 'z';
+  }
+
+  /**
+   * @return number of names found in the cache.
+   */
+  public long getHits() {
+    synchronized (cache) {
+      return hits;
+    }
+  }
+
+  /**
+   * @return number of names that had to be scanned.
+   */
+  public long getMisses() {
+    synchronized (cache) {
+      return misses;
+    }
+  }
+
+  @Override public String toString() {
+    synchronized (cache) {
+      return String.format("NameNormalizer(size=%d, hits=%d, misses=%d)", cache.size(), hits,
+          misses);
+    }
+  }
+}
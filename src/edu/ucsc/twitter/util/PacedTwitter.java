@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+import twitter4j.TwitterResponse;
+
+/**
+ * Makes every API call of a {@link Twitter} client wait for its {@link RateLimitPacer}: searches
+ * for the search pacer, and everything else for the REST one, since Twitter limits them
+ * separately. Methods that do not call the API (i.e., that cannot fail with a
+ * {@link TwitterException}), and rate limit status requests, which are free, are not paced.
+ *
+ * <p>Pacers learn the quota left from the rate limit status of each response, and from the
+ * errors the API sends back once the quota is gone. Search results carry no rate limit status,
+ * so the search pacer only learns when it is told to back off.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class PacedTwitter implements InvocationHandler {
+  private final Twitter        twitter;
+  private final RateLimitPacer search;
+  private final RateLimitPacer rest;
+
+  private PacedTwitter(Twitter twitter, RateLimitPacer search, RateLimitPacer rest) {
+    this.twitter = twitter;
+    this.search  = search;
+    this.rest    = rest;
+  }
+
+  /**
+   * @param twitter client to be paced.
+   * @param search pacer of the search API.
+   * @param rest pacer of the REST API.
+   * @return a client that paces its calls.
+   */
+  public static Twitter pace(Twitter twitter, RateLimitPacer search, RateLimitPacer rest) {
+    return (Twitter) Proxy.newProxyInstance(Twitter.class.getClassLoader(),
+        new Class<?>[]{Twitter.class}, new PacedTwitter(twitter, search, rest));
+  }
+
+  @Override public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    final RateLimitPacer pacer = pacerOf(method);
+    if (pacer != null) { pacer.acquire(); }
+
+    try {
+      final Object result = method.invoke(twitter, args);
+      if (pacer != null && result instanceof TwitterResponse) {
+        pacer.update(((TwitterResponse) result).getRateLimitStatus());
+      }
+      return result;
+    } catch (InvocationTargetException e) {
+      final Throwable cause = e.getCause();
+      if (pacer != null && cause instanceof TwitterException) {
+        backOff(pacer, (TwitterException) cause);
+      }
+      throw cause;
+    }
+  }
+
+  /**
+   * @return the pacer of the method; or null if it does not call the API.
+   */
+  private RateLimitPacer pacerOf(Method method) {
+    if (!Arrays.asList(method.getExceptionTypes()).contains(TwitterException.class)
+        || "getRateLimitStatus".equals(method.getName())) {
+      return null;
+    }
+
+    return "search".equals(method.getName()) ? search : rest;
+  }
+
+  private static void backOff(RateLimitPacer pacer, TwitterException failure) {
+    pacer.update(failure.getRateLimitStatus());
+    if (!failure.exceededRateLimitation()) { return; }
+
+    int retryAfter = 0;
+    try {
+      retryAfter = failure.getRetryAfter();
+    } catch (IllegalStateException notSent) {
+      // twitter4j throws, rather than return -1, when the API did not say how long to wait.
+    }
+    pacer.pause(Math.max(0, retryAfter), TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.base.Preconditions;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import twitter4j.RateLimitStatus;
+
+/**
+ * A token bucket that spreads calls to a rate limited API evenly over its rate limit window,
+ * rather than spending the whole quota in a burst and then being locked out until the window
+ * resets. The bucket holds at most {@code burst} tokens, and is refilled at
+ * {@code remaining calls / time until reset}; both are learned from the rate limit status the API
+ * sends back. Until the first status comes in, the full quota is assumed. When the API says the
+ * quota is gone, no tokens are handed out until the window resets.
+ *
+ * <p>Callers that cannot get a token right away reserve one in the future, and wait for it; so
+ * they are served in the order they came in. A pacer is thread safe.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class RateLimitPacer {
+  private final long window;
+  private final int  burst;
+
+  private int    limit;      // calls per window.
+  private double rate;       // tokens per millisecond.
+  private double tokens;     // negative when there are callers waiting.
+  private long   refilledAt; // in the future while the quota is gone.
+  private long   resetAt;
+
+  private long calls;
+  private long delayed;
+  private long waited;
+
+  // set while a call whose token was taken ahead of it is made.
+  private final ThreadLocal<Boolean> prepaid = new ThreadLocal<Boolean>();
+
+  /**
+   * @param limit number of calls allowed per window, until told otherwise.
+   * @param window length of the rate limit window.
+   * @param unit unit of the window.
+   * @param burst max number of calls that can be made back to back.
+   */
+  public RateLimitPacer(int limit, long window, TimeUnit unit, int burst) {
+    Preconditions.checkArgument(limit > 0, "limit must be positive");
+    Preconditions.checkArgument(window > 0, "window must be positive");
+    this.window     = unit.toMillis(window);
+    this.burst      = Math.max(1, burst);
+    this.limit      = limit;
+    this.rate       = limit / (double) this.window;
+    this.tokens     = Math.min(this.burst, limit);
+    this.refilledAt = now();
+    this.resetAt    = refilledAt + this.window;
+  }
+
+  /**
+   * @param limit number of calls allowed per hour, until told otherwise.
+   * @param burst max number of calls that can be made back to back.
+   * @return a pacer for one of Twitter's hourly rate limits.
+   */
+  public static RateLimitPacer hourly(int limit, int burst) {
+    return new RateLimitPacer(limit, 1, TimeUnit.HOURS, burst);
+  }
+
+  /**
+   * waits until a call can be made; unless the call was {@link #prepaid(Callable) prepaid}.
+   *
+   * @throws IllegalStateException if interrupted while waiting.
+   */
+  public void acquire() {
+    if (Boolean.TRUE.equals(prepaid.get())) {
+      prepaid.remove();
+      return;
+    }
+
+    final long wait = reserve();
+    if (wait > 0) { sleep(wait); }
+  }
+
+  /**
+   * @param call a call whose token was already taken, with {@link #acquire()}; e.g., so that the
+   *    time spent waiting for it is not counted as the call's.
+   * @return the call, for which the first {@link #acquire()}, on whatever thread it is made, is
+   *    free.
+   */
+  public <T> Callable<T> prepaid(final Callable<T> call) {
+    return new Callable<T>() {
+      @Override public T call() throws Exception {
+        prepaid.set(Boolean.TRUE);
+        try {
+          return call.call();
+        } finally {
+          prepaid.remove();
+        }
+      }
+    };
+  }
+
+  /**
+   * takes a token, which may only become available in the future; for callers that must not
+   * block while waiting for it (e.g., ones that schedule the call instead), rather than
+   * {@link #acquire()}.
+   *
+   * @return milliseconds to wait before making the call.
+   */
+  public synchronized long reserve() {
+    final long now = now();
+    refill(now);
+    tokens -= 1;
+    calls++;
+
+    long wait = Math.max(0, refilledAt - now);
+    if (tokens < 0) {
+      wait += (long) Math.ceil(-tokens / rate);
+    }
+
+    if (wait > 0) {
+      delayed++;
+      waited += wait;
+    }
+
+    return wait;
+  }
+
+  /**
+   * learns the quota left in the current window.
+   *
+   * @param status as sent back by the API; ignored if null.
+   */
+  public void update(RateLimitStatus status) {
+    if (status == null) { return; }
+    update(status.getRemainingHits(), status.getHourlyLimit(),
+        now() + TimeUnit.SECONDS.toMillis(Math.max(0, status.getSecondsUntilReset())));
+  }
+
+  /**
+   * @param remaining calls left in the current window.
+   * @param limit calls per window; ignored if not positive.
+   * @param resetAt time at which the window resets.
+   */
+  synchronized void update(int remaining, int limit, long resetAt) {
+    final long now = now();
+    refill(now);
+    if (limit > 0) { this.limit = limit; }
+    this.resetAt = Math.max(now, resetAt);
+
+    if (remaining <= 0) {
+      pauseUntil(this.resetAt);
+      rate = this.limit / (double) window;
+    } else {
+      rate       = remaining / (double) Math.max(1, this.resetAt - now);
+      tokens     = Math.min(tokens, remaining);
+      refilledAt = Math.min(refilledAt, now);
+    }
+  }
+
+  /**
+   * stops handing out tokens for a while; e.g., after the API said we are making too many calls.
+   *
+   * @param delay time to wait; if not positive, the rest of the current window.
+   * @param unit unit of the delay.
+   */
+  public synchronized void pause(long delay, TimeUnit unit) {
+    final long now = now();
+    refill(now);
+    pauseUntil(delay > 0 ? now + unit.toMillis(delay) : resetAt);
+  }
+
+  private void pauseUntil(long time) {
+    tokens     = Math.min(tokens, 0);
+    refilledAt = Math.max(refilledAt, time);
+  }
+
+  private void refill(long now) {
+    if (now >= resetAt) {
+      // a new window has started; as far as we know, with the full quota.
+      resetAt += ((now - resetAt) / window + 1) * window;
+      rate     = limit / (double) window;
+    }
+
+    if (now > refilledAt) {
+      tokens     = Math.min(burst, tokens + (now - refilledAt) * rate);
+      refilledAt = now;
+    }
+  }
+
+  /**
+   * @return number of calls made so far.
+   */
+  public synchronized long getCalls() {
+    return calls;
+  }
+
+  /**
+   * @return number of calls that had to wait for a token.
+   */
+  public synchronized long getDelayed() {
+    return delayed;
+  }
+
+  /**
+   * @return the current time, in milliseconds.
+   */
+  protected long now() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * @param millis time to wait for a token.
+   */
+  protected void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while waiting for rate limit quota", e);
+    }
+  }
+
+  @Override public synchronized String toString() {
+    return String.format(
+        "RateLimitPacer(limit=%d, rate=%.2f/min, tokens=%.2f, calls=%d, delayed=%d, waited=%d s)",
+        limit, rate * TimeUnit.MINUTES.toMillis(1), tokens, calls, delayed,
+        TimeUnit.MILLISECONDS.toSeconds(waited));
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+
+/**
+ * Records every API call of a {@link Twitter} client in an append-only archive: the time it was
+ * made, and the raw response, or the {@link TwitterException}, the API sent back. Methods that
+ * do not call the API (i.e., that cannot fail with a {@link TwitterException}) are not
+ * recorded. The archive can be played back by a {@link ReplayingTwitter}, which stands in for
+ * Twitter so the whole collector, from the searches down to the results writers, can be run
+ * offline and reproducibly.
+ *
+ * <p>A call whose response cannot be written to the archive is still answered; it is just
+ * missing from the archive.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class RecordingTwitter implements InvocationHandler {
+  private final Twitter twitter;
+  private final File    archive;
+
+  /**
+   * @param twitter client to be recorded.
+   * @param archive file the calls are appended to; created if it does not exist.
+   * @throws IOException if the archive cannot be created.
+   */
+  RecordingTwitter(Twitter twitter, File archive) throws IOException {
+    this.twitter = twitter;
+    this.archive = archive;
+    ResponseArchive.create(archive);
+  }
+
+  /**
+   * @param twitter client to be recorded.
+   * @param archive file the calls are appended to; created if it does not exist.
+   * @return a client that records its calls.
+   * @throws IOException if the archive cannot be created.
+   */
+  public static Twitter record(Twitter twitter, File archive) throws IOException {
+    return proxy(new RecordingTwitter(twitter, archive));
+  }
+
+  static Twitter proxy(InvocationHandler handler) {
+    return (Twitter) Proxy.newProxyInstance(Twitter.class.getClassLoader(),
+        new Class<?>[]{Twitter.class}, handler);
+  }
+
+  @Override public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (!callsApi(method)) {
+      return invoke(method, args);
+    }
+
+    final long time = now();
+    try {
+      final Object result = invoke(method, args);
+      append(time, method, false, result);
+      return result;
+    } catch (TwitterException e) {
+      append(time, method, true, e);
+      throw e;
+    }
+  }
+
+  private Object invoke(Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(twitter, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * @return true if the method calls the API.
+   */
+  static boolean callsApi(Method method) {
+    return Arrays.asList(method.getExceptionTypes()).contains(TwitterException.class);
+  }
+
+  private void append(long time, Method method, boolean failed, Object response) {
+    try {
+      final byte[] record = ResponseArchive.encode(time, method.getName(), failed, response);
+      synchronized (this) {
+        ResponseArchive.append(archive, record);
+      }
+    } catch (IOException e) {
+      System.err.println("unable to record " + method.getName() + " in " + archive);
+    }
+  }
+
+  /**
+   * @return the current time, in milliseconds.
+   */
+  protected long now() {
+    return System.currentTimeMillis();
+  }
+
+  @Override public String toString() {
+    return String.format("RecordingTwitter(archive=%s)", archive);
+  }
+}
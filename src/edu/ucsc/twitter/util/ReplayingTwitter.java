@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.Map;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+
+/**
+ * Stands in for Twitter by answering the API calls of a {@link Twitter} client with the
+ * responses recorded by a {@link RecordingTwitter}, so that the collector can be load tested
+ * offline, and reproducibly. Each call gets the next recorded response of the same method, be it
+ * a result or a {@link TwitterException}, whatever its arguments were; once a method's responses
+ * are all played back, its calls fail. Calls are answered at the pace they were recorded, or
+ * a number of times faster; or as fast as they are made.
+ *
+ * <p>The archive is memory mapped, and each response is only deserialized when it is played
+ * back. Methods that do not call the API are left to the given client.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class ReplayingTwitter implements InvocationHandler {
+  private final Twitter twitter;
+  private final double  speed;
+
+  // the recorded responses of each method, in the order they were recorded.
+  private final Map<String, LinkedList<ResponseArchive.Record>> recorded = Maps.newHashMap();
+
+  private long firstRecordedAt = -1;
+  private long startedAt       = -1;
+  private int  replayed;
+
+  /**
+   * @param twitter client that answers the methods that do not call the API.
+   * @param archive records written by a {@link RecordingTwitter}.
+   * @param speed how many times faster than real speed calls are answered; as fast as possible
+   *    if not positive.
+   */
+  ReplayingTwitter(Twitter twitter, ByteBuffer archive, double speed) {
+    this.twitter = twitter;
+    this.speed   = speed;
+
+    for (ResponseArchive.Record each = ResponseArchive.next(archive); each != null;
+        each = ResponseArchive.next(archive)) {
+      if (firstRecordedAt < 0) { firstRecordedAt = each.time; }
+      if (!recorded.containsKey(each.method)) {
+        recorded.put(each.method, Lists.<ResponseArchive.Record>newLinkedList());
+      }
+      recorded.get(each.method).add(each);
+    }
+  }
+
+  /**
+   * @param twitter client that answers the methods that do not call the API.
+   * @param archive file written by a {@link RecordingTwitter}.
+   * @param speed how many times faster than real speed calls are answered; as fast as possible
+   *    if not positive.
+   * @return a client that plays back the recorded calls.
+   * @throws IOException if the archive cannot be mapped.
+   */
+  public static Twitter replay(Twitter twitter, File archive, double speed) throws IOException {
+    return RecordingTwitter.proxy(new ReplayingTwitter(twitter, ResponseArchive.map(archive),
+        speed));
+  }
+
+  @Override public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (!RecordingTwitter.callsApi(method)) {
+      try {
+        return method.invoke(twitter, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+
+    final ResponseArchive.Record next = take(method.getName());
+    if (next == null) {
+      throw new TwitterException("no recorded response left for " + method.getName());
+    }
+
+    final Object response = next.response();
+    if (next.failed) { throw (Throwable) response; }
+    return response;
+  }
+
+  /**
+   * takes the next recorded response of a method, once it is due.
+   *
+   * @return the response; or null if there are none left.
+   */
+  private ResponseArchive.Record take(String method) {
+    final ResponseArchive.Record next;
+    final long                   due;
+    synchronized (this) {
+      final LinkedList<ResponseArchive.Record> responses = recorded.get(method);
+      next = responses == null ? null : responses.poll();
+      if (next == null) { return null; }
+
+      if (startedAt < 0) { startedAt = now(); }
+      due = speed > 0 ? startedAt + (long) ((next.time - firstRecordedAt) / speed) : 0L;
+      replayed++;
+    }
+
+    final long now = now();
+    if (due > now) { sleep(due - now); }
+    return next;
+  }
+
+  /**
+   * @return true if all recorded calls were played back.
+   */
+  public synchronized boolean isExhausted() {
+    for (LinkedList<ResponseArchive.Record> each : recorded.values()) {
+      if (!each.isEmpty()) { return false; }
+    }
+
+    return true;
+  }
+
+  /**
+   * @return number of calls played back so far.
+   */
+  public synchronized int getReplayed() {
+    return replayed;
+  }
+
+  /**
+   * @return the current time, in milliseconds.
+   */
+  protected long now() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * @param millis time to wait until the next response is due.
+   */
+  protected void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while replaying API calls", e);
+    }
+  }
+
+  @Override public synchronized String toString() {
+    return String.format("ReplayingTwitter(speed=%s, replayed=%d, exhausted=%b)",
+        speed > 0 ? speed + "x" : "max", replayed, isExhausted());
+  }
+}
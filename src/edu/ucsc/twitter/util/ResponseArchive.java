@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.base.Charsets;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The format of the archives written by {@link RecordingTwitter}, and read back by
+ * {@link ReplayingTwitter}. An archive starts with a magic number, and is followed by one
+ * record per API call: its length, the time the call was made, the name of the method called,
+ * whether it failed, and the response, or the {@link twitter4j.TwitterException}, that the API
+ * sent back, serialized as twitter4j serializes them. Records are only ever appended; a record
+ * that was only partially written (e.g., the collector was killed) is ignored when the archive
+ * is read.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+final class ResponseArchive {
+  static final int MAGIC = 0x64747761; // "dtwa"
+
+  /**
+   * Never invoked
+   */
+  private ResponseArchive() {}
+
+  /**
+   * creates an empty archive, unless the file already holds one.
+   *
+   * @throws IOException if the file cannot be written.
+   */
+  static void create(File file) throws IOException {
+    if (file.length() > 0) { return; }
+
+    final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+    try {
+      out.writeInt(MAGIC);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * @param response what the API sent back; the thrown exception if the call failed.
+   * @return the record of an API call, ready to be appended to an archive.
+   * @throws java.io.NotSerializableException if the response cannot be serialized.
+   */
+  static byte[] encode(long time, String method, boolean failed, Object response)
+      throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream      out   = new DataOutputStream(bytes);
+    out.writeInt(0); // the length, once known.
+    out.writeLong(time);
+    final byte[] name = method.getBytes(Charsets.UTF_8);
+    out.writeInt(name.length);
+    out.write(name);
+    out.writeBoolean(failed);
+
+    final ObjectOutputStream objects = new ObjectOutputStream(out);
+    objects.writeObject(response);
+    objects.close();
+
+    final byte[] record = bytes.toByteArray();
+    ByteBuffer.wrap(record).putInt(0, record.length - 4);
+    return record;
+  }
+
+  /**
+   * appends a record to an archive.
+   */
+  static void append(File file, byte[] record) throws IOException {
+    final OutputStream out = new FileOutputStream(file, true);
+    try {
+      out.write(record);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * maps an archive into memory.
+   *
+   * @return the archive's records, positioned at the first one.
+   * @throws IOException if the file cannot be mapped, or it is not an archive.
+   */
+  static ByteBuffer map(File file) throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(file + " is too large to be mapped at once");
+      }
+
+      final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < 4 || buffer.getInt() != MAGIC) {
+        throw new IOException(file + " is not a response archive");
+      }
+
+      return buffer;
+    } finally {
+      // the mapping stays valid once the file is closed.
+      raf.close();
+    }
+  }
+
+  /**
+   * reads the next record of an archive; its response is only deserialized when asked for.
+   *
+   * @return the next record; or null if there are no more complete ones.
+   */
+  static Record next(ByteBuffer archive) {
+    if (archive.remaining() < 4) { return null; }
+
+    final int length = archive.getInt();
+    if (length < 0 || archive.remaining() < length) {
+      archive.position(archive.limit());
+      return null;
+    }
+
+    final ByteBuffer in = archive.slice();
+    in.limit(length);
+    archive.position(archive.position() + length);
+    try {
+      final long    time   = in.getLong();
+      final byte[]  name   = new byte[in.getInt()];
+      in.get(name);
+      final String  method = new String(name, Charsets.UTF_8);
+      final boolean failed = in.get() != 0;
+      return new Record(time, method, failed, in.slice());
+    } catch (BufferUnderflowException e) {
+      throw new IllegalStateException("corrupted response archive record", e);
+    }
+  }
+
+  /**
+   * A recorded API call.
+   */
+  static class Record {
+    final long    time;
+    final String  method;
+    final boolean failed;
+
+    private final ByteBuffer response;
+
+    Record(long time, String method, boolean failed, ByteBuffer response) {
+      this.time     = time;
+      this.method   = method;
+      this.failed   = failed;
+      this.response = response;
+    }
+
+    /**
+     * @return what the API sent back; the thrown exception if the call failed.
+     */
+    Object response() {
+      final byte[] bytes = new byte[response.remaining()];
+      response.duplicate().get(bytes);
+      try {
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+          return in.readObject();
+        } finally {
+          in.close();
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException("corrupted response archive record", e);
+      } catch (ClassNotFoundException e) {
+        throw new IllegalStateException("response recorded by another twitter4j version", e);
+      }
+    }
+
+    @Override public String toString() {
+      return String.format("Record(time=%d, method=%s, failed=%b)", time, method, failed);
+    }
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import twitter4j.TwitterException;
+
+/**
+ * Retries the calls to Twitter that failed for a transient reason (a network issue, or a 5xx
+ * from Twitter), waiting a random time between 0 and {@code baseDelay * 2^(attempt - 1)}, capped
+ * at {@code maxDelay}, before each retry; the randomness keeps the callers that failed together
+ * from retrying together. No retry is started once the deadline, counted from the first
+ * attempt, and not counting the waits for tokens, has passed. Calls the API rejected (e.g., for making too many of them) are not
+ * retried; they are left to the {@link RateLimitPacer}s.
+ *
+ * <p>Calls to idempotent reads can also be hedged: if the call has not returned once the given
+ * percentile of the latest latencies has passed, the same call is made again, and the first one
+ * to return wins. This cuts the tail latency at the cost of a few more calls.</p>
+ *
+ * <p>Paced calls, hedged ones included, take their token before each attempt starts, so neither
+ * their latency nor the time after which they are hedged counts the wait for it; otherwise,
+ * calls would be hedged, spending a second token, exactly when tokens are scarce. Likewise, a
+ * call that times itself (e.g., for a circuit breaker) does not count the wait.</p>
+ *
+ * <p>A policy is thread safe.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class RetryPolicy {
+  private static final int SAMPLES     = 128; // latencies the hedging delay is computed from.
+  private static final int MIN_SAMPLES = 20;  // latencies needed before calls are hedged.
+
+  private final int    maxAttempts;
+  private final long   baseDelay;
+  private final long   maxDelay;
+  private final long   deadline;
+  private final double hedgePercentile;
+  private final Random random = new Random();
+
+  private final long[] latencies = new long[SAMPLES];
+  private int  sampled;
+  private long retried;
+  private long hedged;
+
+  /**
+   * @param maxAttempts max number of attempts, the first one included.
+   * @param baseDelay wait before the first retry, at most.
+   * @param maxDelay wait before any retry, at most.
+   * @param deadline time after the first attempt past which no more retries are made.
+   * @param unit unit of the delays and the deadline.
+   * @param hedgePercentile percentile (e.g., 95) of the latest latencies after which a hedged
+   *    call is made; calls are not hedged if not positive.
+   */
+  public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay, long deadline,
+      TimeUnit unit, double hedgePercentile) {
+    Preconditions.checkArgument(hedgePercentile < 100, "percentile must be below 100");
+    this.maxAttempts     = Math.max(1, maxAttempts);
+    this.baseDelay       = Math.max(0, unit.toMillis(baseDelay));
+    this.maxDelay        = Math.max(this.baseDelay, unit.toMillis(maxDelay));
+    this.deadline        = Math.max(0, unit.toMillis(deadline));
+    this.hedgePercentile = hedgePercentile;
+  }
+
+  /**
+   * @return a policy with the settings in the runtime configuration.
+   */
+  public static RetryPolicy fromEnvironment() {
+    final TwitterEnvironment environment = TwitterEnvironment.getInstance();
+    return new RetryPolicy(environment.getRetryMaxAttempts(), environment.getRetryBaseDelay(),
+        environment.getRetryMaxDelay(), environment.getRetryDeadline(), TimeUnit.MILLISECONDS,
+        environment.getRetryHedgePercentile());
+  }
+
+  /**
+   * makes a call, retrying it if it fails for a transient reason.
+   *
+   * @return what the call returned.
+   * @throws Exception the last failure, once no more retries are made.
+   */
+  public <T> T call(Callable<T> call) throws Exception {
+    return call(call, null);
+  }
+
+  /**
+   * makes a call to an idempotent read, retrying it if it fails for a transient reason, and
+   * hedging it if it is slow.
+   *
+   * @param hedges where hedged calls are made; the call is never hedged if null.
+   * @return what the first call to return returned.
+   * @throws Exception the last failure, once no more retries are made.
+   */
+  public <T> T call(Callable<T> call, ExecutorService hedges) throws Exception {
+    return call(call, hedges, null);
+  }
+
+  /**
+   * same as {@link #call(Callable, ExecutorService)}, but each attempt first waits for a token
+   * of the pacer the call is paced by; a hedged call waits for its own.
+   *
+   * @param pacer pacer of the call; the call is not paced if null.
+   */
+  public <T> T call(Callable<T> call, ExecutorService hedges, RateLimitPacer pacer)
+      throws Exception {
+    // the deadline does not count the waits for tokens; so it starts once the first attempt's
+    // token is in hand, and is pushed back by the waits for the later ones.
+    long startedAt = now();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        if (pacer != null) {
+          final long waitedFrom = now();
+          pacer.acquire();
+          startedAt += now() - waitedFrom;
+        }
+        final Callable<T> paid   = pacer == null ? call : pacer.prepaid(call);
+        final long        start  = now();
+        final T           result = hedges == null
+            ? paid.call()
+            : hedged(paid, paced(call, pacer), hedges, startedAt);
+        record(now() - start);
+        return result;
+      } catch (Exception failure) {
+        if (attempt >= maxAttempts || !isRetryable(failure)) { throw failure; }
+
+        final long delay = backoff(attempt);
+        if (now() + delay - startedAt > deadline) { throw failure; }
+
+        synchronized (this) { retried++; }
+        sleep(delay);
+      }
+    }
+  }
+
+  /**
+   * makes the call, and again if it is slower than usual; no hedged call is made past the
+   * deadline.
+   *
+   * @param paid the call, whose token, if it is paced, was already taken.
+   * @param hedge the call, as the hedged call makes it; i.e., taking its own token first.
+   */
+  private <T> T hedged(Callable<T> paid, Callable<T> hedge, ExecutorService hedges,
+      long startedAt) throws Exception {
+    final long delay = hedgeDelay();
+    if (delay < 0) { return paid.call(); }
+
+    final CompletionService<T> completion = new ExecutorCompletionService<T>(hedges);
+    final Future<T>            first      = completion.submit(paid);
+    Future<T> second = null;
+    try {
+      Future<T> done = completion.poll(delay, TimeUnit.MILLISECONDS);
+      if (done == null && now() - startedAt < deadline) {
+        synchronized (this) { hedged++; }
+        second = completion.submit(hedge);
+      }
+
+      int pending = second == null ? 1 : 2;
+      Exception failure = null;
+      while (pending > 0) {
+        done = done != null ? done : completion.take();
+        pending--;
+        try {
+          return done.get();
+        } catch (ExecutionException e) {
+          // the other call may still succeed.
+          failure = e.getCause() instanceof Exception
+              ? (Exception) e.getCause()
+              : new RuntimeException(e.getCause());
+        }
+        done = null;
+      }
+
+      throw failure;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while waiting for a call", e);
+    } finally {
+      // calls under way are not interrupted; what they return is dropped.
+      first.cancel(false);
+      if (second != null) { second.cancel(false); }
+    }
+  }
+
+  /**
+   * @return the call, taking a token of the pacer before it starts, so that the call, like the
+   *    attempts, is only made once its token is in hand.
+   */
+  private static <T> Callable<T> paced(final Callable<T> call, final RateLimitPacer pacer) {
+    if (pacer == null) { return call; }
+
+    return new Callable<T>() {
+      @Override public T call() throws Exception {
+        pacer.acquire();
+        return pacer.prepaid(call).call();
+      }
+    };
+  }
+
+  /**
+   * @return true if the call may succeed if made again; i.e., it failed for a network issue,
+   *    or Twitter failed to serve it.
+   */
+  protected boolean isRetryable(Exception failure) {
+    if (failure instanceof TwitterException) {
+      final TwitterException twitter = (TwitterException) failure;
+      return twitter.isCausedByNetworkIssue() || twitter.getStatusCode() >= 500;
+    }
+
+    return failure instanceof IOException;
+  }
+
+  /**
+   * @return time to wait before the given retry; "full jitter".
+   */
+  private long backoff(int attempt) {
+    final long cap = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 30));
+    synchronized (random) {
+      return (long) (random.nextDouble() * cap);
+    }
+  }
+
+  /**
+   * @return time after which a call is hedged; negative if calls are not hedged yet.
+   */
+  private synchronized long hedgeDelay() {
+    if (hedgePercentile <= 0 || sampled < MIN_SAMPLES) { return -1; }
+
+    final long[] sorted = Arrays.copyOf(latencies, Math.min(sampled, SAMPLES));
+    Arrays.sort(sorted);
+    return sorted[(int) (hedgePercentile / 100 * (sorted.length - 1))];
+  }
+
+  private synchronized void record(long latency) {
+    latencies[sampled++ % SAMPLES] = latency;
+  }
+
+  /**
+   * @return number of retries made so far.
+   */
+  public synchronized long getRetried() {
+    return retried;
+  }
+
+  /**
+   * @return number of hedged calls made so far.
+   */
+  public synchronized long getHedged() {
+    return hedged;
+  }
+
+  /**
+   * @return the current time, in milliseconds.
+   */
+  protected long now() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * @param millis time to wait before retrying.
+   */
+  protected void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while waiting to retry a call", e);
+    }
+  }
+
+  @Override public synchronized String toString() {
+    return String.format(
+        "RetryPolicy(attempts=%d, delay=%d..%d ms, deadline=%d ms, hedge=p%.0f, retried=%d, "
+            + "hedged=%d)",
+        maxAttempts, baseDelay, maxDelay, deadline, hedgePercentile, retried, hedged);
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Remembers the highest tweet id seen by each search, so that the next run of the same search
+ * asks only for newer tweets (i.e., passes it as {@code since_id}) rather than downloading the
+ * same tweets again. Searches are told apart by their {@link #keyOf(Set, String) normalized}
+ * keywords and language. Only the most recently used searches are remembered.
+ *
+ * <p>If given a file, checkpoints can be saved to it, and loaded back after a restart.</p>
+ *
+ * <p>Checkpoints are thread safe.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class SearchCheckpoints {
+  private static final int DEFAULT_CAPACITY = 10000;
+
+  private final Map<String, Long> sinceIds;
+  private final File              file;
+
+  private boolean dirty;
+
+  public SearchCheckpoints() {
+    this(DEFAULT_CAPACITY, null);
+  }
+
+  /**
+   * @param capacity max number of searches to be remembered.
+   * @param file where checkpoints are saved to, and loaded from; null if none.
+   */
+  public SearchCheckpoints(final int capacity, File file) {
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+    this.file     = file;
+    this.sinceIds = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * @return the checkpoints shared by all searches, loaded from the file named in the
+   *    {@link TwitterEnvironment}.
+   */
+  public static SearchCheckpoints shared() {
+    return Installer.INSTANCE;
+  }
+
+  /**
+   * @return a key that is the same for the same keywords in any order, case or spacing.
+   */
+  public static String keyOf(Set<String> keywords, String language) {
+    final Set<String> normalized = new TreeSet<String>();
+    for (String each : keywords) {
+      final String keyword = each.trim().replaceAll("\\s+", " ").toLowerCase();
+      if (keyword.length() > 0) { normalized.add(keyword); }
+    }
+
+    return language + ":" + Joiner.on('|').join(normalized);
+  }
+
+  /**
+   * @param key of the search.
+   * @return the highest tweet id seen by the search; 0 if none.
+   */
+  public long sinceId(String key) {
+    synchronized (sinceIds) {
+      final Long sinceId = sinceIds.get(key);
+      return sinceId == null ? 0L : sinceId;
+    }
+  }
+
+  /**
+   * moves the search's checkpoint forward; never backwards.
+   * @param key of the search.
+   * @param maxId highest tweet id found by the last run of the search.
+   */
+  public void advance(String key, long maxId) {
+    synchronized (sinceIds) {
+      final Long sinceId = sinceIds.get(key);
+      if (sinceId != null && sinceId >= maxId) { return; }
+      sinceIds.put(key, maxId);
+      dirty = true;
+    }
+  }
+
+  /**
+   * @return number of searches remembered.
+   */
+  public int size() {
+    synchronized (sinceIds) {
+      return sinceIds.size();
+    }
+  }
+
+  /**
+   * loads the checkpoints saved in this file, if any.
+   *
+   * @return the number of checkpoints loaded.
+   * @throws IOException if the file exists but cannot be read.
+   */
+  public int load() throws IOException {
+    if (file == null || !file.exists()) { return 0; }
+
+    int loaded = 0;
+    final BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        final int tab = line.lastIndexOf('\t');
+        if (tab < 0) { continue; }
+
+        try {
+          advance(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+          loaded++;
+        } catch (NumberFormatException malformed) {
+          // skips the line.
+        }
+      }
+    } finally {
+      reader.close();
+    }
+
+    synchronized (sinceIds) {
+      dirty = false;
+    }
+
+    return loaded;
+  }
+
+  /**
+   * saves the checkpoints to this file, if there is one and they changed since they were last
+   * saved or loaded. The file is replaced only once all checkpoints are written; concurrent
+   * saves are done one after the other.
+   *
+   * @return true if the file was written.
+   * @throws IOException if the file cannot be written.
+   */
+  public synchronized boolean save() throws IOException {
+    if (file == null) { return false; }
+
+    final Map<String, Long> snapshot;
+    synchronized (sinceIds) {
+      if (!dirty) { return false; }
+      snapshot = new LinkedHashMap<String, Long>(sinceIds);
+      dirty    = false;
+    }
+
+    final List<String> lines = Lists.newArrayListWithCapacity(snapshot.size());
+    for (Map.Entry<String, Long> each : snapshot.entrySet()) {
+      lines.add(each.getKey() + "\t" + each.getValue());
+    }
+
+    try {
+      TextFiles.replace(file, lines);
+    } catch (IOException e) {
+      synchronized (sinceIds) {
+        dirty = true;
+      }
+      throw e;
+    }
+
+    return true;
+  }
+
+  @Override public String toString() {
+    return String.format("SearchCheckpoints(size=%d)", size());
+  }
+
+  /**
+   * Lazy-constructed singleton, which is thread safe
+   */
+  static class Installer {
+    static final SearchCheckpoints INSTANCE;
+
+    static {
+      final String filename = TwitterEnvironment.getInstance().getSearchCheckpointsFile();
+      INSTANCE = new SearchCheckpoints(DEFAULT_CAPACITY,
+          filename == null ? null : new File(filename));
+      try {
+        INSTANCE.load();
+      } catch (IOException e) {
+        System.err.println("unable to load search checkpoints; all searches start over");
+      }
+    }
+  }
+}
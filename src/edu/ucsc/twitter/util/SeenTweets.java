@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.base.Preconditions;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * The ids of the tweets collected so far, across runs, so that a tweet found again (by another
+ * search, or after a restart) is dropped before it is enriched and written once more. Ids are
+ * kept in a {@link LongHashSet}; if a file is given, they are appended to it, 8 bytes per id, and
+ * loaded back on startup.
+ *
+ * <p>Only the newest ids are remembered: once twice as many as the given maximum are held, the
+ * set (and its file) are compacted down to the newest maximum ones. Tweet ids grow over time, and
+ * searches ask only for tweets newer than their checkpoints, so the oldest ids are the least
+ * likely to be found again. Memory is thus bounded by twice the maximum, 8 to 16 bytes per id,
+ * and the file by twice the maximum, 8 bytes per id.</p>
+ *
+ * <p>Alternatively, ids can be remembered across runs by a memory-mapped
+ * {@link LongBloomFilter}, which takes a couple of bytes per id, at the cost of dropping a few
+ * new tweets (as many as its false positive rate) as if they had been seen before. Then, the
+ * set only holds the newest ids seen by the current session.</p>
+ *
+ * <p>Seen tweets are thread safe.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class SeenTweets {
+  static final int DEFAULT_MAX_IDS = 2000000;
+
+  private final LongBloomFilter bloom;
+  private final File            file;
+  private final int             maxIds;
+  private final Object          saving = new Object(); // serializes writes to the file.
+
+  private LongHashSet ids;
+  private long[]      unsaved;
+  private int         unsavedCount;
+
+  /**
+   * ids are remembered for the current session only.
+   */
+  public SeenTweets() {
+    this(DEFAULT_MAX_IDS);
+  }
+
+  /**
+   * same as {@link #SeenTweets()}, but only the newest {@code maxIds} are remembered.
+   */
+  public SeenTweets(int maxIds) {
+    this(new LongHashSet(), null, null, maxIds);
+  }
+
+  private SeenTweets(LongHashSet ids, LongBloomFilter bloom, File file, int maxIds) {
+    Preconditions.checkArgument(maxIds > 0, "maxIds must be positive");
+    this.ids     = ids;
+    this.bloom   = bloom;
+    this.file    = file;
+    this.maxIds  = maxIds;
+    this.unsaved = new long[file == null ? 0 : 64];
+  }
+
+  /**
+   * same as {@link #logged(File, int)}, remembering up to {@value #DEFAULT_MAX_IDS} ids.
+   */
+  public static SeenTweets logged(File file) throws IOException {
+    return logged(file, DEFAULT_MAX_IDS);
+  }
+
+  /**
+   * @param file where ids are appended to, and loaded from.
+   * @param maxIds number of newest ids that are remembered.
+   * @return seen tweets whose ids are appended to the given file, after loading the ones
+   *    already in it. A partially written id at the end of the file (e.g., after a crash) is cut
+   *    off, so later ids are appended where they belong.
+   * @throws IOException if the file exists but cannot be read.
+   */
+  public static SeenTweets logged(File file, int maxIds) throws IOException {
+    final LongHashSet ids = new LongHashSet((int) Math.min(file.length() / 8, 2L * maxIds));
+    if (file.exists()) {
+      final long whole = alignLog(file);
+      final DataInputStream in = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(file)));
+      try {
+        for (long read = 0; read < whole; read += 8) {
+          ids.add(in.readLong());
+        }
+      } finally {
+        in.close();
+      }
+    }
+
+    final SeenTweets seen = new SeenTweets(ids, null, file, maxIds);
+    seen.compactIfFull();
+    return seen;
+  }
+
+  /**
+   * @return seen tweets remembered across runs by a bloom filter mapped to the given file.
+   * @throws IOException if the file cannot be mapped.
+   */
+  public static SeenTweets filtered(File file, long expected, double falsePositiveRate)
+      throws IOException {
+    return new SeenTweets(new LongHashSet(), LongBloomFilter.mapped(file, expected,
+        falsePositiveRate), null, DEFAULT_MAX_IDS);
+  }
+
+  /**
+   * @return the seen tweets shared by all searches, as configured in the
+   *    {@link TwitterEnvironment}.
+   */
+  public static SeenTweets shared() {
+    return Installer.INSTANCE;
+  }
+
+  /**
+   * cuts off a partially written id at the end of the log, if any.
+   *
+   * @return the length of the log, in bytes; a multiple of 8.
+   */
+  private static long alignLog(File file) throws IOException {
+    final RandomAccessFile log = new RandomAccessFile(file, "rw");
+    try {
+      final long whole = log.length() - log.length() % 8;
+      if (whole != log.length()) { log.setLength(whole); }
+      return whole;
+    } finally {
+      log.close();
+    }
+  }
+
+  /**
+   * marks a tweet as seen.
+   * @param tweetId id of the tweet.
+   * @return true if the tweet was never seen before.
+   */
+  public synchronized boolean add(long tweetId) {
+    if (ids.contains(tweetId)) { return false; }
+    if (bloom != null && !bloom.put(tweetId)) { return false; }
+
+    ids.add(tweetId);
+    if (file != null) {
+      if (unsavedCount == unsaved.length) {
+        unsaved = Arrays.copyOf(unsaved, unsavedCount * 2);
+      }
+      unsaved[unsavedCount++] = tweetId;
+    }
+
+    return true;
+  }
+
+  /**
+   * @return true if the tweet was seen before (or, with a bloom filter, maybe it was).
+   */
+  public synchronized boolean contains(long tweetId) {
+    return ids.contains(tweetId) || (bloom != null && bloom.mightContain(tweetId));
+  }
+
+  /**
+   * @return number of tweets remembered; about twice the max number of ids, at most.
+   */
+  public synchronized int size() {
+    return ids.size();
+  }
+
+  /**
+   * appends the ids seen since the last save to the file, or rewrites it with the newest ids
+   * only, if there are too many; or writes the bloom filter's changes to its file. Ids that
+   * cannot be written are kept, to be written by the next save.
+   *
+   * @throws IOException if the file cannot be written.
+   */
+  public void save() throws IOException {
+    synchronized (saving) {
+      final long[]  pending;
+      final boolean compacted;
+      synchronized (this) {
+        if (bloom != null) { bloom.force(); }
+
+        compacted = compactIfFull();
+        if (file == null || (unsavedCount == 0 && !compacted)) { return; }
+        pending      = compacted ? ids.toArray() : Arrays.copyOf(unsaved, unsavedCount);
+        unsavedCount = 0;
+      }
+
+      try {
+        if (compacted) {
+          replaceLog(pending);
+        } else {
+          appendLog(pending);
+        }
+      } catch (IOException e) {
+        // duplicates in the log are harmless; lost ids are not.
+        keepUnsaved(pending);
+        throw e;
+      }
+    }
+  }
+
+  private synchronized void keepUnsaved(long[] pending) {
+    if (unsavedCount + pending.length > unsaved.length) {
+      unsaved = Arrays.copyOf(unsaved, Math.max(unsaved.length * 2,
+          unsavedCount + pending.length));
+    }
+    System.arraycopy(pending, 0, unsaved, unsavedCount, pending.length);
+    unsavedCount += pending.length;
+  }
+
+  private void appendLog(long[] pending) throws IOException {
+    alignLog(file);
+    final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file, true)));
+    try {
+      for (long each : pending) {
+        out.writeLong(each);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private void replaceLog(long[] retained) throws IOException {
+    final File temp = new File(file.getPath() + ".tmp");
+    final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(temp)));
+    try {
+      for (long each : retained) {
+        out.writeLong(each);
+      }
+    } finally {
+      out.close();
+    }
+
+    if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+      throw new IOException("unable to replace " + file);
+    }
+  }
+
+  /**
+   * keeps only the newest {@link #maxIds} ids, once twice as many are held.
+   *
+   * @return true if the ids were compacted.
+   */
+  private synchronized boolean compactIfFull() {
+    if (ids.size() <= 2L * maxIds) { return false; }
+
+    final long[] all = ids.toArray();
+    Arrays.sort(all);
+    final LongHashSet newest = new LongHashSet(maxIds);
+    for (int i = all.length - maxIds; i < all.length; i++) {
+      newest.add(all[i]);
+    }
+
+    ids = newest;
+    return true;
+  }
+
+  @Override public synchronized String toString() {
+    return String.format("SeenTweets(size=%d, %s)", ids.size(),
+        bloom != null ? bloom : (file != null ? "logged" : "in memory"));
+  }
+
+  /**
+   * Lazy-constructed singleton, which is thread safe
+   */
+  static class Installer {
+    static final SeenTweets INSTANCE;
+
+    static {
+      final TwitterEnvironment environment = TwitterEnvironment.getInstance();
+      final String             filename    = environment.getSeenTweetsFile();
+      SeenTweets instance = new SeenTweets(environment.getSeenTweetsMax());
+      try {
+        if (filename != null && environment.isSeenTweetsBloomFilterEnabled()) {
+          instance = filtered(new File(filename), environment.getSeenTweetsExpected(),
+              environment.getSeenTweetsFalsePositiveRate());
+        } else if (filename != null) {
+          instance = logged(new File(filename), environment.getSeenTweetsMax());
+        }
+      } catch (IOException e) {
+        System.err.println("unable to load seen tweets; only this session's will be dropped");
+      }
+
+      INSTANCE = instance;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A concurrent symbol table that maps each distinct screen name or hashtag to a dense int id.
+ * Collected tweets keep ids rather than strings, so that a name repeated across thousands of
+ * tweets is stored only once, and is resolved back only when results are written.
+ *
+ * <p>A table never reuses nor forgets its ids. The {@link #shared() shared} table is therefore
+ * handed out in generations: once a generation holds {@link Installer#GENERATION_SIZE} symbols,
+ * a new one takes its place. Every tweet keeps a reference to the table that interned its names,
+ * so an old generation stays alive while tweets still need it, and it is garbage collected once
+ * those tweets have been written and dropped.</p>
+ *
+ * <p>Looking up a known symbol is lock free; only new symbols are added under a lock. A
+ * {@code null} symbol is interned as {@link #NULL}, and resolved back to {@code null}.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class Symbols {
+  /** the id of a {@code null} symbol. */
+  public static final int NULL = -1;
+
+  private final ConcurrentMap<String, Integer> ids;
+
+  private volatile String[] names;
+  private int               size;
+
+  public Symbols() {
+    this(1024);
+  }
+
+  public Symbols(int capacity) {
+    this.ids   = new ConcurrentHashMap<String, Integer>(capacity);
+    this.names = new String[Math.max(1, capacity)];
+    this.size  = 0;
+  }
+
+  /**
+   * @return the current generation of the symbol table shared by all collected tweets.
+   */
+  public static Symbols shared() {
+    return Installer.current(Installer.GENERATION_SIZE);
+  }
+
+  /**
+   * @param symbol screen name or hashtag; may be {@code null}.
+   * @return the id of the symbol; a new one if the symbol was never seen before, or
+   *    {@link #NULL} if the symbol is {@code null}.
+   */
+  public int intern(String symbol) {
+    if (symbol == null) { return NULL; }
+
+    final Integer id = ids.get(symbol);
+    if (id != null) { return id; }
+
+    synchronized (this) {
+      final Integer raced = ids.get(symbol);
+      if (raced != null) { return raced; }
+
+      final int next = size;
+      String[] current = names;
+      if (next == current.length) {
+        current = Arrays.copyOf(current, current.length * 2);
+      }
+
+      current[next] = symbol;
+      // publish the (possibly grown) array before the id, so whoever sees the id can resolve it.
+      names = current;
+      size  = next + 1;
+      ids.put(symbol, next);
+      return next;
+    }
+  }
+
+  /**
+   * @param symbols screen names or hashtags.
+   * @return the ids of the given symbols, in iteration order.
+   */
+  public int[] internAll(Collection<String> symbols) {
+    final int[] result = new int[symbols.size()];
+    int i = 0;
+    for (String each : symbols) {
+      result[i++] = intern(each);
+    }
+
+    return result;
+  }
+
+  /**
+   * @param id of an interned symbol.
+   * @return the symbol, or {@code null} if the id is {@link #NULL}.
+   * @throws IllegalArgumentException if the id was not given by this table.
+   */
+  public String resolve(int id) {
+    if (id == NULL) { return null; }
+
+    final String[] current = names;
+    final String   symbol  = id >= 0 && id < current.length ? current[id] : null;
+    if (symbol == null) {
+      throw new IllegalArgumentException("unknown symbol id: " + id);
+    }
+
+    return symbol;
+  }
+
+  /**
+   * @return the number of interned symbols.
+   */
+  public int size() {
+    return ids.size();
+  }
+
+  @Override public String toString() {
+    return String.format("Symbols(size=%d)", size());
+  }
+
+  /**
+   * Lazy-constructed, thread safe holder of the current generation.
+   */
+  static class Installer {
+    static final int GENERATION_SIZE = 1 << 16;
+
+    static final AtomicReference<Symbols> CURRENT = new AtomicReference<Symbols>(new Symbols());
+
+    static Symbols current(int limit) {
+      final Symbols current = CURRENT.get();
+      if (current.size() < limit) { return current; }
+
+      final Symbols next = new Symbols();
+      return CURRENT.compareAndSet(current, next) ? next : CURRENT.get();
+    }
+  }
+}
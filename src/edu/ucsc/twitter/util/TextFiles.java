@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes the small text files in which collection state (user profiles, search checkpoints)
+ * outlives a restart.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+final class TextFiles {
+  private TextFiles() {}
+
+  /**
+   * writes the lines, in UTF-8, to a temporary file next to the given one, and only then
+   * replaces the given file with it; so a crash leaves either the old file or the new one, never
+   * a partly written one. Callers replacing the same file must not do so concurrently.
+   *
+   * @param file to be replaced.
+   * @param lines to be written, each one followed by a line break.
+   * @throws IOException if the lines cannot be written, or the file cannot be replaced.
+   */
+  static void replace(File file, Iterable<String> lines) throws IOException {
+    final File temp = new File(file.getPath() + ".tmp");
+    final Writer writer = new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+    try {
+      for (String each : lines) {
+        writer.write(each);
+        writer.write('\n');
+      }
+    } finally {
+      writer.close();
+    }
+
+    if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+      throw new IOException("unable to replace " + file);
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+
+/**
+ * The text of a tweet, normalized once so that everyone down the line (the entity extractor, the
+ * relevance scorer, the writers and the classifiers) works on the same text: runs of line breaks
+ * are collapsed into a single space, and HTML entities (which the search API uses to escape
+ * {@code <}, {@code >} and {@code &}) are decoded. Both steps are done in a single pass over the
+ * raw text. The lowercase view of the text is computed on first use, and then cached.
+ *
+ * <p>Tweet texts are immutable, and thus thread safe.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class TweetText implements CharSequence {
+  private static final int MAX_ENTITY_LENGTH = 10; // e.g., &#x1F600;
+
+  private static final Map<String, Character> ENTITIES = ImmutableMap.<String, Character>builder()
+      .put("amp", '&')
+      .put("lt", '<')
+      .put("gt", '>')
+      .put("quot", '"')
+      .put("apos", '\'')
+      .put("nbsp", '\u00a0')
+      .build();
+
+  private final String raw;
+  private final String text;
+  private String       lowercase; // lazily computed; racy, but String is immutable.
+
+  private TweetText(String raw, String text) {
+    this.raw  = raw;
+    this.text = text;
+  }
+
+  /**
+   * normalizes the raw text of a tweet.
+   *
+   * @param raw text, as returned by the Twitter API.
+   * @return the normalized text.
+   */
+  public static TweetText of(String raw) {
+    return new TweetText(raw, normalize(Preconditions.checkNotNull(raw)));
+  }
+
+  private static String normalize(String raw) {
+    final StringBuilder text = new StringBuilder(raw.length());
+
+    boolean lineBreak = false;
+    boolean changed   = false;
+    int i = 0;
+    while (i < raw.length()) {
+      final char c = raw.charAt(i);
+      int decoded = c;
+      int next    = i + 1;
+
+      if (c == '&') {
+        final int semicolon = raw.indexOf(';', i + 1);
+        if (semicolon > i + 1 && semicolon - i <= MAX_ENTITY_LENGTH) {
+          final int entity = decodeEntity(raw, i + 1, semicolon);
+          if (entity >= 0) {
+            decoded = entity;
+            next    = semicolon + 1;
+            changed = true;
+          }
+        }
+      }
+
+      if (decoded == '\r' || decoded == '\n') {
+        if (!lineBreak) { text.append(' '); }
+        lineBreak = true;
+        changed   = true;
+      } else {
+        text.appendCodePoint(decoded);
+        lineBreak = false;
+      }
+
+      i = next;
+    }
+
+    // most tweets need no change at all; keep the original String then.
+    return changed ? text.toString() : raw;
+  }
+
+  /**
+   * @return the code point named by the entity between {@code start} and {@code end}, or -1 if
+   *    it is not a known entity.
+   */
+  private static int decodeEntity(String raw, int start, int end) {
+    if (raw.charAt(start) != '#') {
+      final Character named = ENTITIES.get(raw.substring(start, end));
+      return named == null ? -1 : named;
+    }
+
+    final boolean hex    = start + 1 < end && (raw.charAt(start + 1) == 'x'
+        || raw.charAt(start + 1) == 'X');
+    final int     digits = hex ? start + 2 : start + 1;
+    if (digits == end) { return -1; }
+
+    int codePoint = 0;
+    for (int i = digits; i < end; i++) {
+      final int digit = Character.digit(raw.charAt(i), hex ? 16 : 10);
+      if (digit < 0) { return -1; }
+      codePoint = codePoint * (hex ? 16 : 10) + digit;
+      if (codePoint > Character.MAX_CODE_POINT) { return -1; }
+    }
+
+    return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+  }
+
+  /**
+   * @return the text as returned by the Twitter API.
+   */
+  public String raw() {
+    return raw;
+  }
+
+  /**
+   * @return the text in lowercase, computed once.
+   */
+  public String lowercase() {
+    String result = lowercase;
+    if (result == null) {
+      result    = text.toLowerCase();
+      lowercase = result;
+    }
+
+    return result;
+  }
+
+  @Override public int length() {
+    return text.length();
+  }
+
+  @Override public char charAt(int index) {
+    return text.charAt(index);
+  }
+
+  @Override public CharSequence subSequence(int start, int end) {
+    return text.subSequence(start, end);
+  }
+
+  @Override public boolean equals(Object o) {
+    return o instanceof TweetText && text.equals(((TweetText) o).text);
+  }
+
+  @Override public int hashCode() {
+    return text.hashCode();
+  }
+
+  /**
+   * @return the normalized text.
+   */
+  @Override public String toString() {
+    return text;
+  }
+}
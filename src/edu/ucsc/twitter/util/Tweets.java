@@ -16,12 +16,19 @@
 package edu.ucsc.twitter.util;
 
 import com.google.common.base.Joiner;
-import edu.ucsc.cli.util.Strings;
+import com.google.common.base.Supplier;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import static java.util.regex.Pattern.CASE_INSENSITIVE;
@@ -52,6 +59,22 @@ public class Tweets {
   );
 
   private static final String SPACE_RANGES;
+  private static final int MAX_SCREENNAME_LENGTH = 20;
+
+  private static final int MIN_BATCH_CHUNK = 64;
+  private static final int BATCH_CHUNKS    = 4 * Runtime.getRuntime().availableProcessors();
+
+  private static final ThreadLocal<URLScanner> URL_SCANNER = new ThreadLocal<URLScanner>() {
+    @Override protected URLScanner initialValue() {
+      return new URLScanner();
+    }
+  };
+
+  private static final ThreadLocal<Utf8Text> UTF8_TEXT = new ThreadLocal<Utf8Text>() {
+    @Override protected Utf8Text initialValue() {
+      return new Utf8Text();
+    }
+  };
 
   static {
     EMPTY_LIST = Collections.unmodifiableList(Collections.<String>emptyList());
@@ -64,8 +87,8 @@ public class Tweets {
   }
 
 
-  public List<String> extractMentionedScreennames(String text) {
-    if (Strings.isEmpty(text)) { return EMPTY_LIST; }
+  public List<String> extractMentionedScreennames(CharSequence text) {
+    if (isEmpty(text)) { return EMPTY_LIST; }
 
     final LinkedList<String> mentions = new LinkedList<String>();
     final Matcher matcher = Patterns.EXTRACT_MENTIONS.matcher(text);
@@ -81,8 +104,8 @@ public class Tweets {
   }
 
 
-  public List<Index> indexMentionedScreennames(String text) {
-    if (Strings.isEmpty(text)) { return EMPTY_INDEX; }
+  public List<Index> indexMentionedScreennames(CharSequence text) {
+    if (isEmpty(text)) { return EMPTY_INDEX; }
     final LinkedList<Index> mentions = new LinkedList<Index>();
     final Matcher matcher = Patterns.EXTRACT_MENTIONS.matcher(text);
     while (matcher.find()) {
@@ -104,8 +127,8 @@ public class Tweets {
    * @return username referenced, if any (without the leading @ sign). Returns null if this is not a
    *         reply.
    */
-  public String extractReplyScreenname(String text) {
-    if (Strings.isEmpty(text)) { return EMPTY_STR; }
+  public String extractReplyScreenname(CharSequence text) {
+    if (isEmpty(text)) { return EMPTY_STR; }
     Matcher matcher = Patterns.EXTRACT_REPLY.matcher(text);
     if (matcher.matches()) {
       return matcher.group(Patterns.EXTRACT_REPLY_GROUP_USERNAME);
@@ -122,7 +145,7 @@ public class Tweets {
    * @param groupNumber the capturing group of the pattern that should be added to the list.
    * @return list of extracted values, or an empty list if there were none.
    */
-  private List<String> extractMultipleMatches(Pattern pattern, String text, int groupNumber) {
+  private List<String> extractMultipleMatches(Pattern pattern, CharSequence text, int groupNumber) {
     final LinkedList<String> matches = new LinkedList<String>();
     final Matcher matcher = pattern.matcher(text);
     while (matcher.find()) {
@@ -132,7 +155,7 @@ public class Tweets {
     return matches;
   }
 
-  private List<Index> extractMultipleMatchesWithIndeces(Pattern pattern, String text,
+  private List<Index> extractMultipleMatchesWithIndeces(Pattern pattern, CharSequence text,
       int groupNumber, String valueType) {
     List<Index> extracted = new LinkedList<Index>();
     Matcher matcher = pattern.matcher(text);
@@ -149,8 +172,8 @@ public class Tweets {
    * @param text of the tweet from which to extract hashtags
    * @return List of hashtags referenced (without the leading # sign)
    */
-  public List<String> extractHashtags(String text) {
-    if (Strings.isEmpty(text)) { return EMPTY_LIST; }
+  public List<String> extractHashtags(CharSequence text) {
+    if (isEmpty(text)) { return EMPTY_LIST; }
 
     return extractMultipleMatches(
         Patterns.AUTO_LINK_HASHTAGS,
@@ -166,19 +189,16 @@ public class Tweets {
    * @param text of the tweet from which to extract URLs
    * @return List of URLs referenced.
    */
-  public List<String> extractURLs(String text) {
+  public List<String> extractURLs(CharSequence text) {
     if (text == null) {
       return null;
     }
 
     List<String> urls = new ArrayList<String>();
 
-    Matcher matcher = Patterns.VALID_URL.matcher(text);
-    while (matcher.find()) {
-      String protocol = matcher.group(Patterns.VALID_URL_GROUP_PROTOCOL);
-      if (!protocol.isEmpty()) {
-        urls.add(matcher.group(Patterns.VALID_URL_GROUP_URL));
-      }
+    URLScanner scanner = new URLScanner(text);
+    while (scanner.find()) {
+      urls.add(scanner.group());
     }
 
     return urls;
@@ -190,19 +210,16 @@ public class Tweets {
    * @param text of the tweet from which to extract URLs
    * @return List of URLs referenced.
    */
-  public List<Index> extractURLsWithIndices(String text) {
+  public List<Index> extractURLsWithIndices(CharSequence text) {
     if (text == null) {
       return null;
     }
 
     List<Index> urls = new ArrayList<Index>();
 
-    Matcher matcher = Patterns.VALID_URL.matcher(text);
-    while (matcher.find()) {
-      String protocol = matcher.group(Patterns.VALID_URL_GROUP_PROTOCOL);
-      if (!protocol.isEmpty()) {
-        urls.add(new Index(matcher, "url", Patterns.VALID_URL_GROUP_URL, 0));
-      }
+    URLScanner scanner = new URLScanner(text);
+    while (scanner.find()) {
+      urls.add(new Index(scanner.start(), scanner.end(), scanner.group(), "url"));
     }
 
     return urls;
@@ -214,13 +231,332 @@ public class Tweets {
    * @param text of the tweet from which to extract hashtags
    * @return List of hashtags referenced (without the leading # sign)
    */
-  public List<Index> extractHashtagsWithIndices(String text) {
-    if (Strings.isEmpty(text)) { return EMPTY_INDEX; }
+  public List<Index> extractHashtagsWithIndices(CharSequence text) {
+    if (isEmpty(text)) { return EMPTY_INDEX; }
 
     return extractMultipleMatchesWithIndeces(Patterns.AUTO_LINK_HASHTAGS, text,
         Patterns.AUTO_LINK_HASHTAGS_GROUP_TAG, "hashtag");
   }
 
+  /**
+   * Extract @username references, #hashtag references, URLs and the replied to username from
+   * Tweet text, all in a single pass over the text. The results are the same ones returned by
+   * {@link #indexMentionedScreennames(CharSequence)}, {@link #extractHashtagsWithIndices(CharSequence)},
+   * {@link #extractURLsWithIndices(CharSequence)} and {@link #extractReplyScreenname(CharSequence)}.
+   *
+   * @param text of the tweet from which to extract entities
+   * @return the entities found in the tweet.
+   */
+  public Entities extractAll(CharSequence text) {
+    if (isEmpty(text)) { return Entities.EMPTY; }
+
+    final EntitiesBuilder builder = new EntitiesBuilder(text);
+    scan(text, builder);
+    return builder.get();
+  }
+
+  /**
+   * Garbage-free version of {@link #extractAll(CharSequence)}: rather than building lists of
+   * {@link Index indices}, it reports the offsets of each entity to the given visitor, which
+   * is typically a reused {@link EntityBuffer}.
+   *
+   * @param text of the tweet from which to extract entities
+   * @param visitor receives each entity, in the order they are found.
+   */
+  public void extractAll(CharSequence text, EntityVisitor visitor) {
+    if (isEmpty(text)) { return; }
+    scan(text, visitor);
+  }
+
+  /**
+   * Extracts the entities of a UTF-8 encoded tweet without materializing it as a String; e.g.,
+   * a record of a memory-mapped corpus. Each entity is reported to the given buffer with its
+   * offsets in chars (UTF-16 code units) and in bytes, relative to the start of the slice.
+   *
+   * @param utf8 encoded tweets.
+   * @param offset of the first byte of the tweet.
+   * @param length number of bytes of the tweet.
+   * @param buffer receives each entity, in the order they are found.
+   */
+  public void extractAll(byte[] utf8, int offset, int length, EntityBuffer buffer) {
+    extractAll(UTF8_TEXT.get().reset(utf8, offset, length), buffer);
+  }
+
+  /**
+   * Same as {@link #extractAll(byte[], int, int, EntityBuffer)}, but for the bytes between the
+   * position and the limit of the given buffer. The buffer's position is left untouched.
+   *
+   * @param utf8 encoded tweet.
+   * @param buffer receives each entity, in the order they are found.
+   */
+  public void extractAll(ByteBuffer utf8, EntityBuffer buffer) {
+    extractAll(UTF8_TEXT.get().reset(utf8), buffer);
+  }
+
+  private static void extractAll(Utf8Text text, EntityBuffer buffer) {
+    buffer.source = text;
+    try {
+      if (!isEmpty(text)) { scan(text, buffer); }
+    } finally {
+      buffer.source = null;
+    }
+  }
+
+  /**
+   * Extracts the entities of a batch of tweets in parallel, on a pool shared by all batches and
+   * sized to the number of available processors.
+   *
+   * @param texts of the tweets from which to extract entities
+   * @return the entities found in each tweet, in the same order as the given texts.
+   */
+  public List<Entities> extractAll(List<? extends CharSequence> texts) {
+    return extractAll(texts, BatchExecutor.INSTANCE);
+  }
+
+  /**
+   * Extracts the entities of a batch of tweets in parallel. The batch is split into chunks that
+   * are handed to the given executor, while the calling thread works on the first one. Each worker
+   * thread reuses its own {@link URLScanner}.
+   *
+   * @param texts of the tweets from which to extract entities
+   * @param executor runs the chunks of the batch.
+   * @return the entities found in each tweet, in the same order as the given texts.
+   */
+  public List<Entities> extractAll(List<? extends CharSequence> texts,
+      ExecutorService executor) {
+    final CharSequence[] batch = texts.toArray(new CharSequence[texts.size()]);
+    final Entities[] results = new Entities[batch.length];
+    final int        chunk   = Math.max(MIN_BATCH_CHUNK,
+        (batch.length + BATCH_CHUNKS - 1) / BATCH_CHUNKS);
+
+    final List<Future<?>> pending = new ArrayList<Future<?>>();
+    for (int from = chunk; from < batch.length; from += chunk) {
+      pending.add(executor.submit(
+          new BatchChunk(batch, results, from, Math.min(batch.length, from + chunk))));
+    }
+
+    new BatchChunk(batch, results, 0, Math.min(batch.length, chunk)).run();
+
+    for (Future<?> each : pending) {
+      try {
+        each.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while extracting entities", e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+
+    return Collections.unmodifiableList(Arrays.asList(results));
+  }
+
+  private static void scan(CharSequence text, EntityVisitor visitor) {
+    final URLScanner url    = URL_SCANNER.get().reset(text);
+    final int        length = text.length();
+
+    int hashtagEnd     = 0;
+    int pendingHash    = -1;
+    int pendingHashEnd = -1;
+    int urlEnd         = 0;
+    int lastTerminator = -1;
+    for (int i = 0; i < length; i++) {
+      final char c = text.charAt(i);
+      if (pendingHash >= 0 && isHashtagBoundary(c)) {
+        // the run of chars preceding the pending hashtag is over, so no later hash sign can win.
+        hashtagEnd  = pendingHashEnd;
+        visitor.visit(EntityVisitor.HASHTAG, pendingHash, hashtagEnd);
+        pendingHash = -1;
+      }
+
+      if (isAtSign(c)) {
+        final int end = scanMention(text, i);
+        if (end > 0) { visitor.visit(EntityVisitor.MENTION, i, end); }
+      } else if (isHashSign(c)) {
+        final int end = scanHashtag(text, i, hashtagEnd);
+        if (end > 0 && i == 0) {
+          hashtagEnd = end;
+          visitor.visit(EntityVisitor.HASHTAG, i, end);
+        } else if (end > 0) {
+          pendingHash    = i;
+          pendingHashEnd = end;
+        }
+      } else if ((c == 'h' || c == 'H') && isURLStart(text, i, urlEnd) && url.lookingAt(i)) {
+        urlEnd = url.end();
+        visitor.visit(EntityVisitor.URL, i, urlEnd);
+      } else if (isLineTerminator(c)) {
+        lastTerminator = i;
+      }
+    }
+
+    if (pendingHash >= 0) {
+      visitor.visit(EntityVisitor.HASHTAG, pendingHash, pendingHashEnd);
+    }
+
+    scanReply(text, lastTerminator, visitor);
+  }
+
+  /**
+   * Mirrors {@link Patterns#EXTRACT_MENTIONS} followed by the {@link Patterns#SCREEN_NAME_MATCH_END}
+   * check, starting at the given at sign.
+   *
+   * @return the end of the mentioned username, or -1 if there is no mention at this at sign.
+   */
+  private static int scanMention(CharSequence text, int at) {
+    if (at > 0 && isScreennameChar(text.charAt(at - 1))) { return -1; }
+
+    final int length = text.length();
+    final int start  = at + 1;
+    int end = start;
+    while (end < length && end - start < MAX_SCREENNAME_LENGTH
+        && isScreennameChar(text.charAt(end))) {
+      end++;
+    }
+
+    if (end == start)   { return -1; }
+    if (end == length)  { return end; }
+
+    final char after = text.charAt(end);
+    if (isLineTerminator(after)) {
+      // (.|$) only accepts a line terminator ending the text; otherwise the regex gives back
+      // the last username char.
+      if (isTrailingLineTerminator(text, end)) { return end; }
+      return end - 1 > start ? end - 1 : -1;
+    }
+
+    return isAtSign(after) || isLatinAccent(after) ? -1 : end;
+  }
+
+  /**
+   * Mirrors {@link Patterns#AUTO_LINK_HASHTAGS}, starting at the given hash sign. The preceding
+   * char cannot be reused if the previous hashtag already consumed it. Since the regex's preceding
+   * chars are greedy, only the last hashtag found in a run of such chars is a match; callers keep
+   * it pending until the run ends.
+   *
+   * @return the end of the hashtag, or -1 if there is no hashtag at this hash sign.
+   */
+  private static int scanHashtag(CharSequence text, int hash, int previousHashtagEnd) {
+    if (hash > 0 && (hash - 1 < previousHashtagEnd || isHashtagBoundary(text.charAt(hash - 1)))) {
+      return -1;
+    }
+
+    final int length    = text.length();
+    boolean   leading   = true;
+    boolean   hasLetter = false;
+    int end = hash + 1;
+    while (end < length && isHashtagChar(text.charAt(end))) {
+      final char c = text.charAt(end);
+      if (isLatinAccent(c)) {
+        leading = false;
+      } else if (leading && !isDigit(c)) {
+        hasLetter = true;
+      }
+      end++;
+    }
+
+    return hasLetter ? end : -1;
+  }
+
+  /**
+   * Mirrors {@link Patterns#EXTRACT_REPLY}.
+   *
+   * @param lastTerminator index of the last line terminator in the text, -1 if none.
+   */
+  private static void scanReply(CharSequence text, int lastTerminator, EntityVisitor visitor) {
+    final int length = text.length();
+    int at = 0;
+    while (at < length && isUnicodeSpace(text.charAt(at))) { at++; }
+    if (at == length || !isAtSign(text.charAt(at))) { return; }
+
+    final int start = at + 1;
+    int end = start;
+    while (end < length && end - start < MAX_SCREENNAME_LENGTH
+        && isScreennameChar(text.charAt(end))) {
+      end++;
+    }
+
+    // '.*' must reach the end of the text, so no line terminator may follow the username.
+    if (end > start && lastTerminator < end) {
+      visitor.visit(EntityVisitor.REPLY, at, end);
+    }
+  }
+
+  /**
+   * Mirrors the preceding chars of {@link Patterns#VALID_URL}, before handing the text over to
+   * {@link URLScanner#lookingAt(int)}.
+   */
+  private static boolean isURLStart(CharSequence text, int i, int previousURLEnd) {
+    if (i == 0) { return true; }
+
+    final char before = text.charAt(i - 1);
+    return i - 1 >= previousURLEnd && (before == ':' || !isURLBoundary(before));
+  }
+
+  private static boolean isEmpty(CharSequence text) {
+    return text == null || text.length() == 0;
+  }
+
+  private static boolean isAtSign(char c) {
+    return c == '@' || c == '\uFF20';
+  }
+
+  private static boolean isHashSign(char c) {
+    return c == '#' || c == '\uFF03';
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isAsciiLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isScreennameChar(char c) {
+    return isAsciiLetter(c) || isDigit(c) || c == '_';
+  }
+
+  private static boolean isLatinAccent(char c) {
+    return (c >= '\u00c0' && c <= '\u00d6')
+        || (c >= '\u00d8' && c <= '\u00f6')
+        || (c >= '\u00f8' && c <= '\u00ff');
+  }
+
+  private static boolean isHashtagChar(char c) {
+    return isScreennameChar(c) || isLatinAccent(c);
+  }
+
+  private static boolean isHashtagBoundary(char c) {
+    return isAsciiLetter(c) || isDigit(c) || c == '&' || c == '/';
+  }
+
+  private static boolean isURLBoundary(char c) {
+    switch (c) {
+      case '-': case '/': case '"': case '\'': case ':': case '!': case '=': case '_':
+      case '@': case '\uFF20':
+        return true;
+      default:
+        return isAsciiLetter(c) || isDigit(c);
+    }
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  private static boolean isTrailingLineTerminator(CharSequence text, int i) {
+    final int length = text.length();
+    return i == length - 1
+        || (i == length - 2 && text.charAt(i) == '\r' && text.charAt(i + 1) == '\n');
+  }
+
+  private static boolean isUnicodeSpace(char c) {
+    return (c >= '\t' && c <= '\r')
+        || c == '\u0020' || c == '\u0085' || c == '\u00a0' || c == '\u1680' || c == '\u180E'
+        || (c >= '\u2000' && c <= '\u200a')
+        || c == '\u2028' || c == '\u2029' || c == '\u202F' || c == '\u205F' || c == '\u3000';
+  }
+
   /**
    * Index object.
    */
@@ -240,12 +576,35 @@ public class Tweets {
     }
 
     public Index(Matcher matcher, String valueType, int groupNumber, int startOffset) {
-      this.start = matcher.start(groupNumber) + startOffset; // 0-indexed
-      this.end = matcher.end(groupNumber);
-      this.value = matcher.group(groupNumber);
+      this(matcher.start(groupNumber) + startOffset, // 0-indexed
+          matcher.end(groupNumber),
+          matcher.group(groupNumber),
+          valueType);
+    }
+
+    Index(int start, int end, String value, String valueType) {
+      this.start = start;
+      this.end = end;
+      this.value = value;
       this.type = valueType;
     }
 
+    public int getStart() {
+      return start;
+    }
+
+    public int getEnd() {
+      return end;
+    }
+
+    public String getValue() {
+      return value;
+    }
+
+    public String getType() {
+      return type;
+    }
+
     @Override public int hashCode() {
       return this.type.hashCode()
           + this.value.hashCode()
@@ -278,7 +637,300 @@ public class Tweets {
     }
   }
 
-  private static class Patterns {
+  /**
+   * Receives the entities found by {@link Tweets#extractAll(CharSequence, EntityVisitor)}. Offsets
+   * follow {@link Index}: mentions, hashtags and replies start at their leading @ or # sign, while
+   * the end offsets are exclusive.
+   */
+  public interface EntityVisitor {
+    int MENTION = 0;
+    int HASHTAG = 1;
+    int URL     = 2;
+    int REPLY   = 3;
+
+    /**
+     * @param type one of {@link #MENTION}, {@link #HASHTAG}, {@link #URL} or {@link #REPLY}.
+     * @param start index of the first char of the entity.
+     * @param end index after the last char of the entity.
+     */
+    void visit(int type, int start, int end);
+  }
+
+  /**
+   * A reusable {@link EntityVisitor} that packs each entity into an int array as a
+   * (type, start, end, byte start, byte end) tuple. {@link #clear() Clearing} it keeps its
+   * storage, so a long-running collector can extract entities from every tweet without creating
+   * garbage. Byte offsets are only known when the entities were extracted from UTF-8 bytes; they
+   * are -1 otherwise.
+   */
+  public static class EntityBuffer implements EntityVisitor {
+    private static final int STRIDE = 5;
+
+    private int[] entries;
+    private int   size;
+    Utf8Text      source;
+
+    public EntityBuffer() {
+      this(16);
+    }
+
+    public EntityBuffer(int capacity) {
+      this.entries = new int[Math.max(1, capacity) * STRIDE];
+      this.size    = 0;
+    }
+
+    @Override public void visit(int type, int start, int end) {
+      if ((size + 1) * STRIDE > entries.length) {
+        entries = Arrays.copyOf(entries, entries.length * 2);
+      }
+
+      final int offset = size * STRIDE;
+      entries[offset]     = type;
+      entries[offset + 1] = start;
+      entries[offset + 2] = end;
+      entries[offset + 3] = source == null ? -1 : source.byteOffset(start);
+      entries[offset + 4] = source == null ? -1 : source.byteOffset(end);
+      size++;
+    }
+
+    /**
+     * forgets all entities, but keeps the storage for the next tweet.
+     */
+    public void clear() {
+      size = 0;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public boolean isEmpty() {
+      return size == 0;
+    }
+
+    public int type(int entity) {
+      return entries[checkEntity(entity) * STRIDE];
+    }
+
+    public int start(int entity) {
+      return entries[checkEntity(entity) * STRIDE + 1];
+    }
+
+    public int end(int entity) {
+      return entries[checkEntity(entity) * STRIDE + 2];
+    }
+
+    /**
+     * @return offset of the first byte of the entity in the UTF-8 slice it was extracted from,
+     *    or -1 if it was not extracted from bytes.
+     */
+    public int byteStart(int entity) {
+      return entries[checkEntity(entity) * STRIDE + 3];
+    }
+
+    /**
+     * @return offset after the last byte of the entity in the UTF-8 slice it was extracted from,
+     *    or -1 if it was not extracted from bytes.
+     */
+    public int byteEnd(int entity) {
+      return entries[checkEntity(entity) * STRIDE + 4];
+    }
+
+    /**
+     * @return index of the first char of the entity's value; i.e., past the leading @ or #
+     *    sign of mentions, hashtags and replies.
+     */
+    public int valueStart(int entity) {
+      return type(entity) == URL ? start(entity) : start(entity) + 1;
+    }
+
+    private int checkEntity(int entity) {
+      if (entity < 0 || entity >= size) {
+        throw new IndexOutOfBoundsException("entity: " + entity + ", size: " + size);
+      }
+
+      return entity;
+    }
+
+    @Override public String toString() {
+      final StringBuilder text = new StringBuilder("EntityBuffer(");
+      for (int i = 0; i < size; i++) {
+        if (i > 0) { text.append(", "); }
+        text.append(String.format("[type=%d, start=%d, end=%d, byteStart=%d, byteEnd=%d]",
+            type(i), start(i), end(i), byteStart(i), byteEnd(i)));
+      }
+
+      return text.append(")").toString();
+    }
+  }
+
+  /**
+   * extracts the entities of a slice of a batch.
+   */
+  private static class BatchChunk implements Runnable {
+    private final CharSequence[] batch;
+    private final Entities[]     results;
+    private final int            from;
+    private final int            to;
+
+    BatchChunk(CharSequence[] batch, Entities[] results, int from, int to) {
+      this.batch   = batch;
+      this.results = results;
+      this.from    = from;
+      this.to      = to;
+    }
+
+    @Override public void run() {
+      for (int i = from; i < to; i++) {
+        final CharSequence text = batch[i];
+        if (isEmpty(text)) {
+          results[i] = Entities.EMPTY;
+        } else {
+          final EntitiesBuilder builder = new EntitiesBuilder(text);
+          scan(text, builder);
+          results[i] = builder.get();
+        }
+      }
+    }
+  }
+
+  /**
+   * Lazy-constructed pool for batch extractions, made of daemon threads so it never keeps
+   * the collector alive.
+   */
+  static class BatchExecutor {
+    static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(),
+        new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable,
+                "tweets-extractor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+  }
+
+  /**
+   * collects the entities reported by the scanner into an {@link Entities}.
+   */
+  private static class EntitiesBuilder implements EntityVisitor, Supplier<Entities> {
+    private final CharSequence text;
+    private final List<Index>  mentions = new ArrayList<Index>();
+    private final List<Index>  hashtags = new ArrayList<Index>();
+    private final List<Index>  urls     = new ArrayList<Index>();
+    private String             replyScreenname;
+
+    EntitiesBuilder(CharSequence text) {
+      this.text = text;
+    }
+
+    @Override public void visit(int type, int start, int end) {
+      switch (type) {
+        case MENTION:
+          mentions.add(new Index(start, end, text.subSequence(start + 1, end).toString(), "mention"));
+          break;
+        case HASHTAG:
+          hashtags.add(new Index(start, end, text.subSequence(start + 1, end).toString(), "hashtag"));
+          break;
+        case URL:
+          urls.add(new Index(start, end, text.subSequence(start, end).toString(), "url"));
+          break;
+        case REPLY:
+          replyScreenname = text.subSequence(start + 1, end).toString();
+          break;
+        default:
+          throw new IllegalArgumentException("unknown entity type: " + type);
+      }
+    }
+
+    @Override public Entities get() {
+      return new Entities(mentions, hashtags, urls, replyScreenname);
+    }
+  }
+
+  /**
+   * Entities found in a tweet by {@link Tweets#extractAll(CharSequence)}.
+   */
+  public static class Entities {
+    private static final Entities EMPTY = new Entities(EMPTY_INDEX, EMPTY_INDEX, EMPTY_INDEX,
+        EMPTY_STR);
+
+    private final List<Index> mentions;
+    private final List<Index> hashtags;
+    private final List<Index> urls;
+    private final String      replyScreenname;
+
+    Entities(List<Index> mentions, List<Index> hashtags, List<Index> urls,
+        String replyScreenname) {
+      this.mentions        = Collections.unmodifiableList(mentions);
+      this.hashtags        = Collections.unmodifiableList(hashtags);
+      this.urls            = Collections.unmodifiableList(urls);
+      this.replyScreenname = replyScreenname;
+    }
+
+    /**
+     * @return usernames referenced (without the leading @ sign).
+     */
+    public List<String> getMentionedScreennames() {
+      return values(mentions);
+    }
+
+    public List<Index> getMentionedScreennamesWithIndices() {
+      return mentions;
+    }
+
+    /**
+     * @return hashtags referenced (without the leading # sign).
+     */
+    public List<String> getHashtags() {
+      return values(hashtags);
+    }
+
+    public List<Index> getHashtagsWithIndices() {
+      return hashtags;
+    }
+
+    /**
+     * @return URLs referenced.
+     */
+    public List<String> getURLs() {
+      return values(urls);
+    }
+
+    public List<Index> getURLsWithIndices() {
+      return urls;
+    }
+
+    /**
+     * @return username referenced at the beginning of the tweet, if any (without the leading @
+     *    sign). Returns null if this is not a reply.
+     */
+    public String getReplyScreenname() {
+      return replyScreenname;
+    }
+
+    private static List<String> values(List<Index> indices) {
+      if (indices.isEmpty()) { return EMPTY_LIST; }
+      final List<String> values = new ArrayList<String>(indices.size());
+      for (Index each : indices) {
+        values.add(each.getValue());
+      }
+
+      return Collections.unmodifiableList(values);
+    }
+
+    @Override public String toString() {
+      return String.format(
+          "Entities(mentions=%s, hashtags=%s, urls=%s, reply=%s)",
+          mentions, hashtags, urls, replyScreenname
+      );
+    }
+  }
+
+  static class Patterns {
     private static final String AT_SIGNS_CHARS = "@\uFF20";
     private static final String LATIN_ACCENTS_CHARS
         = "\\u00c0-\\u00d6\\u00d8-\\u00f6\\u00f8-\\u00ff";
@@ -355,6 +1007,10 @@ public class Tweets {
             ")" +
             ")";
 
+    /**
+     * Kept as the reference for {@link URLScanner}, which is what {@link Tweets} uses to find
+     * URLs.
+     */
     public static final Pattern VALID_URL = Pattern
         .compile(VALID_URL_PATTERN_STRING, Pattern.CASE_INSENSITIVE);
     public static final int VALID_URL_GROUP_ALL = 1;
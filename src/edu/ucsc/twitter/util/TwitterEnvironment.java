@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
+import twitter4j.AsyncTwitterFactory;
 import twitter4j.Twitter;
 import twitter4j.TwitterFactory;
 
@@ -54,6 +55,14 @@ public class TwitterEnvironment extends Environment {
     getAbstractConfiguration().setProperty(TwitterEnvironmentProperties.RANDOM_SAMPLE_ARITY, String.valueOf(val));
   }
 
+  /**
+   * @return {@link TwitterEnvironmentProperties#RANDOM_SAMPLE_ARITY}
+   */
+  public int getRandomSampleArity(){
+    return Integer.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.RANDOM_SAMPLE_ARITY)));
+  }
+
   public void changeMaxNumberOfTweetsPerFile(int val) {
     getAbstractConfiguration().setProperty(TwitterEnvironmentProperties.MAX_NUMBER_TWEETS_PER_FILE, String.valueOf(val));
   }
@@ -81,14 +90,46 @@ public class TwitterEnvironment extends Environment {
 
       {
         setProperty(TwitterEnvironmentProperties.KEYWORDS,"config/keywords.cfg");
+        setProperty(TwitterEnvironmentProperties.IRRELEVANT_KEYWORDS,"config/irrelevant.cfg");
         setProperty(TwitterEnvironmentProperties.TWITTER_SCREENNAME, "none");
         setProperty(TwitterEnvironmentProperties.TWITTER_PASSWORD, "none");
         setProperty(TwitterEnvironmentProperties.OUTPUT_FOLDERNAME,"output/");
         setProperty(TwitterEnvironmentProperties.MAX_NUMBER_TWEETS_PER_FILE, String.valueOf(40));
         setProperty(TwitterEnvironmentProperties.RANDOM_SAMPLE_ARITY, String.valueOf(3));
         setProperty(TwitterEnvironmentProperties.MAX_NUMBER_TWEETS, String.valueOf(300));
+        setProperty(TwitterEnvironmentProperties.MAX_CONCURRENT_PAGES, String.valueOf(3));
+        setProperty(TwitterEnvironmentProperties.ASYNC_SEARCH, String.valueOf(false));
+        setProperty(TwitterEnvironmentProperties.STREAMING, String.valueOf(false));
+        setProperty(TwitterEnvironmentProperties.USER_CACHE_CAPACITY, String.valueOf(10000));
+        setProperty(TwitterEnvironmentProperties.USER_CACHE_TTL, String.valueOf(24 * 60));
+        setProperty(TwitterEnvironmentProperties.USER_CACHE_NEGATIVE_TTL, String.valueOf(60));
+        setProperty(TwitterEnvironmentProperties.USER_CACHE_FILE, "");
+        setProperty(TwitterEnvironmentProperties.SEARCH_CHECKPOINTS_FILE, "");
+        setProperty(TwitterEnvironmentProperties.SEEN_TWEETS_FILE, "");
+        setProperty(TwitterEnvironmentProperties.SEEN_TWEETS_BLOOM, String.valueOf(false));
+        setProperty(TwitterEnvironmentProperties.SEEN_TWEETS_EXPECTED, String.valueOf(10000000));
+        setProperty(TwitterEnvironmentProperties.SEEN_TWEETS_FALSE_POSITIVE, String.valueOf(0.001));
+        setProperty(TwitterEnvironmentProperties.SEEN_TWEETS_MAX, String.valueOf(2000000));
+        setProperty(TwitterEnvironmentProperties.SEARCH_PERIOD, String.valueOf(3000));
+        setProperty(TwitterEnvironmentProperties.SEARCH_RECORD_FILE, "");
+        setProperty(TwitterEnvironmentProperties.SEARCH_REPLAY_FILE, "");
+        setProperty(TwitterEnvironmentProperties.SEARCH_REPLAY_SPEED, String.valueOf(1.0));
+        setProperty(TwitterEnvironmentProperties.SEARCH_RATE_LIMIT, String.valueOf(350));
+        setProperty(TwitterEnvironmentProperties.REST_RATE_LIMIT, String.valueOf(150));
+        setProperty(TwitterEnvironmentProperties.RATE_LIMIT_BURST, String.valueOf(3));
+        setProperty(TwitterEnvironmentProperties.RETRY_MAX_ATTEMPTS, String.valueOf(3));
+        setProperty(TwitterEnvironmentProperties.RETRY_BASE_DELAY, String.valueOf(250));
+        setProperty(TwitterEnvironmentProperties.RETRY_MAX_DELAY, String.valueOf(4000));
+        setProperty(TwitterEnvironmentProperties.RETRY_DEADLINE, String.valueOf(10000));
+        setProperty(TwitterEnvironmentProperties.RETRY_HEDGE_PERCENTILE, String.valueOf(0));
         setProperty(TwitterEnvironmentProperties.RETRY_THRESHOLD, String.valueOf(900000));
         setProperty(TwitterEnvironmentProperties.FAILED_CALL_THRESHOLD, String.valueOf(1));
+        setProperty(TwitterEnvironmentProperties.WINDOW_SIZE, String.valueOf(50));
+        setProperty(TwitterEnvironmentProperties.MINIMUM_CALLS, String.valueOf(10));
+        setProperty(TwitterEnvironmentProperties.FAILURE_RATE_THRESHOLD, String.valueOf(50));
+        setProperty(TwitterEnvironmentProperties.SLOW_CALL_RATE_THRESHOLD, String.valueOf(80));
+        setProperty(TwitterEnvironmentProperties.SLOW_CALL_DURATION, String.valueOf(10000));
+        setProperty(TwitterEnvironmentProperties.TRIAL_CALLS, String.valueOf(3));
         setProperty(TwitterEnvironmentProperties.CIRCUIT_BREAKER_DEBUG, String.valueOf(false));
       }
     };
@@ -110,6 +151,14 @@ public class TwitterEnvironment extends Environment {
         TwitterEnvironmentProperties.KEYWORDS));
   }
 
+  /**
+   * @return {@link TwitterEnvironmentProperties#IRRELEVANT_KEYWORDS}
+   */
+  public String getIrrelevantKeywordsFile() {
+    return System.getProperty("user.dir") + "/" + Strings.toString(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.IRRELEVANT_KEYWORDS));
+  }
+
   /**
    * @return {@link TwitterEnvironmentProperties#MAX_NUMBER_TWEETS_PER_FILE}
    */
@@ -124,6 +173,210 @@ public class TwitterEnvironment extends Environment {
             TwitterEnvironmentProperties.MAX_NUMBER_TWEETS)));
   }
 
+  /**
+   * @return {@link TwitterEnvironmentProperties#MAX_CONCURRENT_PAGES}
+   */
+  public int getMaxConcurrentPages(){
+    return Integer.valueOf(
+        String.valueOf(getConfiguration().getProperty(
+            TwitterEnvironmentProperties.MAX_CONCURRENT_PAGES)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#ASYNC_SEARCH}
+   */
+  public boolean isAsyncSearchEnabled(){
+    return Boolean.valueOf(Strings.toString(
+        getConfiguration().getProperty(TwitterEnvironmentProperties.ASYNC_SEARCH)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#STREAMING}
+   */
+  public boolean isStreamingEnabled(){
+    return Boolean.valueOf(Strings.toString(
+        getConfiguration().getProperty(TwitterEnvironmentProperties.STREAMING)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#USER_CACHE_CAPACITY}
+   */
+  public int getUserCacheCapacity(){
+    return Integer.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.USER_CACHE_CAPACITY)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#USER_CACHE_TTL}, in minutes.
+   */
+  public long getUserCacheTtl(){
+    return Long.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.USER_CACHE_TTL)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#USER_CACHE_NEGATIVE_TTL}, in minutes.
+   */
+  public long getUserCacheNegativeTtl(){
+    return Long.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.USER_CACHE_NEGATIVE_TTL)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#USER_CACHE_FILE}; or null if there is none.
+   */
+  public String getUserCacheFile(){
+    return getOptionalFile(TwitterEnvironmentProperties.USER_CACHE_FILE);
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#SEARCH_CHECKPOINTS_FILE}; or null if there is
+   *    none.
+   */
+  public String getSearchCheckpointsFile(){
+    return getOptionalFile(TwitterEnvironmentProperties.SEARCH_CHECKPOINTS_FILE);
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#SEEN_TWEETS_FILE}; or null if there is none.
+   */
+  public String getSeenTweetsFile(){
+    return getOptionalFile(TwitterEnvironmentProperties.SEEN_TWEETS_FILE);
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#SEEN_TWEETS_BLOOM}
+   */
+  public boolean isSeenTweetsBloomFilterEnabled(){
+    return Boolean.valueOf(Strings.toString(
+        getConfiguration().getProperty(TwitterEnvironmentProperties.SEEN_TWEETS_BLOOM)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#SEEN_TWEETS_EXPECTED}
+   */
+  public long getSeenTweetsExpected(){
+    return Long.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.SEEN_TWEETS_EXPECTED)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#SEEN_TWEETS_MAX}
+   */
+  public int getSeenTweetsMax(){
+    return Integer.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.SEEN_TWEETS_MAX)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#SEEN_TWEETS_FALSE_POSITIVE}
+   */
+  public double getSeenTweetsFalsePositiveRate(){
+    return Double.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.SEEN_TWEETS_FALSE_POSITIVE)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#SEARCH_PERIOD}, in milliseconds; at least 1.
+   */
+  public long getSearchPeriod(){
+    return Math.max(1L, Long.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.SEARCH_PERIOD))));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#SEARCH_RECORD_FILE}; or null if there is none.
+   */
+  public String getSearchRecordFile(){
+    return getOptionalFile(TwitterEnvironmentProperties.SEARCH_RECORD_FILE);
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#SEARCH_REPLAY_FILE}; or null if there is none.
+   */
+  public String getSearchReplayFile(){
+    return getOptionalFile(TwitterEnvironmentProperties.SEARCH_REPLAY_FILE);
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#SEARCH_REPLAY_SPEED}
+   */
+  public double getSearchReplaySpeed(){
+    return Double.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.SEARCH_REPLAY_SPEED)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#SEARCH_RATE_LIMIT}
+   */
+  public int getSearchRateLimit(){
+    return Integer.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.SEARCH_RATE_LIMIT)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#REST_RATE_LIMIT}
+   */
+  public int getRestRateLimit(){
+    return Integer.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.REST_RATE_LIMIT)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#RATE_LIMIT_BURST}
+   */
+  public int getRateLimitBurst(){
+    return Integer.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.RATE_LIMIT_BURST)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#RETRY_MAX_ATTEMPTS}
+   */
+  public int getRetryMaxAttempts(){
+    return Integer.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.RETRY_MAX_ATTEMPTS)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#RETRY_BASE_DELAY}
+   */
+  public long getRetryBaseDelay(){
+    return Long.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.RETRY_BASE_DELAY)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#RETRY_MAX_DELAY}
+   */
+  public long getRetryMaxDelay(){
+    return Long.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.RETRY_MAX_DELAY)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#RETRY_DEADLINE}
+   */
+  public long getRetryDeadline(){
+    return Long.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.RETRY_DEADLINE)));
+  }
+
+  /**
+   * @return {@link TwitterEnvironmentProperties#RETRY_HEDGE_PERCENTILE}
+   */
+  public double getRetryHedgePercentile(){
+    return Double.valueOf(String.valueOf(getConfiguration().getProperty(
+        TwitterEnvironmentProperties.RETRY_HEDGE_PERCENTILE)));
+  }
+
+  private String getOptionalFile(String property){
+    final Object filename = getConfiguration().getProperty(property);
+    return filename == null || Strings.isEmpty(Strings.toString(filename))
+        ? null
+        : System.getProperty("user.dir") + "/" + Strings.toString(filename);
+  }
+
   public long getCircuitBreakerRetryThreshold(){
     return Long.valueOf(
         String.valueOf(getConfiguration().getProperty(
@@ -136,6 +389,130 @@ public class TwitterEnvironment extends Environment {
             TwitterEnvironmentProperties.FAILED_CALL_THRESHOLD)));
   }
 
+  /**
+   * @param endpoint endpoint guarded by the breaker; e.g., "search".
+   * @return the endpoint's {@link TwitterEnvironmentProperties#RETRY_THRESHOLD}, or the one
+   *    shared by all endpoints if it has none.
+   */
+  public long getCircuitBreakerRetryThreshold(String endpoint){
+    return Long.valueOf(String.valueOf(getCircuitBreakerProperty(endpoint,
+        TwitterEnvironmentProperties.RETRY_THRESHOLD)));
+  }
+
+  /**
+   * @param endpoint endpoint guarded by the breaker; e.g., "search".
+   * @return the endpoint's {@link TwitterEnvironmentProperties#FAILED_CALL_THRESHOLD}, or the
+   *    one shared by all endpoints if it has none.
+   */
+  public long getCircuitBreakerFailedCallThreshold(String endpoint){
+    return Long.valueOf(String.valueOf(getCircuitBreakerProperty(endpoint,
+        TwitterEnvironmentProperties.FAILED_CALL_THRESHOLD)));
+  }
+
+  public int getCircuitBreakerWindowSize(){
+    return Integer.valueOf(
+        String.valueOf(getConfiguration().getProperty(
+            TwitterEnvironmentProperties.WINDOW_SIZE)));
+  }
+
+  public int getCircuitBreakerMinimumCalls(){
+    return Integer.valueOf(
+        String.valueOf(getConfiguration().getProperty(
+            TwitterEnvironmentProperties.MINIMUM_CALLS)));
+  }
+
+  public double getCircuitBreakerFailureRateThreshold(){
+    return Double.valueOf(
+        String.valueOf(getConfiguration().getProperty(
+            TwitterEnvironmentProperties.FAILURE_RATE_THRESHOLD)));
+  }
+
+  public double getCircuitBreakerSlowCallRateThreshold(){
+    return Double.valueOf(
+        String.valueOf(getConfiguration().getProperty(
+            TwitterEnvironmentProperties.SLOW_CALL_RATE_THRESHOLD)));
+  }
+
+  public long getCircuitBreakerSlowCallDuration(){
+    return Long.valueOf(
+        String.valueOf(getConfiguration().getProperty(
+            TwitterEnvironmentProperties.SLOW_CALL_DURATION)));
+  }
+
+  public int getCircuitBreakerTrialCalls(){
+    return Integer.valueOf(
+        String.valueOf(getConfiguration().getProperty(
+            TwitterEnvironmentProperties.TRIAL_CALLS)));
+  }
+
+  /**
+   * @param endpoint endpoint guarded by the breaker; e.g., "search".
+   * @return the endpoint's {@link TwitterEnvironmentProperties#WINDOW_SIZE}, or the one
+   *    shared by all endpoints if it has none.
+   */
+  public int getCircuitBreakerWindowSize(String endpoint){
+    return Integer.valueOf(String.valueOf(getCircuitBreakerProperty(endpoint,
+        TwitterEnvironmentProperties.WINDOW_SIZE)));
+  }
+
+  /**
+   * @param endpoint endpoint guarded by the breaker; e.g., "search".
+   * @return the endpoint's {@link TwitterEnvironmentProperties#MINIMUM_CALLS}, or
+   *    the one shared by all endpoints if it has none.
+   */
+  public int getCircuitBreakerMinimumCalls(String endpoint){
+    return Integer.valueOf(String.valueOf(getCircuitBreakerProperty(endpoint,
+        TwitterEnvironmentProperties.MINIMUM_CALLS)));
+  }
+
+  /**
+   * @param endpoint endpoint guarded by the breaker; e.g., "search".
+   * @return the endpoint's {@link TwitterEnvironmentProperties#FAILURE_RATE_THRESHOLD}, or
+   *    the one shared by all endpoints if it has none.
+   */
+  public double getCircuitBreakerFailureRateThreshold(String endpoint){
+    return Double.valueOf(String.valueOf(getCircuitBreakerProperty(endpoint,
+        TwitterEnvironmentProperties.FAILURE_RATE_THRESHOLD)));
+  }
+
+  /**
+   * @param endpoint endpoint guarded by the breaker; e.g., "search".
+   * @return the endpoint's {@link TwitterEnvironmentProperties#SLOW_CALL_RATE_THRESHOLD}, or
+   *    the one shared by all endpoints if it has none.
+   */
+  public double getCircuitBreakerSlowCallRateThreshold(String endpoint){
+    return Double.valueOf(String.valueOf(getCircuitBreakerProperty(endpoint,
+        TwitterEnvironmentProperties.SLOW_CALL_RATE_THRESHOLD)));
+  }
+
+  /**
+   * @param endpoint endpoint guarded by the breaker; e.g., "search".
+   * @return the endpoint's {@link TwitterEnvironmentProperties#SLOW_CALL_DURATION}, or
+   *    the one shared by all endpoints if it has none.
+   */
+  public long getCircuitBreakerSlowCallDuration(String endpoint){
+    return Long.valueOf(String.valueOf(getCircuitBreakerProperty(endpoint,
+        TwitterEnvironmentProperties.SLOW_CALL_DURATION)));
+  }
+
+  /**
+   * @param endpoint endpoint guarded by the breaker; e.g., "search".
+   * @return the endpoint's {@link TwitterEnvironmentProperties#TRIAL_CALLS}, or the one
+   *    shared by all endpoints if it has none.
+   */
+  public int getCircuitBreakerTrialCalls(String endpoint){
+    return Integer.valueOf(String.valueOf(getCircuitBreakerProperty(endpoint,
+        TwitterEnvironmentProperties.TRIAL_CALLS)));
+  }
+
+  private Object getCircuitBreakerProperty(String endpoint, String property){
+    final Object value = getConfiguration().getProperty(
+        TwitterEnvironmentProperties.circuitBreakerProperty(endpoint, property));
+    return value == null || Strings.isEmpty(Strings.toString(value))
+        ? getConfiguration().getProperty(property)
+        : value;
+  }
+
   /**
    * @return {@link TwitterEnvironmentProperties#OUTPUT_FOLDERNAME}
    */
@@ -170,20 +547,68 @@ public class TwitterEnvironment extends Environment {
         getConfiguration().getProperty(TwitterEnvironmentProperties.TWITTER_SCREENNAME));
   }
   
+  /**
+   * @return the blocking client, whose API calls are paced by {@link RateLimitPacer}s so that
+   *    they are spread over each rate limit window.
+   */
   public static Twitter getTwitterService(){
-    return Installer.TWITTER;
+    return Clients.TWITTER;
+  }
+
+  /**
+   * @return the pacer of the searches made by {@link #getTwitterService()}; or null if they are
+   *    not paced, since they are played back.
+   */
+  public static RateLimitPacer getSearchPacer(){
+    return Clients.SEARCH_PACER;
+  }
+
+  /**
+   * @return the pacer of the other API calls made by {@link #getTwitterService()}; or null if
+   *    they are not paced, since they are played back.
+   */
+  public static RateLimitPacer getRestPacer(){
+    return Clients.REST_PACER;
+  }
+
+  /**
+   * @return the factory of the non-blocking clients, which share a single pool of
+   *    dispatcher threads.
+   */
+  public static AsyncTwitterFactory getAsyncTwitterFactory(){
+    return Clients.ASYNC_TWITTER;
   }
 
   public static void preprocessKeywords(Set<String> out) throws IOException {
-    final TwitterEnvironment env = TwitterEnvironment
-        .getInstance();
-    final IterableFileReader keywords = new IterableFileReader(env.getKeywordsFile());
+    final List<String> keywords = readKeywords();
+    out.addAll(randomSampleUsingFloydsAlgorithm(keywords,
+        Math.min(getInstance().getRandomSampleArity(), keywords.size())));
+  }
+
+  /**
+   * @return all the keywords in {@link TwitterEnvironmentProperties#KEYWORDS}.
+   * @throws IOException if the keywords file cannot be read.
+   */
+  public static List<String> readKeywords() throws IOException {
+    return readKeywords(getInstance().getKeywordsFile());
+  }
+
+  /**
+   * @return all the phrases in {@link TwitterEnvironmentProperties#IRRELEVANT_KEYWORDS}.
+   * @throws IOException if the irrelevant keywords file cannot be read.
+   */
+  public static List<String> readIrrelevantKeywords() throws IOException {
+    return readKeywords(getInstance().getIrrelevantKeywordsFile());
+  }
+
+  private static List<String> readKeywords(String filename) throws IOException {
+    final IterableFileReader keywords = new IterableFileReader(filename);
     final List<String> keywordsStore = new ArrayList<String>();
     for (String each : keywords) {
       keywordsStore.add(each);
     }
 
-    out.addAll(randomSampleUsingFloydsAlgorithm(keywordsStore, 3));
+    return keywordsStore;
   }
 
   public static <T> Set<T> randomSampleUsingFloydsAlgorithm(List<T> items, int m) {
@@ -209,18 +634,71 @@ public class TwitterEnvironment extends Environment {
    */
   static class Installer {
     static final TwitterEnvironment INSTANCE;
-    static final Twitter TWITTER;
 
     static {
       try {
         INSTANCE = new TwitterEnvironment();
-        TWITTER  = new TwitterFactory().getInstance();
       } catch (IOException e) {
         throw new IllegalStateException(e);
       }
     }
   }
 
+  /**
+   * Lazy-constructed clients, which are thread safe. They are built on first use, rather than
+   * along with the environment, so that they honor the settings changed before then.
+   */
+  static class Clients {
+    static final RateLimitPacer      SEARCH_PACER;
+    static final RateLimitPacer      REST_PACER;
+    static final Twitter             TWITTER;
+    static final AsyncTwitterFactory ASYNC_TWITTER;
+
+    static {
+      final TwitterEnvironment environment = getInstance();
+      final boolean            replayed    = environment.getSearchReplayFile() != null;
+      SEARCH_PACER  = replayed ? null : RateLimitPacer.hourly(environment.getSearchRateLimit(),
+          environment.getRateLimitBurst());
+      REST_PACER    = replayed ? null : RateLimitPacer.hourly(environment.getRestRateLimit(),
+          environment.getRateLimitBurst());
+      TWITTER       = replayed
+          ? replayed(environment)
+          : PacedTwitter.pace(recorded(environment), SEARCH_PACER, REST_PACER);
+      ASYNC_TWITTER = new AsyncTwitterFactory();
+    }
+
+    /**
+     * @return a client that plays back the API calls recorded in
+     *    {@link TwitterEnvironment#getSearchReplayFile()}. It is not paced, since the calls are
+     *    played back at the pace they were recorded, or faster.
+     */
+    private static Twitter replayed(TwitterEnvironment environment) {
+      try {
+        return ReplayingTwitter.replay(new TwitterFactory().getInstance(),
+            new File(environment.getSearchReplayFile()), environment.getSearchReplaySpeed());
+      } catch (IOException e) {
+        throw new IllegalStateException("unable to read recorded API calls", e);
+      }
+    }
+
+    /**
+     * @return a client whose API calls are recorded in
+     *    {@link TwitterEnvironment#getSearchRecordFile()}, if set. Calls are recorded as they are
+     *    made, once paced, so that they are played back at the same pace.
+     */
+    private static Twitter recorded(TwitterEnvironment environment) {
+      final Twitter twitter = new TwitterFactory().getInstance();
+      if (environment.getSearchRecordFile() == null) { return twitter; }
+
+      try {
+        return RecordingTwitter.record(twitter, new File(environment.getSearchRecordFile()));
+      } catch (IOException e) {
+        System.err.println("unable to record API calls; calling the API without recording them");
+        return twitter;
+      }
+    }
+  }
+
   public static void main(String[] args) {
     final String base = getInstance().getOutputFoldername();
     System.out.println(base);
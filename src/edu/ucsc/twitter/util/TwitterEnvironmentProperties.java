@@ -55,6 +55,11 @@ public final class TwitterEnvironmentProperties extends EnvironmentProperties {
    */
   public static final String KEYWORDS                   = "file.keywords";
 
+  /**
+   * Name of the file containing the phrases that make a tweet irrelevant.
+   */
+  public static final String IRRELEVANT_KEYWORDS        = "file.irrelevant.keywords";
+
   /**
    * Folder for storing the results of queries.
    */
@@ -70,9 +75,191 @@ public final class TwitterEnvironmentProperties extends EnvironmentProperties {
    */
   public static final String MAX_NUMBER_TWEETS          = "max.tweets.extract";
 
+  /**
+   * Max number of pages of the same search to be requested at once.
+   */
+  public static final String MAX_CONCURRENT_PAGES       = "max.concurrent.pages";
+
+  /**
+   * Whether searches go through the non-blocking (callback based) twitter client.
+   */
+  public static final String ASYNC_SEARCH               = "search.async";
+
+  /**
+   * Whether tweets are collected from a filter stream, rather than by searching periodically.
+   */
+  public static final String STREAMING                  = "search.streaming";
+
+  /**
+   * Max number of users whose first name is remembered.
+   */
+  public static final String USER_CACHE_CAPACITY        = "user.cache.capacity";
+
+  /**
+   * Minutes a user's first name is remembered.
+   */
+  public static final String USER_CACHE_TTL             = "user.cache.ttl.minutes";
+
+  /**
+   * Minutes a user with no profile is remembered.
+   */
+  public static final String USER_CACHE_NEGATIVE_TTL    = "user.cache.negative.ttl.minutes";
+
+  /**
+   * Name of the file where remembered first names are kept across restarts; none if empty.
+   */
+  public static final String USER_CACHE_FILE            = "file.user.cache";
+
+  /**
+   * Name of the file where the highest tweet id seen by each search is kept across restarts;
+   * none if empty.
+   */
+  public static final String SEARCH_CHECKPOINTS_FILE    = "file.search.checkpoints";
+
+  /**
+   * Name of the file where the ids of collected tweets are kept across restarts; none if empty.
+   */
+  public static final String SEEN_TWEETS_FILE           = "file.seen.tweets";
+
+  /**
+   * Whether the ids of collected tweets are kept in a bloom filter, rather than in full.
+   */
+  public static final String SEEN_TWEETS_BLOOM          = "seen.tweets.bloom";
+
+  /**
+   * Number of collected tweets the bloom filter is sized for.
+   */
+  public static final String SEEN_TWEETS_EXPECTED       = "seen.tweets.expected";
+
+  /**
+   * Number of newest collected tweet ids kept in memory and in the seen tweets file; up to
+   * twice as many are held before they are compacted.
+   */
+  public static final String SEEN_TWEETS_MAX            = "seen.tweets.max";
+
+  /**
+   * Rate of new tweets the bloom filter mistakes for collected ones.
+   */
+  public static final String SEEN_TWEETS_FALSE_POSITIVE = "seen.tweets.false.positive.rate";
+
+  /**
+   * Milliseconds between consecutive searches.
+   */
+  public static final String SEARCH_PERIOD              = "search.period.millis";
+
+  /**
+   * Name of the file where the responses of the Twitter API are recorded, for later replay;
+   * none if empty.
+   */
+  public static final String SEARCH_RECORD_FILE         = "file.search.record";
+
+  /**
+   * Name of the file whose recorded responses of the Twitter API are played back, instead of
+   * calling Twitter; none if empty.
+   */
+  public static final String SEARCH_REPLAY_FILE         = "file.search.replay";
+
+  /**
+   * How many times faster than real speed recorded responses are played back; as fast as
+   * possible if 0.
+   */
+  public static final String SEARCH_REPLAY_SPEED        = "search.replay.speed";
+
+  /**
+   * Number of searches allowed per hour, until the API says otherwise.
+   */
+  public static final String SEARCH_RATE_LIMIT          = "rate.limit.search.hourly";
+
+  /**
+   * Number of REST calls (e.g., user lookups) allowed per hour, until the API says otherwise.
+   */
+  public static final String REST_RATE_LIMIT            = "rate.limit.rest.hourly";
+
+  /**
+   * Max number of calls that can be made back to back, before calls are spread over the hour.
+   */
+  public static final String RATE_LIMIT_BURST           = "rate.limit.burst";
+
+  /**
+   * Max number of attempts of a call to Twitter that failed for a transient reason.
+   */
+  public static final String RETRY_MAX_ATTEMPTS         = "retry.max.attempts";
+
+  /**
+   * Max wait before the first retry of a call, in milliseconds; doubled for each later retry.
+   */
+  public static final String RETRY_BASE_DELAY           = "retry.base.delay.millis";
+
+  /**
+   * Max wait before any retry of a call, in milliseconds.
+   */
+  public static final String RETRY_MAX_DELAY            = "retry.max.delay.millis";
+
+  /**
+   * Time after the first attempt of a call past which it is no longer retried, in milliseconds.
+   */
+  public static final String RETRY_DEADLINE             = "retry.deadline.millis";
+
+  /**
+   * Percentile of the latest search latencies after which a search is made again, and the
+   * first one to return wins; searches are not hedged if 0.
+   */
+  public static final String RETRY_HEDGE_PERCENTILE     = "retry.hedge.percentile";
+
+  /**
+   * Time an open circuit breaker blocks calls for, in nanoseconds. Each endpoint can have its
+   * own; e.g., {@code circuit.breaker.search.retry.threshold}.
+   */
   public static final String RETRY_THRESHOLD            = "circuit.breaker.retry.threshold";
 
+  /**
+   * Number of failed calls after which a circuit breaker opens. Each endpoint can have its own;
+   * e.g., {@code circuit.breaker.lookup.failed.call.threshold}.
+   */
   public static final String FAILED_CALL_THRESHOLD      = "circuit.breaker.failed.call.threshold";
 
+  /**
+   * Number of latest calls a circuit breaker computes its failure and slow call rates over.
+   * Each endpoint can have its own, as can the settings below.
+   */
+  public static final String WINDOW_SIZE                = "circuit.breaker.window.size";
+
+  /**
+   * Number of calls a circuit breaker must have seen before it opens on its rates.
+   */
+  public static final String MINIMUM_CALLS              = "circuit.breaker.minimum.calls";
+
+  /**
+   * Share of failed calls, in percent, at which a circuit breaker opens.
+   */
+  public static final String FAILURE_RATE_THRESHOLD     = "circuit.breaker.failure.rate.threshold";
+
+  /**
+   * Share of slow calls, in percent, at which a circuit breaker opens.
+   */
+  public static final String SLOW_CALL_RATE_THRESHOLD   = "circuit.breaker.slow.call.rate.threshold";
+
+  /**
+   * Time, in milliseconds, after which a call is slow.
+   */
+  public static final String SLOW_CALL_DURATION         = "circuit.breaker.slow.call.millis";
+
+  /**
+   * Number of calls an open circuit breaker lets through, once it has blocked calls for long
+   * enough, to tell whether it can close.
+   */
+  public static final String TRIAL_CALLS                = "circuit.breaker.trial.calls";
+
   public static final String CIRCUIT_BREAKER_DEBUG      = "circuit.breaker.debug";
+
+  private static final String CIRCUIT_BREAKER           = "circuit.breaker.";
+
+  /**
+   * @param endpoint endpoint guarded by the breaker; e.g., "search".
+   * @param property one of the circuit breaker settings; e.g., {@link #RETRY_THRESHOLD}.
+   * @return the name of the endpoint's own setting.
+   */
+  public static String circuitBreakerProperty(String endpoint, String property) {
+    return CIRCUIT_BREAKER + endpoint + "." + property.substring(CIRCUIT_BREAKER.length());
+  }
 }
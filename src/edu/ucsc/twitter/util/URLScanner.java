@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.util.regex.Matcher;
+
+/**
+ * A hand-written scanner that finds the same URLs (and the same groups) as
+ * {@link Tweets.Patterns#VALID_URL}, without backtracking. It is used like a {@link Matcher}:
+ * {@link #reset(CharSequence) reset} it with some text, and then call {@link #find()} until it
+ * returns {@code false}. A scanner is not thread safe, but it can be reused for as many tweets as
+ * needed.
+ *
+ * <p>ASCII chars are classified with a lookup table; only non-ASCII chars pay for a code point
+ * lookup.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class URLScanner {
+  private static final int NONE = -1;
+
+  // char classes of ASCII chars
+  private static final int PUNCT_OR_SPACE = 1;      // [\p{Punct}\s]
+  private static final int PATH           = 1 << 1; // URL_VALID_GENERAL_PATH_CHARS
+  private static final int QUERY          = 1 << 2; // URL_VALID_URL_QUERY_CHARS
+  private static final int QUERY_ENDING   = 1 << 3; // URL_VALID_URL_QUERY_ENDING_CHARS
+  private static final int BOUNDARY       = 1 << 4; // URL_VALID_PRECEEDING_CHARS' excluded chars
+  private static final int LETTER         = 1 << 5; // [a-z], case insensitive
+  private static final int DIGIT          = 1 << 6; // [0-9]
+
+  private static final int[] ASCII = new int[128];
+  static {
+    mark("!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~ \t\n\u000B\f\r", PUNCT_OR_SPACE);
+    mark("!*';:=+$/%#[]-_,~", PATH);
+    mark("!*'();:&=+$/%#[]-_.,~", QUERY);
+    mark("_&=#/", QUERY_ENDING);
+    mark("-/\"':!=_@", BOUNDARY);
+    for (char c = 'a'; c <= 'z'; c++) {
+      mark(String.valueOf(c) + Character.toUpperCase(c), PATH | QUERY | QUERY_ENDING | BOUNDARY
+          | LETTER);
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      mark(String.valueOf(c), PATH | QUERY | QUERY_ENDING | BOUNDARY | DIGIT);
+    }
+  }
+
+  private CharSequence text;
+  private int          from;
+
+  private int start;
+  private int protocolEnd;
+  private int domainEnd;
+  private int pathEnd;
+  private int end;
+
+  public URLScanner() {
+    this("");
+  }
+
+  public URLScanner(CharSequence text) {
+    reset(text);
+  }
+
+  private static void mark(String chars, int charClass) {
+    for (int i = 0; i < chars.length(); i++) {
+      ASCII[chars.charAt(i)] |= charClass;
+    }
+  }
+
+  private static boolean is(char c, int charClass) {
+    return c < 128 && (ASCII[c] & charClass) != 0;
+  }
+
+  /**
+   * resets this scanner, so it can scan the given text.
+   *
+   * @param text text to be scanned.
+   * @return this scanner.
+   */
+  public URLScanner reset(CharSequence text) {
+    this.text = text;
+    this.from = 0;
+    this.start = NONE;
+    this.end = NONE;
+    return this;
+  }
+
+  /**
+   * finds the next URL in the text, with the same rules as {@link Matcher#find()} over
+   * {@link Tweets.Patterns#VALID_URL}.
+   *
+   * @return {@code true} if a URL was found. {@code false} otherwise.
+   */
+  public boolean find() {
+    final int length = text.length();
+    for (int i = from; i < length; i++) {
+      final char c = text.charAt(i);
+      if ((c == 'h' || c == 'H')
+          && (i == 0 || (i > from && isPreceding(text.charAt(i - 1))))
+          && lookingAt(i)) {
+        from = end;
+        return true;
+      }
+    }
+
+    from = length;
+    return false;
+  }
+
+  /**
+   * matches a URL starting exactly at the given index, ignoring whatever precedes it.
+   *
+   * @param index where the URL should start.
+   * @return {@code true} if there is a URL at the index. {@code false} otherwise.
+   */
+  public boolean lookingAt(int index) {
+    start = NONE;
+    end   = NONE;
+
+    final int protocol = scanProtocol(index);
+    if (protocol == NONE) { return false; }
+
+    final int domain = scanDomain(protocol);
+    if (domain == NONE) { return false; }
+
+    int cursor = domain;
+    int path   = NONE;
+    if (cursor < text.length() && text.charAt(cursor) == '/') {
+      path   = scanPath(cursor + 1);
+      cursor = path;
+    }
+
+    final int query = scanQueryString(cursor);
+
+    start       = index;
+    protocolEnd = protocol;
+    domainEnd   = domain;
+    pathEnd     = path;
+    end         = query == NONE ? cursor : query;
+    return true;
+  }
+
+  /**
+   * @return the start index of the last URL found.
+   */
+  public int start() {
+    checkMatch();
+    return start;
+  }
+
+  /**
+   * @return the end index (exclusive) of the last URL found.
+   */
+  public int end() {
+    checkMatch();
+    return end;
+  }
+
+  /**
+   * @return the last URL found.
+   */
+  public String group() {
+    checkMatch();
+    return text.subSequence(start, end).toString();
+  }
+
+  /**
+   * @return the protocol of the last URL found.
+   */
+  public String protocol() {
+    checkMatch();
+    return text.subSequence(start, protocolEnd).toString();
+  }
+
+  /**
+   * @return the domain(s) and optional port number of the last URL found.
+   */
+  public String domain() {
+    checkMatch();
+    return text.subSequence(protocolEnd, domainEnd).toString();
+  }
+
+  /**
+   * @return the path and anchor of the last URL found, null if it had none.
+   */
+  public String path() {
+    checkMatch();
+    return pathEnd == NONE ? null : text.subSequence(domainEnd, pathEnd).toString();
+  }
+
+  /**
+   * @return the query string of the last URL found, null if it had none.
+   */
+  public String queryString() {
+    checkMatch();
+    final int queryStart = pathEnd == NONE ? domainEnd : pathEnd;
+    return queryStart == end ? null : text.subSequence(queryStart, end).toString();
+  }
+
+  private void checkMatch() {
+    if (start == NONE) { throw new IllegalStateException("No URL available"); }
+  }
+
+  private static boolean isPreceding(char c) {
+    return c == ':' || !(is(c, BOUNDARY) || c == '\uFF20');
+  }
+
+  /**
+   * https?://
+   */
+  private int scanProtocol(int index) {
+    final int length = text.length();
+    if (index + 7 > length
+        || !isIgnoreCase(text.charAt(index), 'h')
+        || !isIgnoreCase(text.charAt(index + 1), 't')
+        || !isIgnoreCase(text.charAt(index + 2), 't')
+        || !isIgnoreCase(text.charAt(index + 3), 'p')) {
+      return NONE;
+    }
+
+    int cursor = index + 4;
+    if (isIgnoreCase(text.charAt(cursor), 's')) { cursor++; }
+
+    return cursor + 3 <= length
+        && text.charAt(cursor) == ':'
+        && text.charAt(cursor + 1) == '/'
+        && text.charAt(cursor + 2) == '/'
+        ? cursor + 3 : NONE;
+  }
+
+  private static boolean isIgnoreCase(char c, char lowercase) {
+    return c == lowercase || c == Character.toUpperCase(lowercase);
+  }
+
+  /**
+   * (?:[^\p{Punct}\s][\.-](?=[^\p{Punct}\s])|[^\p{Punct}\s]){1,}\.[a-z]{2,}(?::[0-9]+)?
+   *
+   * <p>The regex walks the whole chain of labels and then backtracks to the last dot that is
+   * followed by two or more letters, which is what this method looks for in one pass.</p>
+   */
+  private int scanDomain(int index) {
+    final int length = text.length();
+
+    int cursor  = index;
+    int lastDot = NONE;
+    int width   = wordWidth(cursor);
+    while (width > 0) {
+      cursor += width;
+      width   = wordWidth(cursor);
+      if (width == 0 && cursor < length) {
+        final char separator = text.charAt(cursor);
+        if ((separator == '.' || separator == '-') && wordWidth(cursor + 1) > 0) {
+          if (separator == '.' && isLetterAt(cursor + 1) && isLetterAt(cursor + 2)) {
+            lastDot = cursor;
+          }
+          cursor++;
+          width = wordWidth(cursor);
+        }
+      }
+    }
+
+    if (lastDot == NONE) { return NONE; }
+
+    int domain = lastDot + 1;
+    while (isLetterAt(domain)) { domain++; }
+
+    if (domain + 1 < length && text.charAt(domain) == ':' && isDigitAt(domain + 1)) {
+      domain++;
+      while (isDigitAt(domain)) { domain++; }
+    }
+
+    return domain;
+  }
+
+  /**
+   * @return the number of chars taken by the code point at the given index if it is a
+   *    [^\p{Punct}\s], 0 otherwise.
+   */
+  private int wordWidth(int index) {
+    if (index >= text.length()) { return 0; }
+
+    final char c = text.charAt(index);
+    if (c < 128) { return (ASCII[c] & PUNCT_OR_SPACE) == 0 ? 1 : 0; }
+
+    return Character.charCount(Character.codePointAt(text, index));
+  }
+
+  private boolean isLetterAt(int index) {
+    return index < text.length() && is(text.charAt(index), LETTER);
+  }
+
+  private boolean isDigitAt(int index) {
+    return index < text.length() && is(text.charAt(index), DIGIT);
+  }
+
+  private boolean isPathAt(int index) {
+    return index < text.length() && is(text.charAt(index), PATH);
+  }
+
+  /**
+   * (?:URL_BALANCE_PARENS|@URL_VALID_PATH_CHARS_WITHOUT_SLASH++/|(?:[.,]*+URL_VALID_PATH_CHARS_WITHOUT_COMMA)++)*
+   *
+   * <p>Every alternative either consumes as much as it can or nothing, so the first one that
+   * matches is the one the regex keeps.</p>
+   */
+  private int scanPath(int index) {
+    int cursor = index;
+    while (true) {
+      int next = scanBalancedParens(cursor);
+      if (next == NONE) { next = scanAtSlash(cursor); }
+      if (next == NONE) { next = scanPathChars(cursor); }
+      if (next == NONE) { return cursor; }
+      cursor = next;
+    }
+  }
+
+  private int scanBalancedParens(int index) {
+    if (index >= text.length() || text.charAt(index) != '(') { return NONE; }
+
+    int cursor = index + 1;
+    while (isPathAt(cursor)) { cursor++; }
+
+    return cursor > index + 1 && cursor < text.length() && text.charAt(cursor) == ')'
+        ? cursor + 1 : NONE;
+  }
+
+  private int scanAtSlash(int index) {
+    if (index >= text.length() || text.charAt(index) != '@') { return NONE; }
+
+    int cursor = index + 1;
+    while (isPathAt(cursor) && text.charAt(cursor) != '/') { cursor++; }
+
+    return cursor > index + 1 && cursor < text.length() && text.charAt(cursor) == '/'
+        ? cursor + 1 : NONE;
+  }
+
+  private int scanPathChars(int index) {
+    final int length = text.length();
+    int matched = NONE;
+    int cursor  = index;
+    while (true) {
+      while (cursor < length && (text.charAt(cursor) == '.' || text.charAt(cursor) == ',')) {
+        cursor++;
+      }
+
+      if (!isPathAt(cursor) || text.charAt(cursor) == ',') { return matched; }
+
+      cursor++;
+      matched = cursor;
+    }
+  }
+
+  /**
+   * (\?URL_VALID_URL_QUERY_CHARS*URL_VALID_URL_QUERY_ENDING_CHARS)?
+   */
+  private int scanQueryString(int index) {
+    final int length = text.length();
+    if (index >= length || text.charAt(index) != '?') { return NONE; }
+
+    int matched = NONE;
+    for (int cursor = index + 1; cursor < length && is(text.charAt(cursor), QUERY); cursor++) {
+      if (is(text.charAt(cursor), QUERY_ENDING)) { matched = cursor + 1; }
+    }
+
+    return matched;
+  }
+
+  @Override public String toString() {
+    return start == NONE
+        ? "URLScanner(no match)"
+        : String.format("URLScanner(start=%d, end=%d, url=%s)", start, end, group());
+  }
+}
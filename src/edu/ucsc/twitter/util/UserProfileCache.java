@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the first name of each user whose profile was looked up, since the same users post
+ * many times. The cache is bounded: entries expire after a while, and the least recently used
+ * ones are evicted once it is full. Users known to have no profile to look up are remembered
+ * too, as {@link #UNKNOWN}, but for a shorter while. Failed lookups are not remembered at all.
+ *
+ * <p>If the cache is given a file, its entries can be saved to it, and loaded back after a
+ * restart; entries keep their expiration time across restarts.</p>
+ *
+ * <p>A cache is thread safe.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class UserProfileCache {
+  /**
+   * first name of users with no profile to look up.
+   */
+  public static final String UNKNOWN = "none";
+
+  private final Map<Long, CachedName> entries;
+  private final long             ttl;
+  private final long             negativeTtl;
+  private final File             file;
+
+  private long    hits;
+  private long    misses;
+  private long    expirations;
+  private long    evictions;
+  private boolean dirty;
+
+  /**
+   * @param capacity max number of users to be remembered.
+   * @param ttl how long a first name is remembered.
+   * @param negativeTtl how long an {@link #UNKNOWN unknown} user is remembered.
+   * @param unit unit of both ttls.
+   */
+  public UserProfileCache(int capacity, long ttl, long negativeTtl, TimeUnit unit) {
+    this(capacity, ttl, negativeTtl, unit, null);
+  }
+
+  /**
+   * same as {@link #UserProfileCache(int, long, long, TimeUnit)}, but the entries can be saved
+   * to, and loaded from, the given file.
+   */
+  public UserProfileCache(final int capacity, long ttl, long negativeTtl, TimeUnit unit,
+      File file) {
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+    this.ttl         = unit.toMillis(ttl);
+    this.negativeTtl = unit.toMillis(negativeTtl);
+    this.file        = file;
+    this.entries     = new LinkedHashMap<Long, CachedName>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override protected boolean removeEldestEntry(Map.Entry<Long, CachedName> eldest) {
+        final boolean full = size() > capacity;
+        if (full) { evictions++; }
+        return full;
+      }
+    };
+  }
+
+  /**
+   * @return the cache shared by all searches, configured by, and loaded from the file named in,
+   *    the {@link TwitterEnvironment}.
+   */
+  public static UserProfileCache shared() {
+    return Installer.INSTANCE;
+  }
+
+  /**
+   * @param userId id of the user.
+   * @return the user's first name, {@link #UNKNOWN} if the user is known to have no profile,
+   *    or null if the user is not in the cache (or was, but expired).
+   */
+  public String get(long userId) {
+    synchronized (entries) {
+      final CachedName entry = entries.get(userId);
+      if (entry == null) {
+        misses++;
+        return null;
+      }
+
+      if (entry.isExpired(now())) {
+        entries.remove(userId);
+        expirations++;
+        misses++;
+        dirty = true;
+        return null;
+      }
+
+      hits++;
+      return entry.firstname;
+    }
+  }
+
+  /**
+   * remembers a user's first name.
+   * @param userId id of the user.
+   * @param firstname first name of the user; {@link #UNKNOWN} if the user has no profile.
+   */
+  public void put(long userId, String firstname) {
+    Preconditions.checkNotNull(firstname);
+    final long expiresAt = now() + (UNKNOWN.equals(firstname) ? negativeTtl : ttl);
+    put(userId, firstname, expiresAt);
+  }
+
+  /**
+   * remembers that a user has no profile to look up.
+   * @param userId id of the user.
+   */
+  public void putUnknown(long userId) {
+    put(userId, UNKNOWN);
+  }
+
+  private void put(long userId, String firstname, long expiresAt) {
+    synchronized (entries) {
+      entries.put(userId, new CachedName(firstname, expiresAt));
+      dirty = true;
+    }
+  }
+
+  /**
+   * loads the entries saved in this cache's file, if any. Expired entries are skipped.
+   *
+   * @return the number of entries loaded.
+   * @throws IOException if the file exists but cannot be read.
+   */
+  public int load() throws IOException {
+    if (file == null || !file.exists()) { return 0; }
+
+    final long now = now();
+    int loaded = 0;
+    final BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      // entries were saved from least to most recently used, so their order is kept.
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        final String[] fields = line.split("\t", 3);
+        if (fields.length != 3) { continue; }
+
+        try {
+          final long userId    = Long.parseLong(fields[0]);
+          final long expiresAt = Long.parseLong(fields[1]);
+          if (expiresAt <= now) { continue; }
+          put(userId, fields[2], expiresAt);
+          loaded++;
+        } catch (NumberFormatException malformed) {
+          // skips the line.
+        }
+      }
+    } finally {
+      reader.close();
+    }
+
+    synchronized (entries) {
+      dirty = false;
+    }
+
+    return loaded;
+  }
+
+  /**
+   * saves the entries of this cache to its file, if it has one and something changed since it
+   * was last saved or loaded. The file is replaced only once all entries are written; concurrent
+   * saves are done one after the other.
+   *
+   * @return true if the file was written.
+   * @throws IOException if the file cannot be written.
+   */
+  public synchronized boolean save() throws IOException {
+    if (file == null) { return false; }
+
+    final Map<Long, CachedName> snapshot;
+    synchronized (entries) {
+      if (!dirty) { return false; }
+      snapshot = new LinkedHashMap<Long, CachedName>(entries);
+      dirty    = false;
+    }
+
+    final List<String> lines = Lists.newArrayListWithCapacity(snapshot.size());
+    for (Map.Entry<Long, CachedName> each : snapshot.entrySet()) {
+      final String firstname = each.getValue().firstname;
+      // such names cannot be told apart from the separators; they are just looked up again.
+      if (firstname.indexOf('\t') >= 0 || firstname.indexOf('\n') >= 0
+          || firstname.indexOf('\r') >= 0) { continue; }
+
+      lines.add(String.format("%d\t%d\t%s", each.getKey(), each.getValue().expiresAt,
+          firstname));
+    }
+
+    try {
+      TextFiles.replace(file, lines);
+    } catch (IOException e) {
+      synchronized (entries) {
+        dirty = true;
+      }
+      throw e;
+    }
+
+    return true;
+  }
+
+  /**
+   * @return the current time, in millis; entries outlive restarts, so this is wall clock time.
+   */
+  protected long now() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * @return number of users in the cache, including expired ones not yet removed.
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * @return number of users found in the cache.
+   */
+  public long getHits() {
+    synchronized (entries) {
+      return hits;
+    }
+  }
+
+  /**
+   * @return number of users not found in the cache, or found expired.
+   */
+  public long getMisses() {
+    synchronized (entries) {
+      return misses;
+    }
+  }
+
+  @Override public String toString() {
+    synchronized (entries) {
+      return String.format("UserProfileCache(size=%d, hits=%d, misses=%d, expired=%d, evicted=%d)",
+          entries.size(), hits, misses, expirations, evictions);
+    }
+  }
+
+  /**
+   * a first name, and when it expires.
+   */
+  private static class CachedName {
+    final String firstname;
+    final long   expiresAt;
+
+    CachedName(String firstname, long expiresAt) {
+      this.firstname = firstname;
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isExpired(long now) {
+      return expiresAt <= now;
+    }
+  }
+
+  /**
+   * Lazy-constructed singleton, which is thread safe
+   */
+  static class Installer {
+    static final UserProfileCache INSTANCE;
+
+    static {
+      final TwitterEnvironment environment = TwitterEnvironment.getInstance();
+      final String             filename    = environment.getUserCacheFile();
+      INSTANCE = new UserProfileCache(
+          environment.getUserCacheCapacity(),
+          environment.getUserCacheTtl(),
+          environment.getUserCacheNegativeTtl(),
+          TimeUnit.MINUTES,
+          filename == null ? null : new File(filename));
+      try {
+        INSTANCE.load();
+      } catch (IOException e) {
+        System.err.println("unable to load the user profile cache; starting with an empty one");
+      }
+    }
+  }
+}
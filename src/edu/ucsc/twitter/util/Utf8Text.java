@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A reusable {@link CharSequence} view of a UTF-8 encoded slice of bytes (e.g., a record of a
+ * memory-mapped corpus of tweets). The slice is decoded into a char buffer that is kept between
+ * {@link #reset(byte[], int, int) resets}, along with the byte offset of every char, so that the
+ * offsets found by {@link Tweets} can be reported in bytes as well.
+ *
+ * <p>Malformed sequences are decoded as U+FFFD, one byte at a time.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class Utf8Text implements CharSequence {
+  private static final char REPLACEMENT = '\uFFFD';
+
+  private char[] chars;
+  private int[]  byteOffsets;
+  private int    length;
+
+  public Utf8Text() {
+    this(140);
+  }
+
+  public Utf8Text(int capacity) {
+    this.chars       = new char[Math.max(1, capacity)];
+    this.byteOffsets = new int[chars.length + 1];
+    this.length      = 0;
+  }
+
+  /**
+   * decodes the given slice of UTF-8 bytes.
+   *
+   * @param utf8 encoded text.
+   * @param offset of the first byte of the slice.
+   * @param length number of bytes in the slice.
+   * @return this text.
+   */
+  public Utf8Text reset(byte[] utf8, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > utf8.length) {
+      throw new IndexOutOfBoundsException(
+          "offset: " + offset + ", length: " + length + ", size: " + utf8.length);
+    }
+
+    return decode(utf8, null, offset, length);
+  }
+
+  /**
+   * decodes the bytes between the position and the limit of the given buffer, without
+   * consuming them.
+   *
+   * @param utf8 encoded text.
+   * @return this text.
+   */
+  public Utf8Text reset(ByteBuffer utf8) {
+    if (utf8.hasArray()) {
+      return reset(utf8.array(), utf8.arrayOffset() + utf8.position(), utf8.remaining());
+    }
+
+    return decode(null, utf8, utf8.position(), utf8.remaining());
+  }
+
+  private Utf8Text decode(byte[] array, ByteBuffer buffer, int offset, int size) {
+    ensureCapacity(size);
+
+    int chars = 0;
+    int i     = 0;
+    while (i < size) {
+      final int b0 = byteAt(array, buffer, offset + i);
+      byteOffsets[chars] = i;
+
+      if (b0 < 0x80) {
+        this.chars[chars++] = (char) b0;
+        i++;
+        continue;
+      }
+
+      final int needed;
+      final int min;
+      int codePoint;
+      if (b0 >= 0xC2 && b0 <= 0xDF) {
+        needed = 1; min = 0x80; codePoint = b0 & 0x1F;
+      } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+        needed = 2; min = 0x800; codePoint = b0 & 0x0F;
+      } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+        needed = 3; min = 0x10000; codePoint = b0 & 0x07;
+      } else {
+        this.chars[chars++] = REPLACEMENT;
+        i++;
+        continue;
+      }
+
+      boolean malformed = i + needed >= size;
+      for (int k = 1; !malformed && k <= needed; k++) {
+        final int b = byteAt(array, buffer, offset + i + k);
+        if ((b & 0xC0) != 0x80) {
+          malformed = true;
+        } else {
+          codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+      }
+
+      if (malformed || codePoint < min || codePoint > Character.MAX_CODE_POINT
+          || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+        this.chars[chars++] = REPLACEMENT;
+        i++;
+        continue;
+      }
+
+      if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+        this.chars[chars++] = (char) codePoint;
+      } else {
+        final int supplementary = codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        this.chars[chars++] = (char) (Character.MIN_HIGH_SURROGATE + (supplementary >>> 10));
+        byteOffsets[chars]  = i;
+        this.chars[chars++] = (char) (Character.MIN_LOW_SURROGATE + (supplementary & 0x3FF));
+      }
+
+      i += needed + 1;
+    }
+
+    byteOffsets[chars] = size;
+    this.length        = chars;
+    return this;
+  }
+
+  private static int byteAt(byte[] array, ByteBuffer buffer, int index) {
+    return (array != null ? array[index] : buffer.get(index)) & 0xFF;
+  }
+
+  private void ensureCapacity(int bytes) {
+    // a UTF-8 slice never decodes into more chars than it has bytes.
+    if (bytes > chars.length) {
+      final int capacity = Math.max(bytes, chars.length * 2);
+      chars       = Arrays.copyOf(chars, capacity);
+      byteOffsets = new int[capacity + 1];
+    }
+  }
+
+  /**
+   * @param index of a char in this text, or {@link #length()}.
+   * @return offset, relative to the start of the decoded slice, of the first byte of the code
+   *    point containing the given char; or the size of the slice when given {@link #length()}.
+   */
+  public int byteOffset(int index) {
+    if (index < 0 || index > length) {
+      throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+    }
+
+    return byteOffsets[index];
+  }
+
+  @Override public int length() {
+    return length;
+  }
+
+  @Override public char charAt(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+    }
+
+    return chars[index];
+  }
+
+  @Override public CharSequence subSequence(int start, int end) {
+    if (start < 0 || start > end || end > length) {
+      throw new IndexOutOfBoundsException(
+          "start: " + start + ", end: " + end + ", length: " + length);
+    }
+
+    return new String(chars, start, end - start);
+  }
+
+  @Override public String toString() {
+    return new String(chars, 0, length);
+  }
+}
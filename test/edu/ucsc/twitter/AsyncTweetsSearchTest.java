@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import edu.ucsc.twitter.circuitbreaker.CircuitBreaker;
+import edu.ucsc.twitter.circuitbreaker.CircuitBreakerRegistry;
+import edu.ucsc.twitter.circuitbreaker.SlidingWindowCircuitBreaker;
+import edu.ucsc.twitter.util.KeywordAutomaton;
+import edu.ucsc.twitter.util.RateLimitPacer;
+import edu.ucsc.twitter.util.SearchCheckpoints;
+import edu.ucsc.twitter.util.SeenTweets;
+import edu.ucsc.twitter.util.TwitterEnvironment;
+import edu.ucsc.twitter.util.UserProfileCache;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.Query;
+import twitter4j.QueryResult;
+import twitter4j.Tweet;
+import twitter4j.User;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs {@link AsyncTweetsSearch} against a local stub, where a single thread plays the network.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class AsyncTweetsSearchTest {
+  private static final int         PAGE_SIZE = 40;
+  private static final Set<String> KEYWORDS  = ImmutableSet.of("years old");
+
+  private final AtomicInteger posted  = new AtomicInteger(200); // tweets 1 to 200, newest first.
+  private final List<Query>   queries = new CopyOnWriteArrayList<Query>();
+  private final List<long[]>  lookups = new CopyOnWriteArrayList<long[]>();
+
+  private ScheduledExecutorService network;
+  private CircuitBreakerRegistry   breakers;
+  private UserProfileCache         users;
+  private AsyncTweetsSearch        search;
+
+  @Before public void setUp() {
+    network  = Executors.newSingleThreadScheduledExecutor();
+    // every call the stub answers is slow, but no breaker opens before 100 calls.
+    breakers = new CircuitBreakerRegistry(TwitterEnvironment.getInstance(), "async") {
+      @Override protected CircuitBreaker<RuntimeException> newBreaker(String endpoint) {
+        return SlidingWindowCircuitBreaker.builder(endpoint).windowSize(100).minimumCalls(100)
+            .slowCallDuration(5, TimeUnit.MILLISECONDS).build();
+      }
+    };
+    users    = new UserProfileCache(1000, 1, 1, TimeUnit.HOURS);
+    search  = new AsyncTweetsSearch(new StubClient(),
+        KeywordAutomaton.compile(ImmutableList.copyOf(KEYWORDS)), 3, breakers, null, null, users,
+        new SearchCheckpoints(), new SeenTweets());
+  }
+
+  @After public void tearDown() {
+    network.shutdownNow();
+  }
+
+  @Test public void fetchesPagesUntilAnEmptyOne() {
+    final List<Object> found = search.search(1000, KEYWORDS).get(ResultPackage.Kind.TWEET);
+
+    assertEquals(200, found.size());
+    // five full pages, then the sixth is empty; the seventh and eighth were already in flight.
+    assertEquals(8, queries.size());
+  }
+
+  @Test public void stopsRequestingPagesOnceTheLimitIsReached() {
+    final List<Object> found = search.search(80, KEYWORDS).get(ResultPackage.Kind.TWEET);
+
+    assertEquals(80, found.size());
+    // the first page came back before the limit was reached, so a fourth was requested.
+    assertEquals(4, queries.size());
+  }
+
+  @Test public void looksUpAuthorsInBatches() {
+    search.search(1000, KEYWORDS);
+
+    assertEquals(2, lookups.size());
+    assertEquals(100, lookups.get(0).length);
+    assertEquals(100, lookups.get(1).length);
+    assertEquals("Student", users.get(7L));
+    // suspended users are remembered too, so they are not looked up again.
+    assertEquals(UserProfileCache.UNKNOWN, users.get(10L));
+  }
+
+  @Test public void searchesOnlyNewerTweetsNextTime() {
+    search.search(1000, KEYWORDS);
+    queries.clear();
+    lookups.clear();
+    posted.addAndGet(30);
+
+    final List<Object> found = search.search(1000, KEYWORDS).get(ResultPackage.Kind.TWEET);
+
+    assertEquals(30, found.size());
+    for (Query each : queries) {
+      assertEquals(200L, each.getSinceId());
+    }
+    // only the 30 new authors are looked up, all of them at once.
+    assertEquals(1, lookups.size());
+    assertEquals(30, lookups.get(0).length);
+  }
+
+  @Test public void dropsTweetsAlreadySeen() {
+    final SeenTweets seen = new SeenTweets();
+    final KeywordAutomaton hints = KeywordAutomaton.compile(ImmutableList.copyOf(KEYWORDS));
+    final AsyncTweetsSearch first = new AsyncTweetsSearch(new StubClient(), hints, 3, breakers, null, null, users,
+        new SearchCheckpoints(), seen);
+    final AsyncTweetsSearch second = new AsyncTweetsSearch(new StubClient(), hints, 3, breakers, null, null, users,
+        new SearchCheckpoints(), seen);
+
+    assertEquals(200, first.search(1000, KEYWORDS).get(ResultPackage.Kind.TWEET).size());
+    // without a checkpoint, the same tweets come back, but they were collected already.
+    assertTrue(second.search(1000, KEYWORDS).get(ResultPackage.Kind.TWEET).isEmpty());
+    assertTrue(seen.contains(200L));
+  }
+
+  @Test public void commitsNothingWhenPackagingFails() {
+    final SeenTweets        seen        = new SeenTweets();
+    final SearchCheckpoints checkpoints = new SearchCheckpoints();
+    final AsyncTweetsSearch failing = new AsyncTweetsSearch(new StubClient() {
+      @Override Tweet tweet(long id) {
+        // a tweet without text cannot be packaged.
+        return id == 150 ? Stubs.stub(Tweet.class, ImmutableMap.of("getId", id)) : super.tweet(id);
+      }
+    }, KeywordAutomaton.compile(ImmutableList.copyOf(KEYWORDS)), 3, breakers, null, null, users, checkpoints, seen);
+
+    try {
+      failing.search(1000, KEYWORDS);
+      fail("packaging should have failed");
+    } catch (RuntimeException expected) {
+      // the tweets are left to be fetched again.
+    }
+
+    assertEquals(0, seen.size());
+    assertEquals(0L, checkpoints.sinceId(SearchCheckpoints.keyOf(KEYWORDS, "en")));
+    assertEquals(200, search.search(1000, KEYWORDS).get(ResultPackage.Kind.TWEET).size());
+  }
+
+  @Test public void timesCallsUntilTheirCallbacks() {
+    search.search(1000, KEYWORDS);
+
+    // the stub answers after 10 ms, on its own thread.
+    assertEquals(100.0, breaker(CircuitBreakerRegistry.SEARCH).getSlowCallRate(), 0.0);
+    assertEquals(100.0, breaker(CircuitBreakerRegistry.LOOKUP).getSlowCallRate(), 0.0);
+    assertEquals(0.0, breaker(CircuitBreakerRegistry.SEARCH).getFailureRate(), 0.0);
+  }
+
+  @Test public void tellsTheBreakerAboutCallsThatFailedToBeSent() {
+    final AsyncTweetsSearch refused = new AsyncTweetsSearch(new StubClient() {
+      @Override public void search(Query query, Callback<QueryResult> callback) {
+        throw new IllegalStateException("connection refused");
+      }
+    }, KeywordAutomaton.compile(ImmutableList.copyOf(KEYWORDS)), 3, breakers, null, null, users,
+        new SearchCheckpoints(), new SeenTweets());
+
+    assertTrue(refused.search(1000, KEYWORDS).get(ResultPackage.Kind.TWEET).isEmpty());
+    // no later page is requested once one failed to be sent.
+    assertEquals(100.0, breaker(CircuitBreakerRegistry.SEARCH).getFailureRate(), 0.0);
+    assertEquals(0.0, breaker(CircuitBreakerRegistry.SEARCH).getSlowCallRate(), 0.0);
+  }
+
+  @Test public void pacesSearchesAndLookups() {
+    final CountingPacer searchPacer = new CountingPacer();
+    final CountingPacer restPacer   = new CountingPacer();
+    final AsyncTweetsSearch paced = new AsyncTweetsSearch(new StubClient(),
+        KeywordAutomaton.compile(ImmutableList.copyOf(KEYWORDS)), 3, breakers, searchPacer,
+        restPacer, users, new SearchCheckpoints(), new SeenTweets());
+
+    assertEquals(200, paced.search(1000, KEYWORDS).get(ResultPackage.Kind.TWEET).size());
+    assertEquals(queries.size(), searchPacer.reserved.get());
+    assertEquals(lookups.size(), restPacer.reserved.get());
+  }
+
+  private SlidingWindowCircuitBreaker breaker(String endpoint) {
+    return (SlidingWindowCircuitBreaker) breakers.get(endpoint);
+  }
+
+  /**
+   * makes every other call wait 20 ms for its token.
+   */
+  private static class CountingPacer extends RateLimitPacer {
+    final AtomicInteger reserved = new AtomicInteger();
+
+    CountingPacer() {
+      super(1000, 1, TimeUnit.SECONDS, 1000);
+    }
+
+    @Override public long reserve() {
+      return reserved.incrementAndGet() % 2 == 0 ? 20 : 0;
+    }
+  }
+
+  /**
+   * answers every call 10 ms after it is made, from a single network thread; every tenth user
+   * is suspended.
+   */
+  private class StubClient implements AsyncTwitterClient {
+    @Override public void search(Query query, Callback<QueryResult> callback) {
+      queries.add(query);
+      final List<Tweet> tweets = Lists.newArrayList();
+      final long newest = posted.get() - (query.getPage() - 1) * PAGE_SIZE;
+      for (long id = newest; id > Math.max(newest - PAGE_SIZE, query.getSinceId()) && id > 0;
+          id--) {
+        tweets.add(tweet(id));
+      }
+
+      reply(callback, Stubs.result(tweets));
+    }
+
+    Tweet tweet(long id) {
+      return Stubs.tweet(id);
+    }
+
+    @Override public void lookupUsers(long[] userIds, Callback<List<User>> callback) {
+      lookups.add(userIds);
+      final List<User> found = Lists.newArrayList();
+      for (long each : userIds) {
+        if (each % 10 == 0) { continue; }
+        found.add(Stubs.user(each));
+      }
+
+      reply(callback, found);
+    }
+
+    private <T> void reply(final Callback<T> callback, final T result) {
+      network.schedule(new Runnable() {
+        @Override public void run() {
+          callback.onSuccess(result);
+        }
+      }, 10, TimeUnit.MILLISECONDS);
+    }
+  }
+}
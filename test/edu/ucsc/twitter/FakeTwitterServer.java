@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import twitter4j.Twitter;
+import twitter4j.TwitterFactory;
+import twitter4j.conf.ConfigurationBuilder;
+
+/**
+ * An in-process stand-in for the parts of the Twitter API that twitter4j 2.2.1 calls on our
+ * behalf: searches ({@code search.json}), user lookups ({@code users/lookup.json}) and user
+ * timelines ({@code statuses/user_timeline.json}). Tweets are posted at a steady rate, so
+ * searches keep finding new ones, newest first, {@code since_id} and {@code page} included.
+ *
+ * <p>Every response is delayed by a fixed latency; a share of them fail with a 503; and each
+ * endpoint has an hourly quota, reported in the {@code X-RateLimit-*} headers of REST responses.
+ * Once a quota is spent, REST calls fail with a 400, and searches with a 420 and a
+ * {@code Retry-After} header, until the hour is over; just like the real API.</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+class FakeTwitterServer {
+  private static final int MAX_RESULTS_PER_PAGE = 100;
+  private static final int DEFAULT_RESULTS      = 15;
+  private static final int USERS                = 5000; // distinct authors of the posted tweets.
+
+  private final HttpServer      server;
+  private final ExecutorService handlers;
+  private final long            latency;
+  private final double          errorRate;
+  private final int             hourlyLimit;
+  private final int             tweetsPerSecond;
+  private final long            startedAt;
+  private final Random          random = new Random(2011L);
+
+  private final Map<String, Endpoint> endpoints = Maps.newLinkedHashMap();
+
+  /**
+   * @param latency time each response is delayed by, in milliseconds.
+   * @param errorRate share of the calls that fail with a 503.
+   * @param hourlyLimit calls allowed per hour, per endpoint.
+   * @param tweetsPerSecond rate at which tweets are posted.
+   * @throws IOException if the server cannot be bound to a local port.
+   */
+  FakeTwitterServer(long latency, double errorRate, int hourlyLimit, int tweetsPerSecond)
+      throws IOException {
+    this.latency         = latency;
+    this.errorRate       = errorRate;
+    this.hourlyLimit     = hourlyLimit;
+    this.tweetsPerSecond = tweetsPerSecond;
+    this.startedAt       = System.currentTimeMillis();
+    this.handlers        = Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override public Thread newThread(Runnable runnable) {
+        final Thread thread = new Thread(runnable, "fake-twitter-server");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.server.setExecutor(handlers);
+    serve("/search.json", true, new Responder() {
+      @Override public String respond(Map<String, String> params) {
+        return searchJson(params);
+      }
+    });
+    serve("/1/users/lookup.json", false, new Responder() {
+      @Override public String respond(Map<String, String> params) {
+        return lookupJson(params.get("user_id"));
+      }
+    });
+    serve("/1/statuses/user_timeline.json", false, new Responder() {
+      @Override public String respond(Map<String, String> params) {
+        return timelineJson(params.get("user_id"));
+      }
+    });
+  }
+
+  void start() {
+    server.start();
+  }
+
+  void stop() {
+    server.stop(0);
+    handlers.shutdownNow();
+  }
+
+  /**
+   * @return the base url of the search API; i.e., twitter4j's {@code searchBaseURL}.
+   */
+  String getSearchBaseUrl() {
+    return "http://localhost:" + server.getAddress().getPort() + "/";
+  }
+
+  /**
+   * @return the base url of the REST API; i.e., twitter4j's {@code restBaseURL}.
+   */
+  String getRestBaseUrl() {
+    return getSearchBaseUrl() + "1/";
+  }
+
+  /**
+   * @return a client that calls this server, whatever twitter4j's global configuration says.
+   */
+  Twitter newClient() {
+    return new TwitterFactory(new ConfigurationBuilder()
+        .setSearchBaseURL(getSearchBaseUrl())
+        .setRestBaseURL(getRestBaseUrl())
+        .setUser("demodetect")
+        .setPassword("demodetect")
+        .build()).getInstance();
+  }
+
+  /**
+   * @return the number of calls made to all endpoints, successful or not.
+   */
+  long getCalls() {
+    long calls = 0;
+    for (Endpoint each : endpoints.values()) {
+      calls += each.calls.get();
+    }
+
+    return calls;
+  }
+
+  /**
+   * @return the calls, failures and rejections of each endpoint that was called.
+   */
+  Map<String, Endpoint> getEndpoints() {
+    return endpoints;
+  }
+
+  private void serve(final String path, final boolean search, final Responder responder) {
+    final Endpoint endpoint = new Endpoint();
+    endpoints.put(path, endpoint);
+    server.createContext(path, new HttpHandler() {
+      @Override public void handle(HttpExchange exchange) throws IOException {
+        final long start = System.nanoTime();
+        try {
+          endpoint.calls.incrementAndGet();
+          if (latency > 0) { Thread.sleep(latency); }
+
+          final long now         = System.currentTimeMillis();
+          final long windowStart = startedAt + (now - startedAt) / 3600000L * 3600000L;
+          final long reset       = windowStart + 3600000L;
+          final int  remaining   = endpoint.take(windowStart, hourlyLimit);
+          if (!search) {
+            exchange.getResponseHeaders().add("X-RateLimit-Limit", String.valueOf(hourlyLimit));
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining",
+                String.valueOf(Math.max(0, remaining)));
+            exchange.getResponseHeaders().add("X-RateLimit-Reset",
+                String.valueOf(TimeUnit.MILLISECONDS.toSeconds(reset)));
+          }
+
+          if (remaining < 0) {
+            endpoint.rejected.incrementAndGet();
+            if (search) {
+              exchange.getResponseHeaders().add("Retry-After",
+                  String.valueOf(TimeUnit.MILLISECONDS.toSeconds(reset - now) + 1));
+            }
+            send(exchange, search ? 420 : 400, error("Rate limit exceeded", path));
+          } else if (nextDouble() < errorRate) {
+            endpoint.failed.incrementAndGet();
+            send(exchange, 503, error("Over capacity", path));
+          } else {
+            send(exchange, 200, responder.respond(params(exchange)));
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          endpoint.nanos.addAndGet(System.nanoTime() - start);
+          exchange.close();
+        }
+      }
+    });
+  }
+
+  private synchronized double nextDouble() {
+    return random.nextDouble();
+  }
+
+  private static void send(HttpExchange exchange, int status, String body) throws IOException {
+    final byte[] bytes = body.getBytes(Charsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    final OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+  }
+
+  private static Map<String, String> params(HttpExchange exchange)
+      throws UnsupportedEncodingException {
+    final Map<String, String> params = Maps.newHashMap();
+    final String query = exchange.getRequestURI().getRawQuery();
+    if (query == null) { return params; }
+
+    for (String each : query.split("&")) {
+      final int equals = each.indexOf('=');
+      if (equals > 0) {
+        params.put(each.substring(0, equals),
+            URLDecoder.decode(each.substring(equals + 1), Charsets.UTF_8.name()));
+      }
+    }
+
+    return params;
+  }
+
+  /**
+   * @return the id of the newest tweet posted so far.
+   */
+  private long newestId() {
+    return 1 + (System.currentTimeMillis() - startedAt) * tweetsPerSecond / 1000;
+  }
+
+  private String searchJson(Map<String, String> params) {
+    final int  rpp     = Math.min(MAX_RESULTS_PER_PAGE, intParam(params, "rpp", DEFAULT_RESULTS));
+    final int  page    = Math.max(1, intParam(params, "page", 1));
+    final long sinceId = params.containsKey("since_id") ? Long.valueOf(params.get("since_id")) : 0;
+    final long newest  = newestId();
+
+    final StringBuilder results = new StringBuilder();
+    final long first = newest - (long) (page - 1) * rpp;
+    for (long id = first; id > Math.max(sinceId, first - rpp) && id > 0; id--) {
+      if (results.length() > 0) { results.append(','); }
+      final long author = id % USERS + 1;
+      results.append(String.format("{\"id\":%d,\"text\":%s,\"from_user\":\"user%d\","
+          + "\"from_user_id\":%d,\"to_user_id\":null,\"iso_language_code\":\"en\","
+          + "\"source\":\"web\",\"profile_image_url\":\"http://a0.twimg.com/%d.png\","
+          + "\"created_at\":\"%s\",\"location\":\"Santa Cruz\"}",
+          id, quote(textOf(id)), author, author, author, searchDate(id)));
+    }
+
+    return String.format("{\"results\":[%s],\"max_id\":%d,\"since_id\":%d,"
+        + "\"refresh_url\":\"?since_id=%d\",\"results_per_page\":%d,\"page\":%d,"
+        + "\"completed_in\":0.01,\"query\":%s}",
+        results, newest, sinceId, newest, rpp, page, quote(params.get("q")));
+  }
+
+  private static String lookupJson(String ids) {
+    final StringBuilder users = new StringBuilder("[");
+    if (ids != null) {
+      for (String each : ids.split(",")) {
+        if (each.length() == 0) { continue; }
+        if (users.length() > 1) { users.append(','); }
+        users.append(userJson(Long.valueOf(each)));
+      }
+    }
+
+    return users.append(']').toString();
+  }
+
+  private String timelineJson(String userId) {
+    final long author = userId == null ? 1 : Long.valueOf(userId);
+    final long id     = newestId();
+    return String.format("[{\"id\":%d,\"text\":%s,\"created_at\":\"%s\",\"user\":%s}]",
+        id, quote(textOf(id)), userDate(id), userJson(author));
+  }
+
+  private static String userJson(long id) {
+    return String.format("{\"id\":%d,\"name\":\"Student Number%d\",\"screen_name\":\"user%d\","
+        + "\"location\":\"Santa Cruz\",\"description\":\"\",\"protected\":false,"
+        + "\"followers_count\":10,\"friends_count\":10,\"statuses_count\":100,"
+        + "\"created_at\":\"%s\"}", id, id, id, userDate(id));
+  }
+
+  private static String textOf(long id) {
+    return "I&apos;m " + (12 + id % 8) + " years old and my bday is next week @friend"
+        + id % 7 + " http://t.co/" + id;
+  }
+
+  private static String searchDate(long id) {
+    final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z",
+        Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    return format.format(new Date(1300000000000L + id * 10));
+  }
+
+  private static String userDate(long id) {
+    final SimpleDateFormat format = new SimpleDateFormat("EEE MMM dd HH:mm:ss Z yyyy",
+        Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    return format.format(new Date(1300000000000L + id * 10));
+  }
+
+  private static String error(String message, String path) {
+    return String.format("{\"error\":%s,\"request\":%s}", quote(message), quote(path));
+  }
+
+  private static int intParam(Map<String, String> params, String name, int defaultValue) {
+    final String value = params.get(name);
+    return value == null ? defaultValue : Integer.valueOf(value);
+  }
+
+  private static String quote(String value) {
+    if (value == null) { return "null"; }
+    return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+
+  @Override public String toString() {
+    return String.format("FakeTwitterServer(latency=%d ms, errors=%.1f%%, limit=%d/h, "
+        + "posting=%d/s, endpoints=%s)", latency, errorRate * 100, hourlyLimit, tweetsPerSecond,
+        endpoints);
+  }
+
+  /**
+   * produces the body of a successful response.
+   */
+  private interface Responder {
+    String respond(Map<String, String> params);
+  }
+
+  /**
+   * What happened to the calls made to an endpoint.
+   */
+  static class Endpoint {
+    final AtomicLong calls    = new AtomicLong();
+    final AtomicLong failed   = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    final AtomicLong nanos    = new AtomicLong();
+
+    private long window;
+    private int  used;
+
+    /**
+     * @return the calls left in the current window, once this one is counted; negative if
+     *    none were left.
+     */
+    synchronized int take(long windowStart, int limit) {
+      if (windowStart != window) {
+        window = windowStart;
+        used   = 0;
+      }
+
+      return limit - ++used;
+    }
+
+    @Override public String toString() {
+      return String.format("%d calls (%d failed, %d rate limited, %.1f ms each)", calls.get(),
+          failed.get(), rejected.get(), calls.get() == 0 ? 0.0 : nanos.get() / 1e6 / calls.get());
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import edu.ucsc.cli.util.Strings;
+import edu.ucsc.twitter.util.KeywordAutomaton;
+import edu.ucsc.twitter.util.TweetText;
+import edu.ucsc.twitter.util.TwitterEnvironment;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link KeywordRelevanceScorer} keeps and drops the same tweets as the filter
+ * {@link DemographicsResultsWriter} used to apply to each tweet, with the phrases it used to
+ * hard-code.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class KeywordRelevanceScorerTest {
+  private static final Set<String> OLD_KEYWORDS = ImmutableSet.of(
+      "feel", "like", "mins", "minutes", "secs", "seconds", "hrs", "hours", "away", "day", "days",
+      "out of", "times", "time", "by the", "by", "the", "weeks!", "weeks", "today", "tomorrow",
+      "birthday", "again", "till", "until", "think Im", "think I'm", "think I am", "thinks Im",
+      "thinks I'm", "thinks I am", "class", "who", "-", "(8)", "(9)", "(10)", "(11)", "(12)",
+      "(13)", "(14)", "(15)", "(16)", "(17)", "(18)", "(19)", "(20)", "(21)", "(22)", "(23)",
+      "(24)", "(25)", "(26)", "(27)", "(28)", "(29)", "(30)", "cents", "under", "dollar",
+      "dollars", "hundred", "hundreds", "thousand", "thousands", "million", "millions", "steps",
+      "ahead");
+
+  private static final String[] SAMPLES = {
+      "I feel like I'm 8 years old again with my double zipped pink tripple sectioned lunch bag ;)",
+      "my little brother is 12 years old",
+      "Just turned 23 years old!",
+      "She THINKS I'M 30 years old, 5 MINUTES ago",
+      "10 years old by the time the class is over, today",
+      "(18) years old, who knows",
+      "spent a million dollars in hundreds of steps ahead",
+      "I'm 21 years old and I feel like a kid",
+      "",
+  };
+
+  private static final String[] PIECES = {
+      "years old", "I'm", "feel", "like", "MINS", "away", "out of", "the", "Think I'm", "-",
+      "(17)", "(31)", "dollars", "ahead", "weeks!", "we", "eks", "thin", "ks", "old", "23", "a",
+      " ", " ", " ", ",", "!", "é"
+  };
+
+  private final KeywordRelevanceScorer scorer = new KeywordRelevanceScorer(
+      KeywordAutomaton.compile(ImmutableList.copyOf(OLD_KEYWORDS)));
+
+  @Test public void readsTheSamePhrasesFromTheConfiguration() throws Exception {
+    assertEquals(OLD_KEYWORDS, ImmutableSet.copyOf(TwitterEnvironment.readIrrelevantKeywords()));
+  }
+
+  @Test public void dropsWhatTheOldFilterDroppedInSamples() {
+    for (String each : SAMPLES) {
+      assertEquals(each, isIrrelevant(each), scorer.isIrrelevant(TweetText.of(each)));
+      assertEquals(each, score(each), scorer.score(TweetText.of(each)), 0.0);
+    }
+  }
+
+  @Test public void dropsWhatTheOldFilterDroppedInRandomTweets() {
+    final Random random = new Random(5L);
+    int dropped = 0;
+    for (int i = 0; i < 5000; i++) {
+      final String tweet = randomTweet(random);
+      assertEquals(tweet, isIrrelevant(tweet), scorer.isIrrelevant(TweetText.of(tweet)));
+      assertEquals(tweet, score(tweet), scorer.score(TweetText.of(tweet)), 0.0);
+      if (isIrrelevant(tweet)) { dropped++; }
+    }
+
+    // both outcomes are covered.
+    assertTrue(dropped > 500);
+    assertTrue(dropped < 4500);
+  }
+
+  @Test public void keepsTweetsWithoutText() {
+    assertFalse(scorer.isIrrelevant(null));
+    assertEquals(0.0, scorer.score(null), 0.0);
+  }
+
+  @Test public void findsTheDemoTweetIrrelevant() {
+    // once the DemographicsResultsWriter demo: "feel", "like" and "again" score 0.6.
+    assertTrue(KeywordRelevanceScorer.fromEnvironment().isIrrelevant(TweetText.of(
+        "I feel like I&apos;m 8 years old again with my double zipped pink lunch bag ;)")));
+  }
+
+  /**
+   * the filter of DemographicsResultsWriter, before the scorer replaced it.
+   */
+  private static boolean isIrrelevant(String message) {
+    return Double.compare(score(message), 0.5) > 0; // is score greater than 0.5
+  }
+
+  private static double score(String message) {
+    int count = 0;
+    for (String words : OLD_KEYWORDS) {
+      if (Strings.contains(message.toLowerCase(), words)) {
+        count++;
+      }
+    }
+
+    return Math.min(count / 5.0, 1.0); // max score = 1.0
+  }
+
+  private static String randomTweet(Random random) {
+    final StringBuilder tweet = new StringBuilder();
+    final int size = random.nextInt(25);
+    for (int i = 0; i < size; i++) {
+      tweet.append(PIECES[random.nextInt(PIECES.length)]);
+    }
+
+    return tweet.toString();
+  }
+}
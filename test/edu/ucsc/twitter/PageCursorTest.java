@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PageCursor}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class PageCursorTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final AtomicInteger   fetched  = new AtomicInteger();
+
+  @After public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test public void iteratesOverThePagesInOrder() {
+    for (int depth : new int[]{1, 3}) {
+      final PageCursor<Integer> cursor = new PageCursor<Integer>(executor, pages(6, 10), depth);
+      final List<Integer> firsts = Lists.newArrayList();
+      while (cursor.hasNext()) {
+        firsts.add(cursor.next().iterator().next());
+      }
+
+      assertEquals(ImmutableList.of(100, 200, 300, 400, 500, 600), firsts);
+      assertFalse(cursor.hasNext());
+    }
+  }
+
+  @Test public void fetchesAheadOnlyAfterAPageWithResults() {
+    final PageCursor<Integer> cursor = new PageCursor<Integer>(executor, pages(6, 0), 3);
+    while (cursor.hasNext()) {
+      cursor.next();
+    }
+
+    // the empty 7th page, and the 2 pages in flight when it came back.
+    assertEquals(9, cursor.getRequested());
+  }
+
+  @Test public void fetchesNothingPastTheLastPageAtDepthOne() {
+    final PageCursor<Integer> cursor = new PageCursor<Integer>(executor, pages(6, 0), 1);
+    while (cursor.hasNext()) {
+      cursor.next();
+    }
+
+    assertEquals(7, cursor.getRequested());
+  }
+
+  @Test public void costsASingleCallWhenThereAreNoResults() throws Exception {
+    final PageCursor<Integer> cursor = new PageCursor<Integer>(executor, pages(0, 0), 3);
+    assertFalse(cursor.hasNext());
+    assertEquals(1, cursor.getRequested());
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.SECONDS);
+    assertEquals(1, fetched.get());
+  }
+
+  @Test public void stopsWhenClosed() {
+    final PageCursor<Integer> cursor = new PageCursor<Integer>(executor, pages(6, 10), 3);
+    cursor.next();
+    cursor.next();
+    cursor.close();
+
+    assertFalse(cursor.hasNext());
+    assertEquals(5, cursor.getRequested());
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void hasNoPagePastTheLastOne() {
+    final PageCursor<Integer> cursor = new PageCursor<Integer>(executor, pages(1, 0), 2);
+    assertTrue(cursor.hasNext());
+    cursor.next();
+    cursor.next();
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void passesOnAFailedPage() {
+    final PageCursor<Integer> cursor = new PageCursor<Integer>(executor,
+        new Function<Integer, Set<Integer>>() {
+          @Override public Set<Integer> apply(Integer page) {
+            throw new IllegalStateException("page " + page + " failed");
+          }
+        }, 2);
+    cursor.hasNext();
+  }
+
+  /**
+   * @return a search with the given number of pages of 100 results, each taking the given time
+   *    to fetch.
+   */
+  private Function<Integer, Set<Integer>> pages(final int count, final long millis) {
+    return new Function<Integer, Set<Integer>>() {
+      @Override public Set<Integer> apply(Integer page) {
+        fetched.incrementAndGet();
+        try {
+          Thread.sleep(millis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+
+        final ImmutableSet.Builder<Integer> results = ImmutableSet.builder();
+        for (int i = 0; page <= count && i < 100; i++) {
+          results.add(page * 100 + i);
+        }
+        return results.build();
+      }
+    };
+  }
+}
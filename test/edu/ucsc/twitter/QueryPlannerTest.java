@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link QueryPlanner}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class QueryPlannerTest {
+  private static final Set<String> KEYWORDS = ImmutableSet.of("years old", "I'm", "turning",
+      "my birthday", "high school", "college", "grandkids", "retired", "my mom", "freshman",
+      "senior year", "grad school", "my kids", "teenager", "middle school", "bday",
+      "sweet sixteen", "drinking age", "my wife", "my husband");
+
+  @Test public void packsUnknownKeywordsIntoFewQueries() throws Exception {
+    final List<Set<String>> groups = new QueryPlanner().plan(KEYWORDS, 300);
+
+    assertEquals(2, groups.size());
+    assertCovers(KEYWORDS, groups);
+    for (Set<String> each : groups) {
+      assertTrue(each.size() <= QueryPlanner.MAX_KEYWORDS_PER_QUERY);
+      assertTrue(encodedLength(each) <= QueryPlanner.MAX_QUERY_LENGTH);
+    }
+  }
+
+  @Test public void keepsQueriesWithinTheirLength() throws Exception {
+    final List<Set<String>> groups = new QueryPlanner(60, 10).plan(KEYWORDS, 300);
+
+    assertTrue(groups.size() > 2);
+    assertCovers(KEYWORDS, groups);
+    for (Set<String> each : groups) {
+      assertTrue(each + " is too long", each.size() == 1 || encodedLength(each) <= 60);
+    }
+  }
+
+  @Test public void givesHighYieldKeywordsTheirOwnQuery() {
+    final QueryPlanner planner = new QueryPlanner();
+
+    // a few keywords bring most of the tweets.
+    for (Set<String> each : planner.plan(KEYWORDS, 300)) {
+      final List<String> texts = Lists.newArrayList();
+      for (String keyword : each) {
+        final int count = keyword.equals("years old") ? 250 : keyword.startsWith("my") ? 40 : 2;
+        for (int i = 0; i < count; i++) {
+          texts.add("so " + keyword.toUpperCase() + " today");
+        }
+      }
+      planner.recordTexts(each, texts);
+    }
+    assertTrue(planner.yieldOf("years old") > planner.yieldOf("my mom"));
+    assertTrue(planner.yieldOf("my mom") > planner.yieldOf("bday"));
+
+    final List<Set<String>> groups = planner.plan(KEYWORDS, 300);
+    final int share = QueryPlanner.shareOf(300, groups.size());
+    assertEquals(ImmutableSet.of("years old"), groups.get(0));
+    assertCovers(KEYWORDS, groups);
+    for (Set<String> each : groups.subList(1, groups.size())) {
+      double expected = 0;
+      for (String keyword : each) {
+        expected += planner.yieldOf(keyword);
+      }
+      assertTrue(each + " expects " + expected, expected <= share);
+    }
+
+    // the same yields, the same plan; so queries keep their checkpoints.
+    assertEquals(groups, planner.plan(KEYWORDS, 300));
+  }
+
+  @Test public void creditsTweetsToTheKeywordsTheyContain() {
+    final QueryPlanner planner = new QueryPlanner();
+    final Set<String>  group   = ImmutableSet.of("my mom", "bday");
+    planner.recordTexts(group, ImmutableList.of("my mom is here", "MY MOM again",
+        "no keyword at all"));
+
+    assertTrue(planner.yieldOf("my mom") > planner.yieldOf("bday"));
+    assertTrue(planner.yieldOf("bday") > 0.0);
+    assertEquals(0.0, planner.yieldOf("college"), 0.0);
+  }
+
+  @Test public void sharesTheLimitAmongQueries() {
+    assertEquals(300, QueryPlanner.shareOf(300, 0));
+    assertEquals(300, QueryPlanner.shareOf(300, 1));
+    assertEquals(50, QueryPlanner.shareOf(300, 6));
+    assertEquals(43, QueryPlanner.shareOf(300, 7));
+  }
+
+  private static void assertCovers(Set<String> keywords, List<Set<String>> groups) {
+    final Set<String> planned = Sets.newHashSet();
+    int total = 0;
+    for (Set<String> each : groups) {
+      planned.addAll(each);
+      total += each.size();
+    }
+    assertEquals(keywords, planned);
+    assertEquals(keywords.size(), total);
+  }
+
+  private static int encodedLength(Set<String> group) throws UnsupportedEncodingException {
+    return URLEncoder.encode(PeriodicTweetsSearch.buildOrQuery(group, "en", 0).getQuery(),
+        "UTF-8").length();
+  }
+}
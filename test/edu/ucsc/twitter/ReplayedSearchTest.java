@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+import edu.ucsc.twitter.circuitbreaker.CircuitBreakerRegistry;
+import edu.ucsc.twitter.util.RecordingTwitter;
+import edu.ucsc.twitter.util.ReplayingTwitter;
+import edu.ucsc.twitter.util.SearchCheckpoints;
+import edu.ucsc.twitter.util.SeenTweets;
+import edu.ucsc.twitter.util.TwitterEnvironment;
+import edu.ucsc.twitter.util.UserProfileCache;
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.Query;
+import twitter4j.Tweet;
+import twitter4j.Twitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records the API calls of a search against a {@link FakeTwitterServer}, and plays them back
+ * into a {@link PeriodicTweetsSearch} once the server is gone; so the search fetches, dedupes,
+ * looks up, and packages the recorded responses as if they came from Twitter. Both clients are
+ * handed to the search under test, along with its own caches and breakers, so neither twitter4j's
+ * global configuration nor the collector's shared state is touched.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class ReplayedSearchTest {
+  private static final Set<String> KEYWORDS = ImmutableSet.of("years old");
+
+  private FakeTwitterServer server;
+  private File              archive;
+
+  @Before public void setUp() throws Exception {
+    server = new FakeTwitterServer(0, 0.0, 100000, 1000);
+    server.start();
+    Thread.sleep(200); // so there are a few pages of tweets.
+    archive = File.createTempFile("responses", ".archive");
+    archive.delete();
+  }
+
+  @After public void tearDown() {
+    server.stop();
+    archive.delete();
+  }
+
+  @Test public void searchesRecordedResponses() throws Exception {
+    // the calls a search would make, recorded from the server.
+    final Twitter   recording = RecordingTwitter.record(server.newClient(), archive);
+    final Set<Long> authors   = Sets.newHashSet();
+    for (int page = 1; page <= 4; page++) {
+      final Query query = PeriodicTweetsSearch.buildOrQuery(KEYWORDS, "en", 0);
+      query.setPage(page);
+      @SuppressWarnings("unchecked")
+      final List<Tweet> tweets = (List<Tweet>) recording.search(query).getTweets();
+      for (Tweet each : tweets) {
+        authors.add(each.getFromUserId());
+      }
+    }
+    recording.lookupUsers(Longs.toArray(authors));
+    server.stop();
+    final long calls = server.getCalls();
+
+    final TweetsSearch search = new PeriodicTweetsSearch(
+        ReplayingTwitter.replay(server.newClient(), archive, 0), null, null,
+        PeriodicTweetsSearch.compileKeywords(KEYWORDS),
+        new CircuitBreakerRegistry(TwitterEnvironment.getInstance(), "replayed"),
+        new UserProfileCache(1000, 1, 1, TimeUnit.HOURS), new SearchCheckpoints(),
+        new SeenTweets());
+
+    final List<Object> found = search.search(30, KEYWORDS).get(ResultPackage.Kind.TWEET);
+    assertFalse(found.isEmpty());
+    boolean lookedUp = false;
+    for (Object each : found) {
+      final TweetPackage tweet = (TweetPackage) each;
+      assertTrue(authors.contains(tweet.getUserid()));
+      assertEquals("years old", tweet.getHint());
+      lookedUp |= "Student".equals(tweet.getFullname()); // the first name of the looked up user.
+    }
+    assertTrue(lookedUp);
+    assertEquals(calls, server.getCalls());
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.collect.Sets;
+import edu.ucsc.twitter.util.Symbols;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link RetrievedTweetPackage}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class RetrievedTweetPackageTest {
+  @Test public void resolvesInternedNames() {
+    final Symbols symbols = new Symbols();
+    final TweetPackage tweet = new RetrievedTweetPackage.Builder(symbols, 1L, "bob")
+        .mentions(Arrays.asList("alice", "carol", "alice"))
+        .get();
+
+    assertEquals("bob", tweet.getUsername());
+    assertEquals(Sets.newHashSet("alice", "carol"), tweet.getUserMentions());
+    assertEquals(3, symbols.size());
+  }
+
+  @Test public void acceptsMissingNames() {
+    final TweetPackage tweet = new RetrievedTweetPackage.Builder(new Symbols(), 1L, null)
+        .mentions(null)
+        .get();
+
+    assertNull(tweet.getUsername());
+    assertTrue(tweet.getUserMentions().isEmpty());
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSet;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import edu.ucsc.broadcast.BasicEventService;
+import edu.ucsc.broadcast.EventService;
+import edu.ucsc.broadcast.EventSubscriber;
+import edu.ucsc.broadcast.SyncDeliveryStrategy;
+import edu.ucsc.twitter.util.SeenTweets;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.Status;
+import twitter4j.TwitterStream;
+import twitter4j.TwitterStreamFactory;
+import twitter4j.auth.BasicAuthorization;
+import twitter4j.conf.ConfigurationBuilder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link StreamingTweetsTask} against a local, fake, filter stream endpoint: it sends
+ * {@value #TWEETS} tweets, ten at a time, and then keeps the connection open.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class StreamingTweetsTaskTest {
+  private static final int TWEETS = 50;
+
+  private final CountDownLatch closed  = new CountDownLatch(1);
+  private final EventService   service = new BasicEventService(new SyncDeliveryStrategy());
+  private final SeenTweets     seen    = new SeenTweets();
+
+  private HttpServer                     server;
+  private Supplier<TwitterStream>        local;
+  private StreamingTweetsTask            task;
+  private EventSubscriber<ResultPackage> subscriber; // the event bus holds it weakly.
+
+  @Before public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/1/statuses/filter.json", new HttpHandler() {
+      @Override public void handle(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        final OutputStream out = exchange.getResponseBody();
+        try {
+          for (long id = 1; id <= TWEETS; id++) {
+            out.write(statusJson(id, "I'm " + (10 + id % 8) + " years old @friend").getBytes(
+                "UTF-8"));
+            out.flush();
+            if (id % 10 == 0) { Thread.sleep(100); }
+          }
+          closed.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (IOException gone) {
+          // the client went away.
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+    server.start();
+
+    final TwitterStreamFactory factory = new TwitterStreamFactory(new ConfigurationBuilder()
+        .setStreamBaseURL("http://localhost:" + server.getAddress().getPort() + "/1/")
+        .build());
+    local = new Supplier<TwitterStream>() {
+      @Override public TwitterStream get() {
+        return factory.getInstance(new BasicAuthorization("demodetect", "demodetect"));
+      }
+    };
+  }
+
+  @After public void tearDown() {
+    closed.countDown();
+    if (task != null) { task.shutdownNow(); }
+    server.stop(0);
+  }
+
+  @Test public void publishesStreamedTweetsInBatches() throws Exception {
+    final List<TweetPackage> received = new CopyOnWriteArrayList<TweetPackage>();
+    final List<ResultPackage> packages = new CopyOnWriteArrayList<ResultPackage>();
+    final CountDownLatch done = new CountDownLatch(TWEETS);
+    task = new StreamingTweetsTask(local, ImmutableSet.of("years old"), seen, service);
+    subscriber = new EventSubscriber<ResultPackage>() {
+      @Override public void onEvent(ResultPackage event) {
+        packages.add(event);
+        for (Object each : event.get(ResultPackage.Kind.TWEET)) {
+          received.add((TweetPackage) each);
+          done.countDown();
+        }
+      }
+    };
+    task.subscribe("results", subscriber);
+
+    task.start();
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    assertEquals(TWEETS, received.size());
+    assertTrue(packages.size() < TWEETS);
+
+    final TweetPackage first = received.get(0);
+    assertEquals("user1", first.getUsername());
+    assertTrue(first.getHint().contains("years old"));
+    assertTrue(first.getUserMentions().contains("friend"));
+    awaitSeen(TWEETS);
+  }
+
+  @Test public void marksTweetsSeenOnlyOncePublished() throws Exception {
+    final BlockingQueue<Status> arrived = new ArrayBlockingQueue<Status>(TWEETS);
+    task = new StreamingTweetsTask(local, ImmutableSet.of("years old"), seen, arrived, service);
+    subscriber = new EventSubscriber<ResultPackage>() {
+      @Override public void onEvent(ResultPackage event) {
+        throw new IllegalStateException("writer is full");
+      }
+    };
+    task.subscribe("results", subscriber);
+
+    task.start();
+    final long deadline = System.currentTimeMillis() + 30000;
+    while (!task.isDone() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    assertTrue(task.isDone());
+    assertEquals(0, seen.size());
+    assertFalse(seen.contains(1L));
+  }
+
+  @Test public void dropsTweetsOnceTheQueueIsFull() throws Exception {
+    final BlockingQueue<Status> arrived = new ArrayBlockingQueue<Status>(5);
+    task = new StreamingTweetsTask(local, ImmutableSet.of("years old"), seen, arrived, service);
+
+    // a subscriber that blocks keeps the task from draining the queue.
+    final CountDownLatch blocked = new CountDownLatch(1);
+    subscriber = new EventSubscriber<ResultPackage>() {
+      @Override public void onEvent(ResultPackage event) {
+        blocked.countDown();
+        try {
+          closed.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    task.subscribe("results", subscriber);
+
+    task.start();
+    assertTrue(blocked.await(30, TimeUnit.SECONDS));
+    final long deadline = System.currentTimeMillis() + 30000;
+    while (arrived.remainingCapacity() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(0, arrived.remainingCapacity());
+    assertEquals(0, seen.size());
+  }
+
+  private void awaitSeen(int expected) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (seen.size() < expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(expected, seen.size());
+  }
+
+  private static String statusJson(long id, String text) {
+    return String.format("{\"created_at\":\"Sun Oct 16 10:00:%02d +0000 2011\",\"id\":%d,"
+        + "\"text\":\"%s\",\"user\":{\"id\":%d,\"name\":\"Student%d\","
+        + "\"screen_name\":\"user%d\",\"location\":\"Santa Cruz\"}}\r\n",
+        id % 60, id, text, id, id, id);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import com.google.common.collect.ImmutableMap;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import twitter4j.QueryResult;
+import twitter4j.Tweet;
+import twitter4j.User;
+
+/**
+ * Stubs of the twitter4j interfaces the tests need.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+final class Stubs {
+  private Stubs() {}
+
+  /**
+   * @return a stub of a twitter4j interface, whose getters return the given values.
+   */
+  static <T> T stub(Class<T> type, final Map<String, ?> values) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+        new InvocationHandler() {
+          @Override public Object invoke(Object proxy, Method method, Object[] args) {
+            final String name = method.getName();
+            if ("equals".equals(name))   { return proxy == args[0]; }
+            if ("hashCode".equals(name)) { return System.identityHashCode(proxy); }
+            if ("toString".equals(name)) { return values.toString(); }
+            if (values.containsKey(name)) { return values.get(name); }
+
+            final Class<?> returned = method.getReturnType();
+            if (returned == boolean.class) { return false; }
+            if (returned == long.class)    { return 0L; }
+            if (returned == double.class)  { return 0.0; }
+            return returned.isPrimitive() ? 0 : null;
+          }
+        }));
+  }
+
+  static Tweet tweet(long id) {
+    return stub(Tweet.class, ImmutableMap.of(
+        "getId", id,
+        "getFromUserId", id,
+        "getFromUser", "user" + id,
+        "getText", "I&apos;m " + (10 + id % 20) + " years old @friend http://t.co/" + id,
+        "getLocation", "Santa Cruz"));
+  }
+
+  static User user(long id) {
+    return stub(User.class, ImmutableMap.of(
+        "getId", id,
+        "getName", "studentNumber" + id,
+        "getScreenName", "user" + id));
+  }
+
+  static QueryResult result(List<Tweet> tweets) {
+    return stub(QueryResult.class, ImmutableMap.of("getTweets", tweets));
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter;
+
+import edu.ucsc.broadcast.BasicEventService;
+import edu.ucsc.broadcast.EventService;
+import edu.ucsc.broadcast.EventSubscriber;
+import edu.ucsc.broadcast.SyncDeliveryStrategy;
+import edu.ucsc.cli.util.Environment.AbstractConfiguration;
+import edu.ucsc.twitter.circuitbreaker.CircuitBreakerRegistry;
+import edu.ucsc.twitter.util.TwitterEnvironment;
+import edu.ucsc.twitter.util.TwitterEnvironmentProperties;
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole collector, from the search API to the results writer, against a
+ * {@link FakeTwitterServer}, so that changes to the pipeline can be measured without live
+ * credentials. The pipeline is put together the same way the "search for hostile tweets" and
+ * "search for tweets with demographics" commands do it, with the search backend chosen in the
+ * runtime configuration; it runs until the writer has collected the wanted number of tweets and
+ * written them, and then reports:
+ *
+ * <ul>
+ *   <li>tweets per second, from the first search until the writer is done;</li>
+ *   <li>the latency of each stage: the search (API calls and enrichment included), the writer,
+ *   and each API endpoint, as seen by the server;</li>
+ *   <li>API calls per collected tweet.</li>
+ * </ul>
+ *
+ * <p>Searches are made back to back, and the shared caches (seen tweets, search checkpoints, and
+ * user profiles) are kept in memory only, so a run neither reads nor changes the collector's
+ * files; results are written to {@code output/benchmark/}.</p>
+ *
+ * <p>Usage: {@code ThroughputHarness [hostile|demographics] [tweets] [latency ms] [error rate]
+ * [hourly limit|quotas] [tweets posted per second] [speedup]}. With {@code quotas}, the collector
+ * keeps the rate limits of the runtime configuration, so that its pacers and circuit breakers
+ * work as they do against Twitter; since those limits would make a run take hours, they are
+ * raised, and the breakers' and retries' timings shortened, by the speedup (100 by default).</p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class ThroughputHarness {
+  private static final long TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+  private final boolean hostile;
+  private final int     tweets;
+  private final Stage   search = new Stage();
+  private final Stage   writer = new Stage();
+
+  // the event bus only holds on to its subscribers weakly.
+  private EventSubscriber<ResultPackage> results;
+
+  /**
+   * @param hostile true to run the hostile tweets pipeline; false for the demographics one.
+   * @param tweets number of tweets the writer collects before it is done.
+   */
+  ThroughputHarness(boolean hostile, int tweets) {
+    this.hostile = hostile;
+    this.tweets  = tweets;
+  }
+
+  /**
+   * points the collector at the server, and keeps it from touching its files.
+   *
+   * @param hourlyLimit calls the collector is allowed per hour, per endpoint; if not positive,
+   *    the rate limits of the runtime configuration are kept.
+   */
+  static void configure(FakeTwitterServer server, int hourlyLimit) {
+    System.setProperty("twitter4j.searchBaseURL", server.getSearchBaseUrl());
+    System.setProperty("twitter4j.restBaseURL", server.getRestBaseUrl());
+    System.setProperty("twitter4j.user", "demodetect");
+    System.setProperty("twitter4j.password", "demodetect");
+
+    final AbstractConfiguration configuration =
+        TwitterEnvironment.getInstance().getAbstractConfiguration();
+    // the runtime configuration is only loaded when first read, which would undo the changes.
+    configuration.getProperty(TwitterEnvironmentProperties.SEARCH_PERIOD);
+    configuration.setProperty(TwitterEnvironmentProperties.SEEN_TWEETS_FILE, "");
+    configuration.setProperty(TwitterEnvironmentProperties.SEARCH_CHECKPOINTS_FILE, "");
+    configuration.setProperty(TwitterEnvironmentProperties.USER_CACHE_FILE, "");
+    configuration.setProperty(TwitterEnvironmentProperties.SEARCH_RECORD_FILE, "");
+    configuration.setProperty(TwitterEnvironmentProperties.SEARCH_REPLAY_FILE, "");
+    configuration.setProperty(TwitterEnvironmentProperties.SEARCH_PERIOD, "1");
+    if (hourlyLimit > 0) {
+      configuration.setProperty(TwitterEnvironmentProperties.SEARCH_RATE_LIMIT,
+          String.valueOf(hourlyLimit));
+      configuration.setProperty(TwitterEnvironmentProperties.REST_RATE_LIMIT,
+          String.valueOf(hourlyLimit));
+    }
+    TwitterEnvironment.getInstance().changeOutputFolder("output/benchmark/");
+  }
+
+  /**
+   * runs the collector's clock faster: the rate limits of the runtime configuration are raised
+   * by the speedup, and the timings of the circuit breakers and retries are shortened by it; so
+   * calls are paced, retried, and judged slow, just as they are at the configured quotas.
+   */
+  static void speedUp(int speedup) {
+    final TwitterEnvironment    environment   = TwitterEnvironment.getInstance();
+    final AbstractConfiguration configuration = environment.getAbstractConfiguration();
+    configuration.setProperty(TwitterEnvironmentProperties.SEARCH_RATE_LIMIT,
+        String.valueOf(environment.getSearchRateLimit() * speedup));
+    configuration.setProperty(TwitterEnvironmentProperties.REST_RATE_LIMIT,
+        String.valueOf(environment.getRestRateLimit() * speedup));
+    configuration.setProperty(TwitterEnvironmentProperties.RETRY_BASE_DELAY,
+        String.valueOf(environment.getRetryBaseDelay() / speedup));
+    configuration.setProperty(TwitterEnvironmentProperties.RETRY_MAX_DELAY,
+        String.valueOf(environment.getRetryMaxDelay() / speedup));
+    configuration.setProperty(TwitterEnvironmentProperties.RETRY_DEADLINE,
+        String.valueOf(environment.getRetryDeadline() / speedup));
+
+    for (String each : new String[]{CircuitBreakerRegistry.SEARCH,
+        CircuitBreakerRegistry.LOOKUP}) {
+      final long slow  = environment.getCircuitBreakerSlowCallDuration(each);
+      final long retry = environment.getCircuitBreakerRetryThreshold(each);
+      configuration.setProperty(TwitterEnvironmentProperties.circuitBreakerProperty(each,
+          TwitterEnvironmentProperties.SLOW_CALL_DURATION), String.valueOf(slow / speedup));
+      configuration.setProperty(TwitterEnvironmentProperties.circuitBreakerProperty(each,
+          TwitterEnvironmentProperties.RETRY_THRESHOLD), String.valueOf(retry / speedup));
+    }
+  }
+
+  /**
+   * runs the pipeline until the writer is done, or the run times out.
+   *
+   * @return the time the run took, in nanoseconds.
+   */
+  long run() throws InterruptedException {
+    TwitterEnvironment.getInstance().changeMaxTweetsToBeExtracted(tweets);
+    TwitterEnvironment.getInstance().changeMaxNumberOfTweetsPerFile(tweets);
+    new File(TwitterEnvironment.getInstance().getOutputFoldername()).mkdirs();
+
+    final CountDownLatch done    = new CountDownLatch(1);
+    final EventService   service = new BasicEventService(new SyncDeliveryStrategy());
+    final TweetsSearch   timed   = timed(TweetsSearches.fromEnvironment(hostile
+        ? HostileTweetsSearchingPeriodicTask.DEFAULT
+        : TweetsWithDemogSearchingPeriodicTask.DEFAULT));
+    final PeriodicTask   task    = hostile
+        ? new HostileTweetsSearchingPeriodicTask(timed, service)
+        : new TweetsWithDemogSearchingPeriodicTask(timed, service);
+    results = timed(hostile
+        ? new BullyingResultsWriter()
+        : new DemographicsResultsWriter(), done);
+    task.subscribe("results", results);
+
+    final long start = System.nanoTime();
+    task.start();
+    done.await(TIMEOUT, TimeUnit.MILLISECONDS);
+    final long elapsed = System.nanoTime() - start;
+    task.shutdownNow();
+    return elapsed;
+  }
+
+  private TweetsSearch timed(final TweetsSearch delegate) {
+    return new TweetsSearch() {
+      @Override public ResultPackage search(int limit, Set<String> keywords) {
+        final long start = System.nanoTime();
+        final ResultPackage result = delegate.search(limit, keywords);
+        search.record(System.nanoTime() - start, result.get(ResultPackage.Kind.TWEET).size());
+        return result;
+      }
+    };
+  }
+
+  private EventSubscriber<ResultPackage> timed(final EventSubscriber<ResultPackage> delegate,
+      final CountDownLatch done) {
+    return new EventSubscriber<ResultPackage>() {
+      @Override public void onEvent(ResultPackage event) {
+        final long start    = System.nanoTime();
+        boolean    finished = false;
+        try {
+          delegate.onEvent(event);
+        } catch (IllegalStateException e) {
+          // the writers say they are done (i.e., they wrote their results) by throwing.
+          finished = true;
+          throw e;
+        } finally {
+          writer.record(System.nanoTime() - start, event.get(ResultPackage.Kind.TWEET).size());
+          if (finished) { done.countDown(); }
+        }
+      }
+    };
+  }
+
+  /**
+   * @return what was measured in a run, and how long it took.
+   */
+  String report(long elapsed, FakeTwitterServer server) {
+    final double seconds = elapsed / 1e9;
+    final StringBuilder report = new StringBuilder(String.format(
+        "%s: %d tweets in %.1f s, %.1f tweets/s, %.2f API calls per tweet%n",
+        hostile ? "hostile" : "demographics", writer.tweets, seconds, writer.tweets / seconds,
+        writer.tweets == 0 ? 0.0 : server.getCalls() / (double) writer.tweets));
+    report.append(String.format("  search: %s%n", search));
+    report.append(String.format("  writer: %s%n", writer));
+    report.append(String.format("  breakers: %s%n",
+        CircuitBreakerRegistry.shared().getStatuses()));
+    for (Map.Entry<String, FakeTwitterServer.Endpoint> each : server.getEndpoints().entrySet()) {
+      if (each.getValue().calls.get() == 0) { continue; }
+      report.append(String.format("  api %s: %s%n", each.getKey(), each.getValue()));
+    }
+
+    return report.toString();
+  }
+
+  /**
+   * Calls to a stage of the pipeline, and the tweets that went through them.
+   */
+  private static class Stage {
+    private long calls;
+    private long tweets;
+    private long nanos;
+    private long max;
+
+    synchronized void record(long elapsed, int count) {
+      calls++;
+      tweets += count;
+      nanos  += elapsed;
+      max     = Math.max(max, elapsed);
+    }
+
+    @Override public synchronized String toString() {
+      return String.format("%d calls, %d tweets, %.1f ms mean, %.1f ms max", calls, tweets,
+          calls == 0 ? 0.0 : nanos / 1e6 / calls, max / 1e6);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    final boolean hostile         = args.length < 1 || !"demographics".equals(args[0]);
+    final int     tweets          = args.length > 1 ? Integer.valueOf(args[1]) : 2000;
+    final long    latency         = args.length > 2 ? Long.valueOf(args[2]) : 50L;
+    final double  errorRate       = args.length > 3 ? Double.valueOf(args[3]) : 0.0;
+    final boolean quotas          = args.length > 4 && "quotas".equals(args[4]);
+    final int     hourlyLimit     = args.length > 4 && !quotas ? Integer.valueOf(args[4]) : 100000;
+    final int     tweetsPerSecond = args.length > 5 ? Integer.valueOf(args[5]) : 2000;
+    final int     speedup         = args.length > 6 ? Integer.valueOf(args[6]) : 100;
+
+    final FakeTwitterServer server = new FakeTwitterServer(latency, errorRate, hourlyLimit,
+        tweetsPerSecond);
+    server.start();
+    try {
+      configure(server, quotas ? 0 : hourlyLimit);
+      if (quotas) { speedUp(speedup); }
+      final ThroughputHarness harness = new ThroughputHarness(hostile, tweets);
+      final long elapsed = harness.run();
+      System.out.println();
+      System.out.print(harness.report(elapsed, server));
+    } finally {
+      server.stop();
+    }
+
+    // the collector's executors are not daemons.
+    System.exit(0);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.circuitbreaker;
+
+import edu.ucsc.twitter.util.TwitterEnvironment;
+import org.junit.Test;
+
+import static edu.ucsc.twitter.circuitbreaker.CircuitBreakerRegistry.LOOKUP;
+import static edu.ucsc.twitter.circuitbreaker.CircuitBreakerRegistry.SEARCH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link CircuitBreakerRegistry}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class CircuitBreakerRegistryTest {
+  private final TwitterEnvironment     environment = TwitterEnvironment.getInstance();
+  private final CircuitBreakerRegistry registry    = new CircuitBreakerRegistry(environment,
+      "demodetect");
+
+  @Test public void handsOutOneBreakerPerEndpointAndCredential() {
+    assertSame(registry.get(SEARCH), registry.get(SEARCH, "demodetect"));
+    assertNotSame(registry.get(SEARCH), registry.get(LOOKUP));
+    assertNotSame(registry.get(LOOKUP), registry.get(LOOKUP, "someone"));
+  }
+
+  @Test public void opensOnlyTheBreakerOfTheFailingEndpoint() {
+    // user lookups keep failing; searches, and the lookups made by someone else, do not.
+    final int calls = environment.getCircuitBreakerMinimumCalls(LOOKUP);
+    for (int i = 0; i < calls; i++) {
+      registry.get(SEARCH).callStarted();
+      registry.get(SEARCH).callSucceeded();
+      registry.get(LOOKUP).callStarted();
+      registry.get(LOOKUP).callFailed(new RuntimeException("over capacity"));
+      registry.get(LOOKUP, "someone").callStarted();
+      registry.get(LOOKUP, "someone").callSucceeded();
+    }
+
+    assertEquals(CircuitBreakerStatus.CLOSED, registry.get(SEARCH).status());
+    assertEquals(CircuitBreakerStatus.OPENED, registry.get(LOOKUP).status());
+    assertEquals(CircuitBreakerStatus.CLOSED, registry.get(LOOKUP, "someone").status());
+    assertEquals(3, registry.getStatuses().size());
+    assertEquals(CircuitBreakerStatus.OPENED, registry.getStatuses().get("lookup/demodetect"));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void blocksCallsOnceOpen() {
+    for (int i = 0; i < environment.getCircuitBreakerMinimumCalls(LOOKUP); i++) {
+      registry.get(LOOKUP).callStarted();
+      registry.get(LOOKUP).callFailed(new RuntimeException("over capacity"));
+    }
+
+    registry.get(LOOKUP).callStarted();
+  }
+
+  @Test public void takesTheThresholdsOfEachEndpoint() {
+    for (String each : new String[]{SEARCH, LOOKUP}) {
+      final CircuitBreaker<RuntimeException> breaker = registry.get(each);
+      assertEquals(environment.getCircuitBreakerRetryThreshold(each),
+          breaker.getRetryThreshold());
+      assertEquals(environment.getCircuitBreakerFailedCallThreshold(each),
+          breaker.getFailedCallThreshold());
+    }
+  }
+}
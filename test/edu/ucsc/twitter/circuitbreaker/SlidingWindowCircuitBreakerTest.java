@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.circuitbreaker;
+
+import edu.ucsc.twitter.util.RateLimitPacer;
+import edu.ucsc.twitter.util.RetryPolicy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SlidingWindowCircuitBreaker}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class SlidingWindowCircuitBreakerTest {
+  private final long[] clock = {0};
+
+  private SlidingWindowCircuitBreaker.Builder builder(String name) {
+    return new SlidingWindowCircuitBreaker.Builder(name) {
+      @Override public SlidingWindowCircuitBreaker build() {
+        return new SlidingWindowCircuitBreaker(this) {
+          @Override protected long now() { return clock[0]; }
+        };
+      }
+    }.windowSize(50).minimumCalls(10).failedCallThreshold(1).failureRateThreshold(50)
+        .slowCallRateThreshold(80).slowCallDuration(5, TimeUnit.SECONDS).trialCalls(3)
+        .retryThreshold(1, TimeUnit.MINUTES);
+  }
+
+  @Test public void staysClosedOnANoisyNetwork() {
+    // 1 in 10 calls fails.
+    final SlidingWindowCircuitBreaker noisy  = builder("noisy").build();
+    final Random                      random = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      noisy.callStarted();
+      clock[0] += TimeUnit.MILLISECONDS.toNanos(50);
+      if (random.nextInt(10) == 0) {
+        noisy.callFailed(new RuntimeException("connection reset"));
+      } else {
+        noisy.callSucceeded();
+      }
+    }
+
+    assertEquals(CircuitBreakerStatus.CLOSED, noisy.status());
+    assertEquals(0L, noisy.getBlockedCalls());
+  }
+
+  @Test public void opensAndBlocksCallsOnAnOutage() {
+    final SlidingWindowCircuitBreaker outage = builder("outage").build();
+    int failed = 0;
+    while (outage.status() == CircuitBreakerStatus.CLOSED) {
+      outage.callStarted();
+      outage.callFailed(new RuntimeException("over capacity"));
+      failed++;
+    }
+    assertEquals(10, failed);
+    assertEquals(100.0, outage.getFailureRate(), 0.0);
+
+    assertEquals(5, blocked(outage, 5));
+    assertEquals(5L, outage.getBlockedCalls());
+  }
+
+  @Test public void closesOnceTheTrialCallsSucceed() {
+    final SlidingWindowCircuitBreaker outage = openedBreaker();
+
+    clock[0] += TimeUnit.MINUTES.toNanos(1);
+    // 3 trial calls go through; the rest are blocked until they are back.
+    assertEquals(2, blocked(outage, 5));
+    assertEquals(CircuitBreakerStatus.HALF_OPENED, outage.status());
+    for (int i = 0; i < 3; i++) {
+      outage.callSucceeded();
+    }
+
+    assertEquals(CircuitBreakerStatus.CLOSED, outage.status());
+    assertEquals(0.0, outage.getFailureRate(), 0.0);
+    assertEquals(TimeUnit.MINUTES.toNanos(1), outage.getStatistics().getAvgRecoveryTime());
+  }
+
+  @Test public void opensAgainIfTheTrialCallsFail() {
+    final SlidingWindowCircuitBreaker outage = openedBreaker();
+
+    clock[0] += TimeUnit.MINUTES.toNanos(1);
+    for (int i = 0; i < 3; i++) {
+      outage.callStarted();
+      outage.callFailed(new RuntimeException("over capacity"));
+    }
+
+    assertEquals(CircuitBreakerStatus.OPENED, outage.status());
+    assertEquals(1, blocked(outage, 1));
+  }
+
+  @Test public void opensOnASlowEndpoint() {
+    // calls succeed, but take 6 s each.
+    final SlidingWindowCircuitBreaker slowEndpoint = builder("slow").build();
+    int slowCalls = 0;
+    while (slowEndpoint.status() == CircuitBreakerStatus.CLOSED) {
+      slowEndpoint.callStarted();
+      clock[0] += TimeUnit.SECONDS.toNanos(6);
+      slowEndpoint.callSucceeded();
+      slowCalls++;
+    }
+
+    assertEquals(10, slowCalls);
+    assertEquals(0.0, slowEndpoint.getFailureRate(), 0.0);
+    assertEquals(100.0, slowEndpoint.getSlowCallRate(), 0.0);
+  }
+
+  @Test public void timesCallsAnsweredOnAnotherThread() throws Exception {
+    final SlidingWindowCircuitBreaker slowEndpoint = builder("slow").build();
+    final ExecutorService             callbacks    = Executors.newSingleThreadExecutor();
+    try {
+      for (int i = 0; i < 10; i++) {
+        final long startedAt = slowEndpoint.callSent();
+        clock[0] += TimeUnit.SECONDS.toNanos(6);
+        callbacks.submit(new Runnable() {
+          @Override public void run() {
+            slowEndpoint.callSucceeded(startedAt);
+          }
+        }).get();
+      }
+    } finally {
+      callbacks.shutdownNow();
+    }
+
+    assertEquals(CircuitBreakerStatus.OPENED, slowEndpoint.status());
+    assertEquals(100.0, slowEndpoint.getSlowCallRate(), 0.0);
+  }
+
+  @Test public void leavesNoStartTimeBehindForTheNextCall() {
+    final SlidingWindowCircuitBreaker breaker = builder("async").build();
+    final long startedAt = breaker.callSent();
+    clock[0] += TimeUnit.SECONDS.toNanos(6);
+    breaker.callSucceeded(startedAt);
+
+    // a blocking call on the same thread is timed from its own start only.
+    breaker.callStarted();
+    breaker.callSucceeded();
+
+    assertEquals(50.0, breaker.getSlowCallRate(), 0.0);
+  }
+
+  /**
+   * the shipped settings, sped up 100 times: the search pacer lets a call go every ~103 ms, and
+   * calls over 100 ms are slow. With 3 pages in flight, each waits ~300 ms for its token; a
+   * breaker timing that wait opens, while one timing the calls only does not.
+   */
+  @Test public void doesNotCountTheWaitForATokenAsSlow() throws Exception {
+    final RateLimitPacer pacer    = new RateLimitPacer(350, 36, TimeUnit.SECONDS, 3);
+    final RetryPolicy    retries  = new RetryPolicy(1, 0, 0, 0, TimeUnit.MILLISECONDS, 0);
+    final SlidingWindowCircuitBreaker guarded = SlidingWindowCircuitBreaker.builder("guarded")
+        .slowCallDuration(100, TimeUnit.MILLISECONDS).build();
+    final SlidingWindowCircuitBreaker outer   = SlidingWindowCircuitBreaker.builder("outer")
+        .slowCallDuration(100, TimeUnit.MILLISECONDS).build();
+    final Callable<String> search = new Callable<String>() {
+      @Override public String call() throws Exception {
+        return "page";
+      }
+    };
+
+    final ExecutorService pages = Executors.newFixedThreadPool(3);
+    try {
+      final List<Future<Integer>> made = pages.invokeAll(Collections.nCopies(3,
+          new Callable<Integer>() {
+            @Override public Integer call() throws Exception {
+              int calls = 0;
+              for (int i = 0; i < 8; i++) {
+                // timed from before the token is taken, as the breaker used to be.
+                try {
+                  outer.callStarted();
+                } catch (CallBlockedException blocked) {
+                  continue;
+                }
+                retries.call(CircuitBreakerRegistry.guarded(guarded, search), null, pacer);
+                outer.callSucceeded();
+                calls++;
+              }
+              return calls;
+            }
+          }));
+      for (Future<Integer> each : made) {
+        assertTrue(each.get() > 0);
+      }
+    } finally {
+      pages.shutdown();
+    }
+
+    assertEquals(CircuitBreakerStatus.CLOSED, guarded.status());
+    assertEquals(0.0, guarded.getSlowCallRate(), 0.0);
+    assertEquals(0L, guarded.getBlockedCalls());
+    assertEquals(CircuitBreakerStatus.OPENED, outer.status());
+  }
+
+  private SlidingWindowCircuitBreaker openedBreaker() {
+    final SlidingWindowCircuitBreaker outage = builder("outage").build();
+    while (outage.status() == CircuitBreakerStatus.CLOSED) {
+      outage.callStarted();
+      outage.callFailed(new RuntimeException("over capacity"));
+    }
+    return outage;
+  }
+
+  /**
+   * @return how many of the given calls the breaker blocked.
+   */
+  private static int blocked(SlidingWindowCircuitBreaker breaker, int calls) {
+    int blocked = 0;
+    for (int i = 0; i < calls; i++) {
+      try {
+        breaker.callStarted();
+      } catch (CallBlockedException expected) {
+        blocked++;
+      }
+    }
+    return blocked;
+  }
+}
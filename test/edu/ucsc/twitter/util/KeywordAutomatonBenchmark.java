@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import edu.ucsc.cli.util.Strings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Times {@link KeywordAutomaton#findMembers(String, Set)} against
+ * {@link Strings#findMembers(String, Set)} over a corpus of random tweets. It is not a test; run
+ * it by hand with the test classpath.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class KeywordAutomatonBenchmark {
+  public static void main(String[] args) {
+    final String[] dictionary = KeywordAutomatonTest.DICTIONARY;
+    final KeywordAutomaton automaton = KeywordAutomaton.compile(Arrays.asList(dictionary));
+    final Random random = new Random(618L);
+    final List<String> corpus = new ArrayList<String>();
+    for (int i = 0; i < 100000; i++) {
+      corpus.add(KeywordAutomatonTest.randomTweet(random));
+    }
+
+    final Set<String> all = new LinkedHashSet<String>(Arrays.asList(dictionary));
+    for (int round = 0; round < 3; round++) {
+      long start = System.nanoTime();
+      long hits  = 0;
+      for (String each : corpus) {
+        hits += Strings.findMembers(each, all).length();
+      }
+      final long naiveTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      long automatonHits = 0;
+      for (String each : corpus) {
+        automatonHits += automaton.findMembers(each, all).length();
+      }
+      final long automatonTime = System.nanoTime() - start;
+
+      System.out.println(String.format(
+          "round %d: findMembers %d chars in %.2f ms, automaton %d chars in %.2f ms (%.1fx)",
+          round, hits, naiveTime / 1e6, automatonHits, automatonTime / 1e6,
+          (double) naiveTime / automatonTime));
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import edu.ucsc.cli.util.Strings;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link KeywordAutomaton} finds the same keywords as
+ * {@link Strings#findMembers(String, Set)}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class KeywordAutomatonTest {
+  static final String[] DICTIONARY = {
+      "I'm 18", "I am 8", "Im 8", "ass", "F**", "stupid", "crybaby", "cry", "bitch", "he",
+      "she", "his", "hers", "Été", "", "İstanbul"
+  };
+
+  @Test public void findsWhatStringsFindsInRandomTweets() {
+    final KeywordAutomaton automaton = KeywordAutomaton.compile(Arrays.asList(DICTIONARY));
+    final Random random = new Random(618L);
+    for (int i = 0; i < 20000; i++) {
+      final String tweet = randomTweet(random);
+
+      final Set<String> keywords = new LinkedHashSet<String>();
+      final int sample = 1 + random.nextInt(6);
+      for (int j = 0; j < sample; j++) {
+        keywords.add(random.nextInt(10) == 0 ? "not compiled"
+            : DICTIONARY[random.nextInt(DICTIONARY.length)]);
+      }
+
+      assertEquals(tweet + " " + keywords, Strings.findMembers(tweet, keywords),
+          automaton.findMembers(tweet, keywords));
+    }
+  }
+
+  @Test public void findsOverlappingKeywordsCaseInsensitively() {
+    final KeywordAutomaton automaton = KeywordAutomaton.compile(
+        Arrays.asList("he", "she", "his", "hers"));
+    assertEquals(new LinkedHashSet<String>(Arrays.asList("he", "she", "hers")),
+        automaton.findAll("USHERS"));
+    assertEquals(2, automaton.count("ushers", 2));
+    assertEquals(0, automaton.count(null, 2));
+  }
+
+  @Test public void knowsWhichKeywordsWereCompiled() {
+    final KeywordAutomaton automaton = KeywordAutomaton.compile(Arrays.asList("cry", "crybaby"));
+    assertTrue(automaton.isCompiled("crybaby"));
+    assertFalse(automaton.isCompiled("baby"));
+    assertEquals("baby", automaton.findMembers("such a crybaby",
+        new LinkedHashSet<String>(Arrays.asList("baby"))));
+  }
+
+  static String randomTweet(Random random) {
+    final String alphabet = "aAsSeEhHiIrRcCyYbBtT'mM 18*FéÉıİn";
+    final StringBuilder tweet = new StringBuilder();
+    final int length = random.nextInt(60);
+    for (int j = 0; j < length; j++) {
+      if (random.nextInt(8) == 0) {
+        tweet.append(DICTIONARY[random.nextInt(DICTIONARY.length)].toUpperCase());
+      } else {
+        tweet.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+    }
+
+    return tweet.toString();
+  }
+}
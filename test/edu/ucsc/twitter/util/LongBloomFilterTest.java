@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LongBloomFilter}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class LongBloomFilterTest {
+  private static final int EXPECTED = 100000;
+
+  private File saved;
+
+  @Before public void setUp() throws IOException {
+    saved = File.createTempFile("seen", ".bloom");
+    saved.delete();
+  }
+
+  @After public void tearDown() {
+    saved.delete();
+  }
+
+  @Test public void remembersElementsAcrossRestarts() throws IOException {
+    final Random random = new Random(29L);
+    final LongBloomFilter filter = LongBloomFilter.mapped(saved, EXPECTED, 0.001);
+    final long first = random.nextLong();
+    for (int i = 0; i < EXPECTED; i++) {
+      filter.put(first + i);
+    }
+    filter.force();
+
+    // the saved sizing wins over the one given when reopening.
+    final LongBloomFilter reopened = LongBloomFilter.mapped(saved, 1, 0.5);
+    for (int i = 0; i < EXPECTED; i++) {
+      assertTrue(reopened.mightContain(first + i));
+    }
+
+    int falsePositives = 0;
+    for (int i = 0; i < EXPECTED; i++) {
+      if (reopened.mightContain(random.nextLong())) { falsePositives++; }
+    }
+    assertTrue("false positives: " + falsePositives, falsePositives < EXPECTED * 0.002);
+  }
+
+  @Test public void putTellsWhetherAnElementIsNew() {
+    final LongBloomFilter filter = LongBloomFilter.create(1000, 0.001);
+    assertFalse(filter.mightContain(42L));
+    assertTrue(filter.put(42L));
+    assertFalse(filter.put(42L));
+    assertTrue(filter.mightContain(42L));
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link LongHashSet} against a {@code HashSet<Long>}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class LongHashSetTest {
+  @Test public void behavesLikeAHashSet() {
+    final Random      random   = new Random(17L);
+    final Set<Long>   expected = new HashSet<Long>();
+    final LongHashSet actual   = new LongHashSet();
+
+    for (int i = 0; i < 200000; i++) {
+      final long each = random.nextBoolean() ? random.nextInt(100000) : random.nextLong();
+      assertEquals(expected.add(each), actual.add(each));
+    }
+    for (int i = 0; i < 100000; i++) {
+      final long each = random.nextInt(200000);
+      assertEquals(expected.contains(each), actual.contains(each));
+    }
+
+    final long[] elements = actual.toArray();
+    Arrays.sort(elements);
+    assertEquals(expected.size(), actual.size());
+    assertEquals(expected.size(), elements.length);
+    for (long each : elements) {
+      assertTrue(expected.contains(each));
+    }
+  }
+
+  @Test public void tracksZeroApart() {
+    final LongHashSet set = new LongHashSet(0);
+    assertFalse(set.contains(0L));
+    assertTrue(set.add(0L));
+    assertFalse(set.add(0L));
+    assertTrue(set.contains(0L));
+    assertEquals(1, set.size());
+    assertEquals(0L, set.toArray()[0]);
+  }
+}
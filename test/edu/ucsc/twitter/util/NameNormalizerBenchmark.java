@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times {@link NameNormalizer}, with and without its cache, against the regex based
+ * implementation it replaced. It is not a test; run it by hand with the test classpath.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class NameNormalizerBenchmark {
+  public static void main(String[] args) {
+    final Random random = new Random(409L);
+    final List<String> names = NameNormalizerTest.randomNames(random, 100000);
+
+    // a collection run sees the same few users over and over.
+    final List<String> run = new ArrayList<String>();
+    for (int i = 0; i < 200000; i++) {
+      run.add(names.get((int) Math.abs(random.nextGaussian() * 500) % names.size()));
+    }
+
+    for (int round = 0; round < 3; round++) {
+      long chars = 0;
+      long start = System.nanoTime();
+      for (String each : run) {
+        chars += NameNormalizerTest.firstNameWithRegex(each).length();
+      }
+      final long regexTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (String each : run) {
+        chars -= NameNormalizer.scanFirstName(each).length();
+      }
+      final long scannerTime = System.nanoTime() - start;
+
+      final NameNormalizer normalizer = new NameNormalizer();
+      start = System.nanoTime();
+      for (String each : run) {
+        chars -= normalizer.firstName(each).length();
+      }
+      final long cachedTime = System.nanoTime() - start;
+
+      System.out.println(String.format(
+          "round %d: regex %.2f ms, scanner %.2f ms (%.1fx), cached %.2f ms (%.1fx), %s, "
+              + "check=%d",
+          round, regexTime / 1e6, scannerTime / 1e6, (double) regexTime / scannerTime,
+          cachedTime / 1e6, (double) regexTime / cachedTime, normalizer, chars));
+    }
+  }
+}
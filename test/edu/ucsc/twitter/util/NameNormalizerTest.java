@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link NameNormalizer} gives the same first names as the regex based
+ * implementation it replaced.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class NameNormalizerTest {
+  @Test public void scansWhatTheRegexFound() {
+    for (String each : randomNames(new Random(409L), 20000)) {
+      assertEquals(each, firstNameWithRegex(each), NameNormalizer.scanFirstName(each));
+    }
+  }
+
+  @Test public void humanizesCamelCasedNames() {
+    final NameNormalizer normalizer = new NameNormalizer();
+    assertEquals("Huascar", normalizer.firstName("huascarSanchez"));
+    assertEquals("UCSC", normalizer.firstName("UCSC student"));
+  }
+
+  @Test public void remembersRecentNames() {
+    final NameNormalizer normalizer = new NameNormalizer(1);
+    normalizer.firstName("huascarSanchez");
+    normalizer.firstName("huascarSanchez");
+    normalizer.firstName("bobJones");
+    normalizer.firstName("huascarSanchez");
+    assertEquals(1, normalizer.getHits());
+    assertEquals(3, normalizer.getMisses());
+  }
+
+  static List<String> randomNames(Random random, int count) {
+    final String alphabet = "aBcDeFgHIJk xyzZ_9.-éÉ";
+    final List<String> names = new ArrayList<String>();
+    while (names.size() < count) {
+      final StringBuilder name = new StringBuilder();
+      final int length = 1 + random.nextInt(20);
+      for (int j = 0; j < length; j++) {
+        name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+
+      // names made of spaces only make the regex based version fail.
+      if (name.toString().trim().length() == 0) { continue; }
+
+      names.add(name.toString());
+    }
+
+    return names;
+  }
+
+  /**
+   * the regex based implementation {@link NameNormalizer} replaced.
+   */
+  static String firstNameWithRegex(String word) {
+    Pattern pattern = Pattern.compile("([A-Z]|[a-z])[a-z]*");
+
+    List<String> tokens = Lists.newArrayList();
+    Matcher matcher = pattern.matcher(word);
+    String acronym = "";
+    while (matcher.find()) {
+      String found = matcher.group();
+      if (found.matches("^[A-Z]$")) {
+        acronym += found;
+      } else {
+        if (acronym.length() > 0) {
+          tokens.add(acronym);
+          acronym = "";
+        }
+        tokens.add(found.toLowerCase());
+      }
+    }
+    if (acronym.length() > 0) {
+      tokens.add(acronym);
+    }
+    if (tokens.size() > 0) {
+      final String targetString = tokens.remove(0);
+      String humanisedString = Character.toUpperCase(targetString.charAt(0)) + targetString
+          .substring(1);
+      for (String s : tokens) {
+        humanisedString += " " + s;
+      }
+      return humanisedString.split(" ")[0];
+    }
+
+    return word.split(" ")[0];
+  }
+}
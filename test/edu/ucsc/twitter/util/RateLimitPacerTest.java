@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link RateLimitPacer}, on a fake clock that moves forward whenever the pacer
+ * sleeps.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class RateLimitPacerTest {
+  private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+  @Test public void spreadsCallsOverTheWindow() {
+    final FakePacer pacer = new FakePacer(150, 3);
+
+    // a collector calling as fast as it can, for three hours; the API has 150 calls per hour.
+    int  remaining = 150;
+    long resetAt   = HOUR;
+    int  rejected  = 0;
+    final int[] perHour = new int[3];
+    while (pacer.clock < 3 * HOUR) {
+      pacer.acquire();
+      if (pacer.clock >= 3 * HOUR) { break; }
+      if (pacer.clock >= resetAt) {
+        remaining = 150;
+        resetAt  += HOUR;
+      }
+
+      if (remaining == 0) {
+        rejected++;
+        pacer.pause(0, TimeUnit.MILLISECONDS);
+        continue;
+      }
+
+      remaining--;
+      perHour[(int) (pacer.clock / HOUR)]++;
+      pacer.update(remaining, 150, resetAt);
+      pacer.clock += 500; // the call itself.
+    }
+
+    assertEquals(0, rejected);
+    for (int each : perHour) {
+      assertTrue("calls in an hour: " + each, each >= 145 && each <= 150);
+    }
+    assertTrue(pacer.getDelayed() > pacer.getCalls() / 2);
+  }
+
+  @Test public void spreadsWhatIsLeftOverTheRestOfTheWindow() {
+    final FakePacer pacer = new FakePacer(150, 1);
+
+    // an hour that started with only 30 calls left.
+    pacer.update(30, 150, HOUR);
+    long first = -1;
+    for (int i = 0; i < 30; i++) {
+      pacer.acquire();
+      if (first < 0) { first = pacer.clock; }
+    }
+
+    assertEquals(0L, first);
+    assertTrue(pacer.clock >= TimeUnit.MINUTES.toMillis(55));
+    assertTrue(pacer.clock <= HOUR);
+  }
+
+  @Test public void allowsABurstThenPaces() {
+    final FakePacer pacer = new FakePacer(60, 3);
+    for (int i = 0; i < 3; i++) {
+      pacer.acquire();
+    }
+    assertEquals(0L, pacer.clock);
+    assertEquals(0L, pacer.getDelayed());
+
+    pacer.acquire();
+    assertEquals(TimeUnit.MINUTES.toMillis(1), pacer.clock);
+    assertEquals(1L, pacer.getDelayed());
+  }
+
+  @Test public void waitsForTheResetOnceTheQuotaIsGone() {
+    final FakePacer pacer = new FakePacer(150, 3);
+    pacer.update(0, 150, TimeUnit.MINUTES.toMillis(20));
+
+    // no tokens are left over from before the pause; the first one takes an interval to come.
+    pacer.acquire();
+    assertEquals(TimeUnit.MINUTES.toMillis(20) + HOUR / 150, pacer.clock);
+  }
+
+  @Test public void pausesForTheGivenDelay() {
+    final FakePacer pacer = new FakePacer(150, 3);
+    pacer.pause(30, TimeUnit.SECONDS);
+
+    pacer.acquire();
+    assertEquals(TimeUnit.SECONDS.toMillis(30) + HOUR / 150, pacer.clock);
+  }
+
+  @Test public void takesNoSecondTokenForAPrepaidCall() throws Exception {
+    final FakePacer pacer = new FakePacer(60, 1);
+    pacer.acquire();
+    assertEquals(0L, pacer.clock);
+
+    pacer.prepaid(new Callable<Void>() {
+      @Override public Void call() {
+        pacer.acquire(); // free, its token was taken above.
+        return null;
+      }
+    }).call();
+    assertEquals(0L, pacer.clock);
+    assertEquals(1L, pacer.getCalls());
+
+    pacer.acquire();
+    assertEquals(TimeUnit.MINUTES.toMillis(1), pacer.clock);
+  }
+
+  /**
+   * an hourly pacer whose clock only moves when it sleeps, or when told to.
+   */
+  private static class FakePacer extends RateLimitPacer {
+    long clock;
+
+    FakePacer(int limit, int burst) {
+      super(limit, 1, TimeUnit.HOURS, burst);
+    }
+
+    @Override protected long now() {
+      return clock;
+    }
+
+    @Override protected void sleep(long millis) {
+      clock += millis;
+    }
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+import twitter4j.User;
+import twitter4j.json.DataObjectFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link RecordingTwitter} and {@link ReplayingTwitter}: API calls are recorded
+ * against a stub client, on a fake clock, and played back without it.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class ReplayingTwitterTest {
+  private static final long SECOND = TimeUnit.SECONDS.toMillis(1);
+
+  private final long[]        clock    = {1300000000000L};
+  private final AtomicInteger shutdown = new AtomicInteger();
+
+  private File archive;
+
+  @Before public void setUp() throws IOException {
+    archive = File.createTempFile("responses", ".archive");
+    archive.delete();
+  }
+
+  @After public void tearDown() {
+    archive.delete();
+  }
+
+  @Test public void playsBackWhatTheApiSentBack() throws Exception {
+    record(1, 2, -3, 4);
+
+    final Twitter replayed = ReplayingTwitter.replay(stub(), archive, 0);
+    assertEquals("user1", replayed.showUser(100).getScreenName());
+    assertEquals(2L, replayed.showUser("whatever is asked").getId());
+    try {
+      replayed.showUser(100);
+      fail("the recorded call failed");
+    } catch (TwitterException expected) {
+      assertEquals("no user -3", expected.getMessage());
+    }
+    assertEquals(4L, replayed.showUser(100).getId());
+
+    try {
+      replayed.showUser(100);
+      fail("every recorded call was played back");
+    } catch (TwitterException expected) {
+      // nothing left to play back.
+    }
+  }
+
+  @Test public void playsBackAtTheRecordedPace() throws Exception {
+    record(1, 2, 3); // a call every 3 seconds.
+
+    final ReplayingTwitter handler = replaying(2);
+    final Twitter          replayed = RecordingTwitter.proxy(handler);
+    final long             start    = clock[0];
+    replayed.showUser(1);
+    assertEquals(start, clock[0]);
+    replayed.showUser(2);
+    assertEquals(start + 3 * SECOND / 2, clock[0]);
+    replayed.showUser(3);
+    assertEquals(start + 3 * SECOND, clock[0]);
+    assertTrue(handler.isExhausted());
+    assertEquals(3, handler.getReplayed());
+  }
+
+  @Test public void playsBackAsFastAsAsked() throws Exception {
+    record(1, 2, 3);
+
+    final Twitter replayed = RecordingTwitter.proxy(replaying(0));
+    final long    start    = clock[0];
+    for (int i = 0; i < 3; i++) {
+      replayed.showUser(i);
+    }
+    assertEquals(start, clock[0]);
+  }
+
+  @Test public void ignoresAPartiallyWrittenCall() throws Exception {
+    record(1, 2);
+
+    // the collector was killed in the middle of a record.
+    final OutputStream out = new FileOutputStream(archive, true);
+    try {
+      out.write(new byte[]{0, 0, 1, 0, 42});
+    } finally {
+      out.close();
+    }
+
+    final ReplayingTwitter handler  = replaying(0);
+    final Twitter          replayed = RecordingTwitter.proxy(handler);
+    assertEquals(1L, replayed.showUser(1).getId());
+    assertEquals(2L, replayed.showUser(2).getId());
+    assertTrue(handler.isExhausted());
+  }
+
+  @Test public void appendsToAnExistingArchive() throws Exception {
+    record(1);
+    record(2);
+
+    final Twitter replayed = ReplayingTwitter.replay(stub(), archive, 0);
+    assertEquals(1L, replayed.showUser(1).getId());
+    assertEquals(2L, replayed.showUser(2).getId());
+  }
+
+  @Test public void leavesWhatDoesNotCallTheApiToTheClient() throws Exception {
+    record(1);
+
+    final Twitter replayed = ReplayingTwitter.replay(stub(), archive, 0);
+    replayed.shutdown();
+    assertEquals(1, shutdown.get());
+  }
+
+  @Test(expected = IOException.class)
+  public void refusesWhatIsNotAnArchive() throws IOException {
+    final OutputStream out = new FileOutputStream(archive);
+    try {
+      out.write("not an archive".getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+
+    ReplayingTwitter.replay(stub(), archive, 0);
+  }
+
+  /**
+   * records the lookup of each user, 3 seconds apart; negative ids are not found.
+   */
+  private void record(long... ids) throws IOException {
+    final Twitter recording = RecordingTwitter.proxy(new RecordingTwitter(stub(), archive) {
+      @Override protected long now() { return clock[0]; }
+    });
+
+    for (long each : ids) {
+      try {
+        recording.showUser(each);
+      } catch (TwitterException notFound) {
+        assertTrue(each < 0);
+      }
+      clock[0] += 3 * SECOND;
+    }
+    assertFalse(recording.toString().isEmpty());
+  }
+
+  private ReplayingTwitter replaying(double speed) throws IOException {
+    return new ReplayingTwitter(stub(), ResponseArchive.map(archive), speed) {
+      @Override protected long now() { return clock[0]; }
+      @Override protected void sleep(long millis) { clock[0] += millis; }
+    };
+  }
+
+  /**
+   * @return a client that finds users with positive ids, and counts its shutdowns.
+   */
+  private Twitter stub() {
+    return RecordingTwitter.proxy(new InvocationHandler() {
+      @Override public Object invoke(Object proxy, Method method, Object[] args)
+          throws Throwable {
+        if ("shutdown".equals(method.getName())) {
+          shutdown.incrementAndGet();
+          return null;
+        }
+        if ("toString".equals(method.getName())) { return "stub"; }
+        if (!"showUser".equals(method.getName())) {
+          throw new UnsupportedOperationException(method.getName());
+        }
+
+        final long id = (Long) args[0];
+        if (id < 0) { throw new TwitterException("no user " + id); }
+        return user(id);
+      }
+    });
+  }
+
+  private static User user(long id) throws TwitterException {
+    return DataObjectFactory.createUser(String.format(
+        "{\"id\":%d,\"screen_name\":\"user%d\",\"name\":\"User %d\"}", id, id, id));
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import twitter4j.TwitterException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link RetryPolicy}. Retries are checked on a fake clock; hedging, which waits on
+ * real threads, on the real one.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class RetryPolicyTest {
+  private final long[]          clock    = {0};
+  private final AtomicInteger   attempts = new AtomicInteger();
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  private final RetryPolicy policy = new RetryPolicy(5, 200, 2000, 5000, TimeUnit.MILLISECONDS,
+      0) {
+    @Override protected long now() { return clock[0]; }
+    @Override protected void sleep(long millis) { clock[0] += millis; }
+  };
+
+  @After public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test public void retriesTransientFailures() throws Exception {
+    // fails twice with a network issue, then succeeds.
+    final String found = policy.call(new Callable<String>() {
+      @Override public String call() throws Exception {
+        if (attempts.incrementAndGet() <= 2) { throw new IOException("connection reset"); }
+        return "found";
+      }
+    });
+
+    assertEquals("found", found);
+    assertEquals(3, attempts.get());
+    assertEquals(2, policy.getRetried());
+    assertTrue(clock[0] <= 200 + 400);
+  }
+
+  @Test public void doesNotRetryRejectedCalls() throws Exception {
+    try {
+      policy.call(new Callable<String>() {
+        @Override public String call() throws Exception {
+          attempts.incrementAndGet();
+          throw new TwitterException("rate limited", null, 420);
+        }
+      });
+      fail("the call was rejected");
+    } catch (TwitterException expected) {
+      assertEquals(1, attempts.get());
+    }
+  }
+
+  @Test public void givesUpAtTheDeadline() throws Exception {
+    try {
+      policy.call(new Callable<String>() {
+        @Override public String call() throws Exception {
+          attempts.incrementAndGet();
+          clock[0] += 1500; // a slow failure.
+          throw new TwitterException("over capacity", null, 503);
+        }
+      });
+      fail("the call kept failing");
+    } catch (TwitterException expected) {
+      assertTrue(attempts.get() >= 2 && attempts.get() < 5);
+      assertTrue(clock[0] <= 5000 + 1500);
+    }
+  }
+
+  @Test public void doesNotCountTheWaitForATokenAgainstTheDeadline() throws Exception {
+    // tokens are 10.3 s apart, as searches are at 350 calls per hour; far past the deadline.
+    final RateLimitPacer pacer = new RateLimitPacer(350, 1, TimeUnit.HOURS, 1) {
+      @Override public long reserve() { return 10286; }
+      @Override protected void sleep(long millis) { clock[0] += millis; }
+    };
+
+    // fails twice with a network issue, then succeeds.
+    final String found = policy.call(new Callable<String>() {
+      @Override public String call() throws Exception {
+        if (attempts.incrementAndGet() <= 2) { throw new IOException("connection reset"); }
+        return "found";
+      }
+    }, null, pacer);
+
+    assertEquals("found", found);
+    assertEquals(3, attempts.get());
+    assertEquals(2, policy.getRetried());
+  }
+
+  @Test public void hedgingCutsTheTail() throws Exception {
+    final long[] plain  = readsTakingSometimesLonger(0);
+    final long[] hedged = readsTakingSometimesLonger(90);
+
+    assertTrue(plain[197] >= TimeUnit.MILLISECONDS.toNanos(300));
+    assertTrue(hedged[197] < TimeUnit.MILLISECONDS.toNanos(150));
+  }
+
+  @Test public void doesNotHedgeWhileWaitingForAToken() throws Exception {
+    final CountingPacer     pacer = new CountingPacer();
+    final RetryPolicy       reads = new RetryPolicy(1, 0, 0, 10000, TimeUnit.MILLISECONDS, 90);
+    final AtomicInteger     calls = new AtomicInteger();
+    final Callable<Integer> read  = new Callable<Integer>() {
+      @Override public Integer call() throws Exception {
+        pacer.acquire(); // as a paced client does.
+        Thread.sleep(calls.incrementAndGet() <= 30 ? 50 : 5);
+        return 1;
+      }
+    };
+
+    // learns the usual latency, 50 ms, with plenty of tokens and without hedging.
+    for (int i = 0; i < 30; i++) {
+      reads.call(read, null, pacer);
+    }
+
+    // tokens are now 100 ms apart; far longer than the calls take.
+    pacer.wait = 100;
+    for (int i = 0; i < 10; i++) {
+      reads.call(read, executor, pacer);
+    }
+
+    assertEquals(0, reads.getHedged());
+    assertEquals(40, calls.get());
+    assertEquals(40, pacer.taken.get());
+  }
+
+  @Test public void hedgesOnceTheHedgedCallTookItsToken() throws Exception {
+    final CountingPacer     pacer  = new CountingPacer();
+    final RetryPolicy       reads  = new RetryPolicy(1, 0, 0, 10000, TimeUnit.MILLISECONDS, 90);
+    final AtomicInteger     calls  = new AtomicInteger();
+    final AtomicInteger     unpaid = new AtomicInteger();
+    final Callable<Integer> read   = new Callable<Integer>() {
+      @Override public Integer call() throws Exception {
+        // as a paced client does; the token should already be taken by then.
+        final int taken = pacer.takenHere.get();
+        pacer.acquire();
+        if (pacer.takenHere.get() != taken) { unpaid.incrementAndGet(); }
+        final int call = calls.incrementAndGet();
+        Thread.sleep(call <= 30 ? 50 : call == 31 ? 300 : 5);
+        return 1;
+      }
+    };
+
+    // learns the usual latency, 50 ms, without hedging; then a read is slow, and hedged.
+    for (int i = 0; i < 30; i++) {
+      reads.call(read, null, pacer);
+    }
+    reads.call(read, executor, pacer);
+
+    assertEquals(1, reads.getHedged());
+    assertEquals(0, unpaid.get());
+    assertEquals(32, pacer.taken.get());
+  }
+
+  /**
+   * @return the sorted latencies of 200 reads that usually take 5 ms, but every 20th one 300 ms.
+   */
+  private long[] readsTakingSometimesLonger(double percentile) throws Exception {
+    final RetryPolicy reads = new RetryPolicy(1, 0, 0, 1000, TimeUnit.MILLISECONDS,
+        percentile);
+    final AtomicInteger calls = new AtomicInteger();
+    final Callable<Integer> read = new Callable<Integer>() {
+      @Override public Integer call() throws Exception {
+        Thread.sleep(calls.incrementAndGet() % 20 == 0 ? 300 : 5);
+        return 1;
+      }
+    };
+
+    final long[] elapsed = new long[200];
+    for (int i = 0; i < elapsed.length; i++) {
+      final long start = System.nanoTime();
+      reads.call(read, executor);
+      elapsed[i] = System.nanoTime() - start;
+    }
+
+    Arrays.sort(elapsed);
+    return elapsed;
+  }
+
+  /**
+   * a pacer whose tokens are a fixed time apart, and which counts them.
+   */
+  private static class CountingPacer extends RateLimitPacer {
+    final AtomicInteger taken = new AtomicInteger();
+    volatile long       wait;
+
+    // tokens taken by the current thread.
+    final ThreadLocal<Integer> takenHere = new ThreadLocal<Integer>() {
+      @Override protected Integer initialValue() {
+        return 0;
+      }
+    };
+
+    CountingPacer() {
+      super(1000, 1, TimeUnit.HOURS, 1);
+    }
+
+    @Override public long reserve() {
+      taken.incrementAndGet();
+      takenHere.set(takenHere.get() + 1);
+      return wait;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.collect.Sets;
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SearchCheckpoints}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class SearchCheckpointsTest {
+  private File saved;
+
+  @Before public void setUp() throws IOException {
+    saved = File.createTempFile("search", ".checkpoints");
+    saved.delete();
+  }
+
+  @After public void tearDown() {
+    saved.delete();
+  }
+
+  @Test public void keysIgnoreOrderCaseAndSpacing() {
+    assertEquals(SearchCheckpoints.keyOf(Sets.newHashSet("I'm  18", "years old"), "en"),
+        SearchCheckpoints.keyOf(Sets.newHashSet(" Years Old", "i'm 18"), "en"));
+    assertFalse(SearchCheckpoints.keyOf(Sets.newHashSet("cry"), "en").equals(
+        SearchCheckpoints.keyOf(Sets.newHashSet("cry"), "es")));
+  }
+
+  @Test public void onlyMovesForward() {
+    final SearchCheckpoints checkpoints = new SearchCheckpoints();
+    checkpoints.advance("en:cry", 120L);
+    checkpoints.advance("en:cry", 100L);
+    assertEquals(120L, checkpoints.sinceId("en:cry"));
+    assertEquals(0L, checkpoints.sinceId("en:ass"));
+  }
+
+  @Test public void remembersOnlyTheMostRecentlyUsed() {
+    final SearchCheckpoints checkpoints = new SearchCheckpoints(2, null);
+    checkpoints.advance("en:a", 1L);
+    checkpoints.advance("en:b", 2L);
+    checkpoints.sinceId("en:a");
+    checkpoints.advance("en:c", 3L);
+    assertEquals(2, checkpoints.size());
+    assertEquals(0L, checkpoints.sinceId("en:b"));
+    assertEquals(1L, checkpoints.sinceId("en:a"));
+  }
+
+  @Test public void keepsCheckpointsAcrossRestarts() throws IOException {
+    final String key = SearchCheckpoints.keyOf(Sets.newHashSet("I'm 18", "years old"), "en");
+    final SearchCheckpoints checkpoints = new SearchCheckpoints(2, saved);
+    checkpoints.advance(key, 120L);
+    checkpoints.advance(SearchCheckpoints.keyOf(Sets.newHashSet("cry"), "en"), 7L);
+    assertTrue(checkpoints.save());
+    assertFalse(checkpoints.save());
+
+    final SearchCheckpoints restarted = new SearchCheckpoints(2, saved);
+    assertEquals(2, restarted.load());
+    assertEquals(120L, restarted.sinceId(key));
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SeenTweets}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class SeenTweetsTest {
+  private File file;
+
+  @Before public void setUp() throws IOException {
+    file = File.createTempFile("seen", ".tweets");
+    file.delete();
+  }
+
+  @After public void tearDown() {
+    file.delete();
+  }
+
+  @Test public void remembersIdsAcrossRestarts() throws IOException {
+    final SeenTweets first = SeenTweets.logged(file);
+    for (long id = 1000; id < 1100; id++) {
+      assertTrue(first.add(id));
+      assertFalse(first.add(id));
+    }
+    first.save();
+    assertEquals(800, file.length());
+
+    final SeenTweets restarted = SeenTweets.logged(file);
+    int again = 0;
+    for (long id = 1050; id < 1150; id++) {
+      if (restarted.add(id)) { again++; }
+    }
+    assertEquals(50, again);
+  }
+
+  @Test public void cutsOffAPartiallyWrittenId() throws IOException {
+    final SeenTweets first = SeenTweets.logged(file);
+    first.add(1001L);
+    first.add(1002L);
+    first.save();
+
+    // a crash in the middle of an append.
+    final OutputStream out = new FileOutputStream(file, true);
+    try {
+      out.write(new byte[]{1, 2, 3});
+    } finally {
+      out.close();
+    }
+
+    final SeenTweets restarted = SeenTweets.logged(file);
+    assertEquals(16, file.length());
+    restarted.add(2001L);
+    restarted.add(2002L);
+    restarted.save();
+
+    final SeenTweets again = SeenTweets.logged(file);
+    assertTrue(again.contains(1001L));
+    assertTrue(again.contains(1002L));
+    assertTrue(again.contains(2001L));
+    assertTrue(again.contains(2002L));
+    assertEquals(4, again.size());
+  }
+
+  @Test public void keepsOnlyTheNewestIds() throws IOException {
+    final SeenTweets seen = SeenTweets.logged(file, 10);
+    for (long id = 1; id <= 21; id++) {
+      seen.add(id);
+    }
+    seen.save();
+
+    assertEquals(10, seen.size());
+    assertFalse(seen.contains(11L));
+    assertTrue(seen.contains(12L));
+    assertTrue(seen.contains(21L));
+    assertEquals(80, file.length());
+
+    final SeenTweets restarted = SeenTweets.logged(file, 10);
+    assertEquals(10, restarted.size());
+    assertTrue(restarted.contains(21L));
+  }
+
+  @Test public void compactsWhatIsLoaded() throws IOException {
+    final SeenTweets seen = SeenTweets.logged(file, 100);
+    for (long id = 1; id <= 30; id++) {
+      seen.add(id);
+    }
+    seen.save();
+
+    assertEquals(10, SeenTweets.logged(file, 10).size());
+  }
+
+  @Test public void keepsOnlyTheNewestIdsInMemory() throws IOException {
+    final SeenTweets seen = new SeenTweets(5);
+    for (long id = 1; id <= 11; id++) {
+      seen.add(id);
+    }
+    seen.save();
+
+    assertEquals(5, seen.size());
+    assertTrue(seen.contains(7L));
+    assertFalse(seen.contains(6L));
+  }
+
+  @Test public void remembersIdsInABloomFilter() throws IOException {
+    final SeenTweets first = SeenTweets.filtered(file, 10000, 0.001);
+    for (long id = 1000; id < 1100; id++) {
+      first.add(id);
+    }
+    first.save();
+
+    final SeenTweets restarted = SeenTweets.filtered(file, 1, 0.5);
+    assertTrue(restarted.contains(1050L));
+    assertFalse(restarted.add(1099L));
+    assertTrue(restarted.add(5000L));
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link Symbols}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class SymbolsTest {
+  @Test public void internsEachSymbolOnce() {
+    final Symbols symbols = new Symbols(1);
+    final int[] ids = symbols.internAll(Arrays.asList("bob", "alice", "bob", "carol"));
+    assertArrayEquals(new int[]{0, 1, 0, 2}, ids);
+    assertEquals(3, symbols.size());
+    assertEquals("carol", symbols.resolve(2));
+  }
+
+  @Test public void internsNullAsNull() {
+    final Symbols symbols = new Symbols();
+    assertEquals(Symbols.NULL, symbols.intern(null));
+    assertNull(symbols.resolve(Symbols.NULL));
+    assertEquals(0, symbols.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownIds() {
+    new Symbols().resolve(7);
+  }
+
+  @Test public void rotatesTheSharedTableOnceFull() {
+    final Symbols first = Symbols.Installer.current(2);
+    first.intern("rotates-1");
+    first.intern("rotates-2");
+
+    final Symbols second = Symbols.Installer.current(2);
+    assertNotSame(first, second);
+    assertSame(second, Symbols.Installer.current(2));
+    assertEquals("rotates-2", first.resolve(first.intern("rotates-2")));
+  }
+}
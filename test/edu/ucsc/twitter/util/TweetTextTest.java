@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link TweetText}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class TweetTextTest {
+  @Test public void collapsesLineBreaksAndDecodesEntities() {
+    final TweetText text = TweetText.of(
+        "I feel like I&apos;m 8 years old again\r\n\r\nwith my lunch bag &lt;3 &amp; &#x263A; "
+            + "&bogus;");
+    assertEquals("I feel like I'm 8 years old again with my lunch bag <3 & ☺ &bogus;",
+        text.toString());
+  }
+
+  @Test public void decodesNumericEntitiesIntoLineBreaks() {
+    assertEquals("i'm 18 &amp; counting !",
+        TweetText.of("I&#39;M 18 &AMP; Counting\n&#10;!").lowercase());
+  }
+
+  @Test public void keepsTheRawTextWhenNothingChanges() {
+    final String raw = "nothing to decode & nothing to collapse";
+    assertSame(raw, TweetText.of(raw).toString());
+    assertSame(raw, TweetText.of(raw).raw());
+  }
+
+  @Test public void ignoresInvalidEntities() {
+    assertEquals("&#x110000; &#; &#xZZ; &verylongentity;",
+        TweetText.of("&#x110000; &#; &#xZZ; &verylongentity;").toString());
+  }
+}
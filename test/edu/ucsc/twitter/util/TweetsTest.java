@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that {@link Tweets#extractAll(CharSequence)}, and its garbage-free, UTF-8 and batch
+ * versions, find the same entities as the {@link Tweets.Patterns} based extractors.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class TweetsTest {
+  static final String[] SAMPLES = {
+      "check this out http://www.google.com/search?q=twitter&hl=en. cool?",
+      "@hsanchez @ucsc and @twitter: hi, but not email@example.com nor @a@b",
+      "#java #junit4 #1 ＃fullwidth and#not #with_under #josé #end",
+      "  @hsanchez thanks for the #movie",
+      "@hsanchez\n@next line",
+      "RT @hsanchez: I'm 23 years old #bday http://t.co/abc?x=1 via @ucsc (http://x.io/a,b,)",
+      "＠fullwidth 😀 #😀 @😀 http://a.com/😀 #tag😀 @user_é",
+      "",
+      "no entities at all"
+  };
+
+  private final Tweets tweets = new Tweets();
+
+  @Test public void findsWhatThePatternsFindInSamples() {
+    for (String each : SAMPLES) {
+      assertEquals(each, extractWithPatterns(each), extractAll(each));
+    }
+  }
+
+  @Test public void findsWhatThePatternsFindInRandomTweets() {
+    final Random random = new Random(140L);
+    for (int i = 0; i < 5000; i++) {
+      final String tweet = URLScannerTest.randomTweet(random);
+      assertEquals(tweet, extractWithPatterns(tweet), extractAll(tweet));
+    }
+  }
+
+  @Test public void reportsTheSameEntitiesToABuffer() {
+    final Tweets.EntityBuffer buffer = new Tweets.EntityBuffer(1);
+    for (String each : SAMPLES) {
+      buffer.clear();
+      tweets.extractAll(each, buffer);
+      assertEquals(each, extractAll(each), describe(each, buffer));
+      for (int i = 0; i < buffer.size(); i++) {
+        assertEquals(-1, buffer.byteStart(i));
+        assertEquals(-1, buffer.byteEnd(i));
+      }
+    }
+  }
+
+  @Test public void reportsCharAndByteOffsetsOfUtf8Slices() {
+    final Tweets.EntityBuffer buffer = new Tweets.EntityBuffer();
+    for (String each : SAMPLES) {
+      // the tweet sits in the middle of a larger record, after multibyte chars.
+      final byte[] prefix = "é😀 ".getBytes(Charsets.UTF_8);
+      final byte[] tweet  = each.getBytes(Charsets.UTF_8);
+      final byte[] record = new byte[prefix.length + tweet.length + 3];
+      System.arraycopy(prefix, 0, record, 0, prefix.length);
+      System.arraycopy(tweet, 0, record, prefix.length, tweet.length);
+
+      buffer.clear();
+      tweets.extractAll(record, prefix.length, tweet.length, buffer);
+      assertUtf8Offsets(each, tweet, buffer);
+    }
+  }
+
+  @Test public void extractsBetweenThePositionAndTheLimitOfAByteBuffer() {
+    final Tweets.EntityBuffer buffer = new Tweets.EntityBuffer();
+    for (String each : SAMPLES) {
+      final byte[] tweet = each.getBytes(Charsets.UTF_8);
+      final byte[] skip  = "#skip ".getBytes(Charsets.UTF_8);
+      for (ByteBuffer record : new ByteBuffer[] {
+          ByteBuffer.allocate(tweet.length + 12), ByteBuffer.allocateDirect(tweet.length + 12)}) {
+        record.put(skip).put(tweet).put(skip);
+        record.position(6).limit(6 + tweet.length);
+
+        buffer.clear();
+        tweets.extractAll(record.slice().duplicate(), buffer);
+        assertUtf8Offsets(each, tweet, buffer);
+
+        buffer.clear();
+        tweets.extractAll(record, buffer);
+        assertUtf8Offsets(each, tweet, buffer);
+        assertEquals(6, record.position());
+      }
+    }
+  }
+
+  @Test public void extractsBatchesInTheirOrder() {
+    final Random             random = new Random(4L);
+    final List<String>       batch  = Lists.newArrayList();
+    final List<List<String>> wanted = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      final String tweet = i % 100 == 0 ? "" : "#" + i + " " + URLScannerTest.randomTweet(random);
+      batch.add(tweet);
+      wanted.add(extractWithPatterns(tweet));
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Tweets.Entities> found = tweets.extractAll(batch, executor);
+      assertEquals(batch.size(), found.size());
+      for (int i = 0; i < batch.size(); i++) {
+        assertEquals(batch.get(i), wanted.get(i), describe(found.get(i)));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test public void findsNoReplyInEmptyTweets() {
+    assertEquals("", tweets.extractAll("").getReplyScreenname());
+    assertNull(tweets.extractAll("not a reply").getReplyScreenname());
+  }
+
+  private void assertUtf8Offsets(String text, byte[] tweet, Tweets.EntityBuffer buffer) {
+    assertEquals(text, extractAll(text), describe(text, buffer));
+    for (int i = 0; i < buffer.size(); i++) {
+      final String entity = text.substring(buffer.start(i), buffer.end(i));
+      final int    bytes  = buffer.byteEnd(i) - buffer.byteStart(i);
+      assertEquals(text, entity, new String(tweet, buffer.byteStart(i), bytes, Charsets.UTF_8));
+    }
+  }
+
+  private List<String> extractAll(String text) {
+    return describe(tweets.extractAll(text));
+  }
+
+  /**
+   * the entities found by the extractors that predate {@link Tweets#extractAll(CharSequence)}:
+   * mentions, hashtags and replies by the patterns {@link Tweets} still uses for them, and URLs
+   * by {@link Tweets.Patterns#VALID_URL}, which {@link URLScanner} replaced.
+   */
+  private List<String> extractWithPatterns(String text) {
+    final List<Tweets.Index> urls = new ArrayList<Tweets.Index>();
+    final Matcher matcher = Tweets.Patterns.VALID_URL.matcher(text);
+    while (matcher.find()) {
+      urls.add(new Tweets.Index(matcher, "url", Tweets.Patterns.VALID_URL_GROUP_URL, 0));
+    }
+
+    return describe(tweets.indexMentionedScreennames(text),
+        tweets.extractHashtagsWithIndices(text), urls, tweets.extractReplyScreenname(text));
+  }
+
+  private static List<String> describe(Tweets.Entities entities) {
+    return describe(entities.getMentionedScreennamesWithIndices(),
+        entities.getHashtagsWithIndices(), entities.getURLsWithIndices(),
+        entities.getReplyScreenname());
+  }
+
+  private static List<String> describe(String text, Tweets.EntityBuffer buffer) {
+    final String[] types   = {"mention", "hashtag", "url"};
+    final List<List<Tweets.Index>> byType = Lists.newArrayList();
+    for (int i = 0; i < types.length; i++) {
+      byType.add(new ArrayList<Tweets.Index>());
+    }
+
+    String reply = text.length() == 0 ? "" : null;
+    for (int i = 0; i < buffer.size(); i++) {
+      final String value = text.substring(buffer.valueStart(i), buffer.end(i));
+      if (buffer.type(i) == Tweets.EntityVisitor.REPLY) {
+        reply = value;
+      } else {
+        byType.get(buffer.type(i)).add(
+            new Tweets.Index(buffer.start(i), buffer.end(i), value, types[buffer.type(i)]));
+      }
+    }
+
+    return describe(byType.get(0), byType.get(1), byType.get(2), reply);
+  }
+
+  private static List<String> describe(List<Tweets.Index> mentions, List<Tweets.Index> hashtags,
+      List<Tweets.Index> urls, String reply) {
+    return Lists.newArrayList("mentions=" + mentions, "hashtags=" + hashtags, "urls=" + urls,
+        "reply=" + reply);
+  }
+}
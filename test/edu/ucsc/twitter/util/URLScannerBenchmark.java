@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+/**
+ * Times {@link URLScanner} against {@link Tweets.Patterns#VALID_URL} over a corpus of random
+ * tweets. It is not a test; run it by hand with the test classpath.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class URLScannerBenchmark {
+  public static void main(String[] args) {
+    final List<String> corpus = new ArrayList<String>();
+    final Random random = new Random(260L);
+    for (int i = 0; i < 200000; i++) {
+      corpus.add(i < URLScannerTest.SAMPLES.length
+          ? URLScannerTest.SAMPLES[i]
+          : URLScannerTest.randomTweet(random));
+    }
+
+    final URLScanner scanner = new URLScanner();
+    for (int round = 0; round < 3; round++) {
+      long regexUrls = 0;
+      long start = System.nanoTime();
+      for (String each : corpus) {
+        final Matcher matcher = Tweets.Patterns.VALID_URL.matcher(each);
+        while (matcher.find()) { regexUrls++; }
+      }
+      final long regexTime = System.nanoTime() - start;
+
+      long scannerUrls = 0;
+      start = System.nanoTime();
+      for (String each : corpus) {
+        scanner.reset(each);
+        while (scanner.find()) { scannerUrls++; }
+      }
+      final long scannerTime = System.nanoTime() - start;
+
+      System.out.println(String.format(
+          "round %d: regex %d urls in %.2f ms, scanner %d urls in %.2f ms (%.1fx)",
+          round, regexUrls, regexTime / 1e6, scannerUrls, scannerTime / 1e6,
+          (double) regexTime / scannerTime));
+    }
+  }
+}
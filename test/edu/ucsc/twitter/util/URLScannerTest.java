@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link URLScanner} finds the same URLs, and the same groups, as
+ * {@link Tweets.Patterns#VALID_URL}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class URLScannerTest {
+  static final String[] SAMPLES = {
+      "check this out http://www.google.com/search?q=twitter&hl=en. cool?",
+      "@hsanchez https://en.wikipedia.org/wiki/Primer_(film), #movies",
+      "HTTP://T.CO/abc:http://bit.ly/xyz \"http://a.b.c.org:8080/x/@y/z?\"",
+      "not an url: http://localhost/, ftp://host.com/, or http://123.45",
+      "ends with dots http://sub-domain.example.com/path/to.., and commas http://x.io/a,b,",
+      "http://a.comé.com http://éé.com/é =http://no.com :http://yes.com",
+      repeat("http://a", 20) + repeat(".b-c", 200) + "!",
+      "http://" + repeat("x.", 500) + "x/" + repeat("(a)@b/,.", 100) + "?" + repeat(".", 100)
+  };
+
+  @Test public void findsWhatTheRegexFindsInSamples() {
+    final URLScanner scanner = new URLScanner();
+    for (String each : SAMPLES) {
+      assertEquals(each, scanWithRegex(each), scanWithScanner(scanner, each));
+    }
+  }
+
+  @Test public void findsWhatTheRegexFindsInRandomTweets() {
+    final URLScanner scanner = new URLScanner();
+    final Random random = new Random(260L);
+    for (int i = 0; i < 20000; i++) {
+      final String tweet = randomTweet(random);
+      assertEquals(tweet, scanWithRegex(tweet), scanWithScanner(scanner, tweet));
+    }
+  }
+
+  @Test public void canBeReusedAcrossTweets() {
+    final URLScanner scanner = new URLScanner("see http://a.com/x and http://b.org");
+    assertEquals(2, scanWithScanner(scanner, "see http://a.com/x and http://b.org").size());
+    assertEquals(0, scanWithScanner(scanner, "nothing to see here").size());
+    assertEquals(1, scanWithScanner(scanner, "http://www.twitter.com").size());
+  }
+
+  static List<String> scanWithRegex(String text) {
+    final List<String> found = new ArrayList<String>();
+    final Matcher matcher = Tweets.Patterns.VALID_URL.matcher(text);
+    while (matcher.find()) {
+      found.add(String.format("%d:%d:%s|%s|%s|%s",
+          matcher.start(Tweets.Patterns.VALID_URL_GROUP_URL),
+          matcher.end(Tweets.Patterns.VALID_URL_GROUP_URL),
+          matcher.group(Tweets.Patterns.VALID_URL_GROUP_PROTOCOL),
+          matcher.group(Tweets.Patterns.VALID_URL_GROUP_DOMAIN),
+          matcher.group(Tweets.Patterns.VALID_URL_GROUP_PATH),
+          matcher.group(Tweets.Patterns.VALID_URL_GROUP_QUERY_STRING)));
+    }
+
+    return found;
+  }
+
+  static List<String> scanWithScanner(URLScanner scanner, String text) {
+    final List<String> found = new ArrayList<String>();
+    scanner.reset(text);
+    while (scanner.find()) {
+      found.add(String.format("%d:%d:%s|%s|%s|%s", scanner.start(), scanner.end(),
+          scanner.protocol(), scanner.domain(), scanner.path(), scanner.queryString()));
+    }
+
+    return found;
+  }
+
+  static String randomTweet(Random random) {
+    final String[] pieces = {
+        "http://", "https://", "HTTP://", "www.", ".com", ".co.uk", "-", ".", ",", ":8080", "/",
+        "/path", "?q=1&x=", "?", "(x)", "@a/", "#", "@user", " ", "\n", "\"", "'", "=", "!",
+        "é", "＠", "😀", "a", "Z", "9", "_", "t", "s", "h", ":", "&", "%20"
+    };
+
+    final StringBuilder tweet = new StringBuilder();
+    final int size = random.nextInt(40);
+    for (int i = 0; i < size; i++) {
+      tweet.append(pieces[random.nextInt(pieces.length)]);
+    }
+
+    return tweet.toString();
+  }
+
+  static String repeat(String text, int times) {
+    final StringBuilder result = new StringBuilder(text.length() * times);
+    for (int i = 0; i < times; i++) {
+      result.append(text);
+    }
+
+    return result.toString();
+  }
+}
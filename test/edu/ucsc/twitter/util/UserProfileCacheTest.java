@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.collect.Lists;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link UserProfileCache}, on a fake clock.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class UserProfileCacheTest {
+  private final long[] clock = {0L};
+
+  private File saved;
+
+  @Before public void setUp() throws IOException {
+    saved = File.createTempFile("users", ".cache");
+    saved.delete();
+  }
+
+  @After public void tearDown() {
+    saved.delete();
+  }
+
+  private UserProfileCache newCache(int capacity) {
+    return new UserProfileCache(capacity, 60, 5, TimeUnit.MINUTES, saved) {
+      @Override protected long now() {
+        return clock[0];
+      }
+    };
+  }
+
+  @Test public void remembersNamesUntilTheyExpire() {
+    final UserProfileCache cache = newCache(3);
+    cache.put(1L, "Huascar");
+    cache.putUnknown(2L);
+    assertEquals("Huascar", cache.get(1L));
+    assertEquals(UserProfileCache.UNKNOWN, cache.get(2L));
+    assertNull(cache.get(4L));
+
+    // unknown users are remembered for a shorter while.
+    clock[0] = TimeUnit.MINUTES.toMillis(10);
+    assertEquals("Huascar", cache.get(1L));
+    assertNull(cache.get(2L));
+
+    clock[0] = TimeUnit.MINUTES.toMillis(60);
+    assertNull(cache.get(1L));
+  }
+
+  @Test public void evictsTheLeastRecentlyUsed() {
+    final UserProfileCache cache = newCache(3);
+    cache.put(1L, "Huascar");
+    cache.put(3L, "Ana");
+    cache.put(4L, "Bob");
+    cache.get(1L);
+    cache.put(5L, "Carla");
+
+    assertNull(cache.get(3L));
+    assertEquals("Huascar", cache.get(1L));
+    assertEquals(3, cache.size());
+  }
+
+  @Test public void keepsEntriesAcrossRestarts() throws IOException {
+    final UserProfileCache cache = newCache(3);
+    cache.put(1L, "Huascar");
+    cache.putUnknown(2L);
+    cache.put(3L, "Tab\tbed");
+    assertTrue(cache.save());
+    assertFalse(cache.save());
+
+    clock[0] = TimeUnit.MINUTES.toMillis(10);
+    final UserProfileCache restarted = newCache(3);
+    // the unknown user expired, and the name with a tab could not be saved.
+    assertEquals(1, restarted.load());
+    assertEquals("Huascar", restarted.get(1L));
+
+    // entries keep their expiration time.
+    clock[0] = TimeUnit.MINUTES.toMillis(61);
+    assertNull(restarted.get(1L));
+  }
+
+  @Test public void savesConcurrentlyWithoutCorruptingTheFile() throws Exception {
+    final UserProfileCache cache = newCache(10000);
+    final ExecutorService  savers = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<Boolean>> saves = Lists.newArrayList();
+      for (int i = 0; i < 200; i++) {
+        final long userId = i;
+        saves.add(savers.submit(new Callable<Boolean>() {
+          @Override public Boolean call() throws IOException {
+            for (long each = userId * 50; each < userId * 50 + 50; each++) {
+              cache.put(each, "user" + each);
+            }
+            return cache.save();
+          }
+        }));
+      }
+      for (Future<Boolean> each : saves) {
+        each.get();
+      }
+    } finally {
+      savers.shutdown();
+    }
+
+    cache.save();
+    final UserProfileCache restarted = newCache(10000);
+    assertEquals(10000, restarted.load());
+    assertEquals("user9999", restarted.get(9999L));
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2011 Huascar A. Sanchez.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucsc.twitter.util;
+
+import com.google.common.base.Charsets;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link Utf8Text}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class Utf8TextTest {
+  @Test public void decodesWhatTheJdkDecodes() {
+    final Utf8Text text   = new Utf8Text(1);
+    final Random   random = new Random(8L);
+    for (int i = 0; i < 2000; i++) {
+      final String tweet = URLScannerTest.randomTweet(random);
+      final byte[] utf8  = tweet.getBytes(Charsets.UTF_8);
+      assertEquals(tweet, text.reset(utf8, 0, utf8.length).toString());
+    }
+  }
+
+  @Test public void mapsCharsToTheirBytes() {
+    // 1, 2, 3 and 4 bytes per code point; the last one is a surrogate pair.
+    final byte[]   utf8 = "aé€😀b".getBytes(Charsets.UTF_8);
+    final Utf8Text text = new Utf8Text().reset(utf8, 0, utf8.length);
+
+    assertEquals(6, text.length());
+    final int[] offsets = {0, 1, 3, 6, 6, 10, 11};
+    for (int i = 0; i < offsets.length; i++) {
+      assertEquals("char " + i, offsets[i], text.byteOffset(i));
+    }
+  }
+
+  @Test public void decodesMalformedBytesOneAtATime() {
+    assertDecodes("a\uFFFDb", 'a', 0xC3, 'b');                         // no continuation.
+    assertDecodes("\uFFFD\uFFFD", 0xC0, 0xAF);                         // overlong '/'.
+    assertDecodes("\uFFFD\uFFFD\uFFFD", 0xED, 0xA0, 0x80);             // a surrogate.
+    assertDecodes("\uFFFDa", 0xBF, 'a');                               // stray continuation.
+    assertDecodes("\uFFFD\uFFFD\uFFFD\uFFFD", 0xF5, 0x80, 0x80, 0x80); // past U+10FFFF.
+  }
+
+  @Test public void decodesTruncatedSequencesOneByteAtATime() {
+    final byte[] emoji = "😀".getBytes(Charsets.UTF_8);
+    final Utf8Text text = new Utf8Text().reset(emoji, 0, 3);
+
+    assertEquals("\uFFFD\uFFFD\uFFFD", text.toString());
+    assertEquals(2, text.byteOffset(2));
+    assertEquals(3, text.byteOffset(3));
+  }
+
+  @Test public void decodesASliceOfALargerArray() {
+    final byte[]   utf8 = "é😀#tag€".getBytes(Charsets.UTF_8);
+    final Utf8Text text = new Utf8Text().reset(utf8, 2, 8);
+
+    assertEquals("😀#tag", text.toString());
+    // offsets are relative to the slice.
+    assertEquals(0, text.byteOffset(0));
+    assertEquals(4, text.byteOffset(2));
+    assertEquals(8, text.byteOffset(text.length()));
+  }
+
+  @Test public void decodesBetweenThePositionAndTheLimitOfAByteBuffer() {
+    final byte[] utf8 = "é😀#tag€".getBytes(Charsets.UTF_8);
+    for (ByteBuffer each : new ByteBuffer[] {
+        ByteBuffer.wrap(utf8), ByteBuffer.allocateDirect(utf8.length).put(utf8)}) {
+      each.position(2).limit(10);
+      assertEquals("😀#tag", new Utf8Text().reset(each).toString());
+      assertEquals(2, each.position());
+
+      final ByteBuffer slice = each.slice();
+      slice.position(4);
+      assertEquals("#tag", new Utf8Text().reset(slice).toString());
+    }
+  }
+
+  @Test public void canBeReusedForLongerAndShorterTexts() {
+    final Utf8Text text    = new Utf8Text(2);
+    final byte[]   longer  = "a much longer tweet, é😀".getBytes(Charsets.UTF_8);
+    final byte[]   shorter = "hi".getBytes(Charsets.UTF_8);
+
+    assertEquals("a much longer tweet, é😀", text.reset(longer, 0, longer.length).toString());
+    assertEquals("hi", text.reset(shorter, 0, shorter.length).toString());
+    assertEquals(2, text.byteOffset(2));
+  }
+
+  @Test public void rejectsSlicesOutOfBounds() {
+    try {
+      new Utf8Text().reset(new byte[4], 2, 3);
+      fail("the slice is out of the array");
+    } catch (IndexOutOfBoundsException expected) {
+      // the array is never read past its end.
+    }
+  }
+
+  private static void assertDecodes(String expected, int... bytes) {
+    final byte[] utf8 = new byte[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      utf8[i] = (byte) bytes[i];
+    }
+
+    final Utf8Text text = new Utf8Text().reset(utf8, 0, utf8.length);
+    assertEquals(expected, text.toString());
+    assertEquals(expected.length(), text.length());
+    assertEquals(utf8.length, text.byteOffset(text.length()));
+  }
+}